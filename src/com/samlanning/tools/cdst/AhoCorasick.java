@@ -0,0 +1,150 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton, to find whether a string contains any of a set of
+ * keywords in a single pass over it.
+ * 
+ * Each state's transitions are kept as a sorted array of characters, with
+ * the states they lead to, and looked up with a binary search.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+class AhoCorasick {
+    
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    
+    /**
+     * Whether a keyword ends at (or in a suffix of) each state
+     */
+    private final boolean[] terminal;
+    
+    AhoCorasick(Collection<String> keywords){
+        
+        // Build the trie
+        ArrayList<TreeMap<Character, Integer>> trie =
+            new ArrayList<TreeMap<Character, Integer>>();
+        ArrayList<Boolean> ends = new ArrayList<Boolean>();
+        trie.add(new TreeMap<Character, Integer>());
+        ends.add(false);
+        for(String keyword : keywords){
+            int state = 0;
+            for(int i = 0; i < keyword.length(); i++){
+                Integer child = trie.get(state).get(keyword.charAt(i));
+                if(child == null){
+                    child = trie.size();
+                    trie.get(state).put(keyword.charAt(i), child);
+                    trie.add(new TreeMap<Character, Integer>());
+                    ends.add(false);
+                }
+                state = child;
+            }
+            ends.set(state, true);
+        }
+        
+        int states = trie.size();
+        this.keys = new char[states][];
+        this.next = new int[states][];
+        this.fail = new int[states];
+        this.terminal = new boolean[states];
+        for(int s = 0; s < states; s++){
+            TreeMap<Character, Integer> children = trie.get(s);
+            this.keys[s] = new char[children.size()];
+            this.next[s] = new int[children.size()];
+            int i = 0;
+            for(Map.Entry<Character, Integer> child : children.entrySet()){
+                this.keys[s][i] = child.getKey();
+                this.next[s][i] = child.getValue();
+                i++;
+            }
+            this.terminal[s] = ends.get(s);
+        }
+        
+        // Failure links, breadth first so that shorter states are done first
+        Queue<Integer> queue = new ArrayDeque<Integer>();
+        for(int child : this.next[0])
+            queue.add(child);
+        while(!queue.isEmpty()){
+            int s = queue.poll();
+            for(int i = 0; i < this.keys[s].length; i++){
+                int child = this.next[s][i];
+                int f = this.fail[s];
+                int target;
+                while((target = this.transition(f, this.keys[s][i])) < 0 &&
+                      f != 0)
+                    f = this.fail[f];
+                this.fail[child] = target < 0 ? 0 : target;
+                this.terminal[child] |= this.terminal[this.fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+    
+    /**
+     * @param text
+     * @return whether any keyword occurs in the text
+     */
+    boolean containsAny(CharSequence text){
+        if(this.terminal[0])
+            // The empty string is a keyword
+            return true;
+        int state = 0;
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            int target;
+            while((target = this.transition(state, c)) < 0 && state != 0)
+                state = this.fail[state];
+            state = target < 0 ? 0 : target;
+            if(this.terminal[state])
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * @return the state reached from a state with a character, or -1 if it
+     *         has no such transition
+     */
+    private int transition(int state, char c){
+        char[] keys = this.keys[state];
+        int low = 0;
+        int high = keys.length - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            if(keys[mid] < c)
+                low = mid + 1;
+            else if(keys[mid] > c)
+                high = mid - 1;
+            else
+                return this.next[state][mid];
+        }
+        return -1;
+    }
+}
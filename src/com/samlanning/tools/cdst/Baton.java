@@ -0,0 +1,178 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The baton passed between the thread running the tester and the thread(s)
+ * reading from the stream, so that only one of them is acting on the
+ * communications at a time.
+ * 
+ * The whole handoff is a single atomic state:
+ * 
+ * LOCKED - someone has the baton
+ * FREE - the baton has been released and anyone may acquire it
+ * HANDED_BACK - a reader has finished with the baton and given it back to
+ *               the tester thread, which is waiting in awaitHandBack()
+ * 
+ * Threads waiting to acquire are parked in FIFO order, after optionally
+ * spinning for a bounded number of attempts.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+class Baton {
+    
+    static final int LOCKED = 0;
+    static final int FREE = 1;
+    static final int HANDED_BACK = 2;
+    
+    /**
+     * The baton starts LOCKED, held by the tester
+     */
+    private final AtomicInteger state = new AtomicInteger(LOCKED);
+    
+    /**
+     * Threads waiting to acquire the baton
+     */
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    
+    /**
+     * Thread waiting for the baton to be handed back
+     */
+    private volatile Thread handBackWaiter = null;
+    
+    /**
+     * Set once the tester thread has stopped waiting for the baton to be
+     * handed back
+     */
+    private volatile boolean abandoned = false;
+    
+    /**
+     * How many times to retry before parking
+     */
+    private volatile int spinLimit = 0;
+    
+    void setSpinLimit(int spinLimit){
+        this.spinLimit = spinLimit;
+    }
+    
+    /**
+     * Wait for the baton to be free, and take it
+     * FREE -> LOCKED
+     * @throws InterruptedException
+     */
+    void acquire() throws InterruptedException {
+        for(int i = this.spinLimit; i > 0; i--){
+            if(this.state.compareAndSet(FREE, LOCKED))
+                return;
+            Thread.onSpinWait();
+        }
+        
+        Thread current = Thread.currentThread();
+        this.waiters.add(current);
+        
+        // Only the head of the queue may take the baton
+        while(this.waiters.peek() != current ||
+              !this.state.compareAndSet(FREE, LOCKED)){
+            LockSupport.park(this);
+            if(Thread.interrupted()){
+                this.waiters.remove(current);
+                // Pass on any wake up meant for us
+                LockSupport.unpark(this.waiters.peek());
+                throw new InterruptedException();
+            }
+        }
+        
+        this.waiters.remove();
+    }
+    
+    /**
+     * Take the baton if it is free, without waiting
+     * FREE -> LOCKED
+     * @return whether the baton was taken
+     */
+    boolean tryAcquire(){
+        return this.state.compareAndSet(FREE, LOCKED);
+    }
+    
+    /**
+     * Let go of the baton, so anyone can acquire it
+     * LOCKED -> FREE
+     */
+    void release(){
+        this.state.set(FREE);
+        LockSupport.unpark(this.waiters.peek());
+    }
+    
+    /**
+     * Give the baton back to the thread waiting in awaitHandBack()
+     * LOCKED -> HANDED_BACK
+     */
+    void handBack(){
+        this.state.set(HANDED_BACK);
+        if(this.abandoned)
+            this.freeAbandoned();
+        else
+            LockSupport.unpark(this.handBackWaiter);
+    }
+    
+    /**
+     * Called by the tester thread when it gives up waiting in
+     * awaitHandBack(), so that the baton is released rather than handed back
+     * to nobody.
+     */
+    void abandon(){
+        this.abandoned = true;
+        this.freeAbandoned();
+    }
+    
+    private void freeAbandoned(){
+        if(this.state.compareAndSet(HANDED_BACK, FREE))
+            LockSupport.unpark(this.waiters.peek());
+    }
+    
+    /**
+     * Wait for a reader to hand the baton back
+     * HANDED_BACK -> LOCKED
+     * @throws InterruptedException
+     */
+    void awaitHandBack() throws InterruptedException {
+        for(int i = this.spinLimit; i > 0; i--){
+            if(this.state.compareAndSet(HANDED_BACK, LOCKED))
+                return;
+            Thread.onSpinWait();
+        }
+        
+        this.handBackWaiter = Thread.currentThread();
+        try {
+            while(!this.state.compareAndSet(HANDED_BACK, LOCKED)){
+                LockSupport.park(this);
+                if(Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            this.handBackWaiter = null;
+        }
+    }
+}
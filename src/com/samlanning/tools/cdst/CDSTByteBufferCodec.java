@@ -0,0 +1,65 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Passes ByteBuffers straight through, for binary protocols.
+ * 
+ * VIEW decodes a frame to the buffer it was given, without copying. This
+ * breaks the usual CDSTCodec rule, and is only safe when the tester checks
+ * outputs before readFromStream returns: CDSTReadHandlers mustn't keep the
+ * buffers they are given, and a tester which is ingesting (see
+ * CDSTester.isIngesting()) checks them after the buffer has been reused, so
+ * CDSTChannelHandler copies frames instead in that case. COPY gives each
+ * frame its own buffer.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTByteBufferCodec implements CDSTCodec<ByteBuffer> {
+    
+    public static final CDSTByteBufferCodec VIEW =
+        new CDSTByteBufferCodec(false);
+    
+    public static final CDSTByteBufferCodec COPY =
+        new CDSTByteBufferCodec(true);
+    
+    private final boolean copy;
+    
+    private CDSTByteBufferCodec(boolean copy){
+        this.copy = copy;
+    }
+
+    @Override
+    public void encode(ByteBuffer value, ByteBuffer out) {
+        out.put(value.duplicate());
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        if(!this.copy)
+            return in;
+        ByteBuffer copy = ByteBuffer.allocate(in.remaining());
+        copy.put(in);
+        copy.flip();
+        return copy;
+    }
+}
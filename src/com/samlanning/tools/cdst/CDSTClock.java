@@ -0,0 +1,47 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * A source of time for timing tests, so that a test can be timed by
+ * something other than the system clock (see CDSTVirtualScheduler).
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public interface CDSTClock {
+    
+    /**
+     * The system clock, used unless a tester is given a scheduler which is
+     * also a clock
+     */
+    public static final CDSTClock SYSTEM = new CDSTClock(){
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+    
+    /**
+     * @return the current time in nanoseconds, only meaningful when compared
+     *         to other times from the same clock (like System.nanoTime())
+     */
+    public long nanoTime();
+    
+}
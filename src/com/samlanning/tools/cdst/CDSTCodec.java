@@ -0,0 +1,51 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts inputs or outputs of a stream to and from bytes, for transports
+ * and recordings that work with bytes rather than objects.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ * @param <T>
+ */
+public interface CDSTCodec<T> {
+    
+    /**
+     * Write a value into a buffer
+     * @param value
+     * @param out - buffer to write to, from its position
+     * @throws java.nio.BufferOverflowException if out doesn't have room
+     */
+    public void encode(T value, ByteBuffer out);
+    
+    /**
+     * Read a value from the bytes between the position and limit of a buffer
+     * 
+     * The buffer may be reused once this returns, so the value mustn't keep
+     * a reference to it.
+     * @param in
+     * @return
+     */
+    public T decode(ByteBuffer in);
+    
+}
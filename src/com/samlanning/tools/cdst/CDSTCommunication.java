@@ -0,0 +1,522 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single step of a script: either an input the tester writes to the
+ * stream, or an output it expects to read from the stream.
+ * 
+ * Communications are usually added to a tester or CDSTPlan.Builder, but can
+ * also be created with the static methods here to give a tester a script
+ * one step at a time (see CDSTester(Iterator)). These don't capture their
+ * call site, so that a long script doesn't hold onto a trace for each step.
+ * 
+ * Communications are immutable, so they can be shared by every run of a
+ * CDSTPlan. Anything that changes during a run (such as the input produced
+ * by a CDSTWriteHandler) is kept by the tester.
+ * 
+ * Expected ByteBuffer outputs are compared in place (between position and
+ * limit) with ByteBuffer.mismatch, so binary frames don't need copying, and
+ * a failure reports the offset of the first byte that differs.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public final class CDSTCommunication<InputType, OutputType> {
+    
+    private final InputType input;
+    private final OutputType output;
+    private final CDSTWriteHandler<InputType> inputHandler;
+    private final CDSTReadHandler<OutputType> outputHandler;
+    private final OutputGroup<OutputType> group;
+    
+    private final CallSite site;
+    
+    /**
+     * How long to wait for an output in milliseconds, or DEFAULT_DEADLINE to
+     * use the tester's default
+     */
+    private final long deadline;
+    
+    /**
+     * How long to wait before writing an input in milliseconds, or
+     * DEFAULT_WRITE_DELAY to use the tester's write delay
+     */
+    private final long writeDelay;
+    
+    /**
+     * The most nanoseconds an output may take to arrive after the last input
+     * written before it, or NO_MAX_LATENCY
+     */
+    private final long maxLatency;
+    
+    /**
+     * The logical channel this communication is on when multiplexing (see
+     * CDSTester.setMultiplexHandler()), 0 by default
+     */
+    private final int channel;
+    
+    static final long DEFAULT_DEADLINE = -1;
+    static final long DEFAULT_WRITE_DELAY = -1;
+    static final long NO_MAX_LATENCY = -1;
+    
+    private CDSTCommunication(InputType input, OutputType output,
+                              CDSTWriteHandler<InputType> inputHandler,
+                              CDSTReadHandler<OutputType> outputHandler,
+                              OutputGroup<OutputType> group,
+                              CallSite site, long deadline,
+                              long writeDelay, long maxLatency, int channel){
+        this.input = input;
+        this.output = output;
+        this.inputHandler = inputHandler;
+        this.outputHandler = outputHandler;
+        this.group = group;
+        this.site = site;
+        this.deadline = deadline;
+        this.writeDelay = writeDelay;
+        this.maxLatency = maxLatency;
+        this.channel = channel;
+    }
+    
+    /**
+     * Write to the stream at this point.
+     * @param input
+     * @return
+     */
+    public static <I, O> CDSTCommunication<I, O> input(I input){
+        return input(input, CallSite.NONE, DEFAULT_WRITE_DELAY);
+    }
+    
+    /**
+     * Write to the stream at this point, after waiting the given delay
+     * instead of the tester's write delay.
+     * @param input
+     * @param writeDelay - in milliseconds
+     * @return
+     * @throws CDSTException if the write delay is negative
+     */
+    public static <I, O> CDSTCommunication<I, O> input(I input,
+                                                       long writeDelay)
+            throws CDSTException {
+        return input(input, CallSite.NONE, checkWriteDelay(writeDelay));
+    }
+    
+    /**
+     * Write to the stream at this point, using a handler.
+     * @param handler
+     * @return
+     */
+    public static <I, O> CDSTCommunication<I, O> input(
+            CDSTWriteHandler<I> handler){
+        return input(handler, CallSite.NONE, DEFAULT_WRITE_DELAY);
+    }
+    
+    /**
+     * Write to the stream at this point using a handler, after waiting the
+     * given delay instead of the tester's write delay.
+     * @param handler
+     * @param writeDelay - in milliseconds
+     * @return
+     * @throws CDSTException if the write delay is negative
+     */
+    public static <I, O> CDSTCommunication<I, O> input(
+            CDSTWriteHandler<I> handler, long writeDelay)
+            throws CDSTException {
+        return input(handler, CallSite.NONE, checkWriteDelay(writeDelay));
+    }
+    
+    /**
+     * Expect some output from the stream at this point.
+     * @param output
+     * @return
+     */
+    public static <I, O> CDSTCommunication<I, O> output(O output){
+        return output(output, CallSite.NONE, DEFAULT_DEADLINE);
+    }
+    
+    /**
+     * Expect some output from the stream at this point, failing if it hasn't
+     * arrived within the deadline.
+     * @param output
+     * @param deadline - in milliseconds, 0 for no deadline
+     * @return
+     * @throws CDSTException if the deadline is negative
+     */
+    public static <I, O> CDSTCommunication<I, O> output(O output,
+                                                        long deadline)
+            throws CDSTException {
+        return output(output, CallSite.NONE, checkDeadline(deadline));
+    }
+    
+    /**
+     * Expect some output from the stream at this point, and pass it to the
+     * handler.
+     * @param handler
+     * @return
+     */
+    public static <I, O> CDSTCommunication<I, O> output(
+            CDSTReadHandler<O> handler){
+        return output(handler, CallSite.NONE, DEFAULT_DEADLINE);
+    }
+    
+    /**
+     * Expect some output from the stream at this point, and pass it to the
+     * handler, failing if it hasn't arrived within the deadline.
+     * @param handler
+     * @param deadline - in milliseconds, 0 for no deadline
+     * @return
+     * @throws CDSTException if the deadline is negative
+     */
+    public static <I, O> CDSTCommunication<I, O> output(
+            CDSTReadHandler<O> handler, long deadline)
+            throws CDSTException {
+        return output(handler, CallSite.NONE, checkDeadline(deadline));
+    }
+    
+    /**
+     * Expect some output from the stream at this point, failing if it arrives
+     * more than maxLatency after the last input written before it.
+     * @param output
+     * @param maxLatency
+     * @param unit
+     * @return
+     * @throws CDSTException if the maximum latency is negative
+     */
+    public static <I, O> CDSTCommunication<I, O> output(O output,
+                                                        long maxLatency,
+                                                        TimeUnit unit)
+            throws CDSTException {
+        return new CDSTCommunication<I, O>(null, output, null, null, null,
+                                           CallSite.NONE, DEFAULT_DEADLINE,
+                                           DEFAULT_WRITE_DELAY,
+                                           checkMaxLatency(maxLatency, unit),
+                                           0);
+    }
+    
+    /**
+     * Expect some output from the stream at this point, and pass it to the
+     * handler, failing if it arrives more than maxLatency after the last
+     * input written before it.
+     * @param handler
+     * @param maxLatency
+     * @param unit
+     * @return
+     * @throws CDSTException if the maximum latency is negative
+     */
+    public static <I, O> CDSTCommunication<I, O> output(
+            CDSTReadHandler<O> handler, long maxLatency, TimeUnit unit)
+            throws CDSTException {
+        return new CDSTCommunication<I, O>(null, null, null, handler, null,
+                                           CallSite.NONE, DEFAULT_DEADLINE,
+                                           DEFAULT_WRITE_DELAY,
+                                           checkMaxLatency(maxLatency, unit),
+                                           0);
+    }
+    
+    /**
+     * Expect all of these outputs from the stream at this point, in any
+     * order, with each output expected as many times as it appears.
+     * @param outputs
+     * @return
+     * @throws CDSTException if the group is empty or expects null
+     */
+    public static <I, O> CDSTCommunication<I, O> outputGroup(
+            Collection<? extends O> outputs) throws CDSTException {
+        return outputGroup(OutputGroup.<O>of(outputs), CallSite.NONE,
+                           DEFAULT_DEADLINE);
+    }
+    
+    /**
+     * Expect these outputs from the stream at this point, in any order, each
+     * as many times as given.
+     * @param counts
+     * @return
+     * @throws CDSTException if the group is empty, expects null or has a
+     * count below 1
+     */
+    public static <I, O> CDSTCommunication<I, O> outputGroup(
+            Map<? extends O, Integer> counts) throws CDSTException {
+        return outputGroup(new OutputGroup<O>(counts), CallSite.NONE,
+                           DEFAULT_DEADLINE);
+    }
+    
+    static int checkChannel(int channel)
+            throws CDSTException {
+        if(channel < 0)
+            throw new CDSTException(
+                "Channel can't be negative: " + channel);
+        return channel;
+    }
+    
+    static long checkDeadline(long deadline)
+            throws CDSTException {
+        if(deadline < 0)
+            throw new CDSTException(
+                "Deadline can't be negative: " + deadline);
+        return deadline;
+    }
+    
+    /**
+     * @return the latency in nanoseconds
+     */
+    static long checkMaxLatency(long maxLatency, TimeUnit unit)
+            throws CDSTException {
+        if(maxLatency < 0)
+            throw new CDSTException(
+                "Maximum latency can't be negative: " + maxLatency);
+        return unit.toNanos(maxLatency);
+    }
+    
+    static long checkWriteDelay(long writeDelay)
+            throws CDSTException {
+        if(writeDelay < 0)
+            throw new CDSTException(
+                "Write delay can't be negative: " + writeDelay);
+        return writeDelay;
+    }
+    
+    static <I, O> CDSTCommunication<I, O> outputGroup(OutputGroup<O> group,
+                                                      CallSite site,
+                                                      long deadline){
+        return new CDSTCommunication<I, O>(null, null, null, null, group,
+                                           site, deadline,
+                                           DEFAULT_WRITE_DELAY, NO_MAX_LATENCY,
+                                           0);
+    }
+    
+    static <I, O> CDSTCommunication<I, O> input(I input, CallSite site,
+                                                long writeDelay){
+        return new CDSTCommunication<I, O>(input, null, null, null, null, site,
+                                           DEFAULT_DEADLINE, writeDelay,
+                                           NO_MAX_LATENCY, 0);
+    }
+    
+    static <I, O> CDSTCommunication<I, O> input(CDSTWriteHandler<I> handler,
+                                                CallSite site,
+                                                long writeDelay){
+        return new CDSTCommunication<I, O>(null, null, handler, null, null,
+                                           site, DEFAULT_DEADLINE, writeDelay,
+                                           NO_MAX_LATENCY, 0);
+    }
+    
+    static <I, O> CDSTCommunication<I, O> output(O output, CallSite site,
+                                                 long deadline){
+        return new CDSTCommunication<I, O>(null, output, null, null, null,
+                                           site, deadline,
+                                           DEFAULT_WRITE_DELAY, NO_MAX_LATENCY,
+                                           0);
+    }
+    
+    static <I, O> CDSTCommunication<I, O> output(CDSTReadHandler<O> handler,
+                                                 CallSite site,
+                                                 long deadline){
+        return new CDSTCommunication<I, O>(null, null, null, handler, null,
+                                           site, deadline,
+                                           DEFAULT_WRITE_DELAY, NO_MAX_LATENCY,
+                                           0);
+    }
+    
+    static <I, O> CDSTCommunication<I, O> output(O output, CallSite site,
+                                                 long deadline,
+                                                 long maxLatency){
+        return new CDSTCommunication<I, O>(null, output, null, null, null,
+                                           site, deadline,
+                                           DEFAULT_WRITE_DELAY, maxLatency, 0);
+    }
+    
+    static <I, O> CDSTCommunication<I, O> output(CDSTReadHandler<O> handler,
+                                                 CallSite site,
+                                                 long deadline,
+                                                 long maxLatency){
+        return new CDSTCommunication<I, O>(null, null, null, handler, null,
+                                           site, deadline,
+                                           DEFAULT_WRITE_DELAY, maxLatency, 0);
+    }
+    
+    /**
+     * Materialise the trace of where this communication was added
+     */
+    Exception trace(){
+        return this.site.toException();
+    }
+    
+    /**
+     * @return how long to wait for this output in milliseconds, or
+     *         DEFAULT_DEADLINE
+     */
+    long getDeadline(){
+        return this.deadline;
+    }
+    
+    /**
+     * @return how long to wait before writing this input in milliseconds, or
+     *         DEFAULT_WRITE_DELAY
+     */
+    long getWriteDelay(){
+        return this.writeDelay;
+    }
+    
+    /**
+     * @return the most nanoseconds this output may take to arrive after the
+     *         last input written before it, or NO_MAX_LATENCY
+     */
+    long getMaxLatency(){
+        return this.maxLatency;
+    }
+    
+    /**
+     * @return the logical channel this communication is on
+     */
+    int getChannel(){
+        return this.channel;
+    }
+    
+    /**
+     * @return a copy of this communication on the given logical channel
+     */
+    CDSTCommunication<InputType, OutputType> onChannel(int channel){
+        return new CDSTCommunication<InputType, OutputType>(
+            this.input, this.output, this.inputHandler, this.outputHandler,
+            this.group, this.site, this.deadline, this.writeDelay,
+            this.maxLatency, channel);
+    }
+    
+    boolean isInput(){
+        return this.input != null || this.inputHandler != null;
+    }
+    
+    boolean isOutput(){
+        return this.output != null || this.outputHandler != null ||
+               this.group != null;
+    }
+    
+    /**
+     * @return the outputs expected in any order, or null if this isn't a
+     *         group
+     */
+    OutputGroup<OutputType> getGroup(){
+        return this.group;
+    }
+    
+    /**
+     * Produce the input to write, the tester should only call this once per
+     * run as write handlers are called each time
+     */
+    InputType getInput(){
+        if(this.input != null)
+            return this.input;
+        else
+            return this.inputHandler.write();
+    }
+    
+    /**
+     * Check an output read from the stream
+     * @param object
+     * @return null if the output is correct, otherwise a description of why
+     *         it is incorrect
+     */
+    String checkOutput(OutputType object) {
+        if(this.output instanceof ByteBuffer && object instanceof ByteBuffer)
+            return checkBytes((ByteBuffer) this.output, (ByteBuffer) object);
+        else if(this.output != null)
+            if(this.output.equals(object))
+                return null;
+            else
+                // Have received invalid output.
+                return String.format(
+                    "Received incorrect output from stream, was " +
+                    "expecting: '%s' but instead received: '%s'",
+                    this.output,
+                    object);
+        else
+            try {
+                this.outputHandler.read(object);
+                return null;
+            } catch (Exception e) {
+                return String.format(
+                    "Received incorrect output from stream, " + 
+                    "CDSTReadHandler gave exception: '%s' after " +
+                    "receiving: '%s'",
+                    e,
+                    object);
+            }
+    }
+    
+    /**
+     * Compare the remaining bytes of two buffers without changing them
+     */
+    private static String checkBytes(ByteBuffer expected, ByteBuffer actual){
+        int offset = expected.mismatch(actual);
+        if(offset < 0)
+            return null;
+        return String.format(
+            "Received incorrect output from stream, first difference at " +
+            "offset %d, was expecting %d bytes: '%s' but instead received " +
+            "%d bytes: '%s'",
+            offset,
+            expected.remaining(),
+            hex(expected, offset),
+            actual.remaining(),
+            hex(actual, offset));
+    }
+    
+    /**
+     * Up to 16 bytes of a buffer in hex, around the given offset
+     */
+    private static String hex(ByteBuffer buffer, int offset){
+        int from = Math.max(0, offset - 8);
+        int to = Math.min(buffer.remaining(), from + 16);
+        StringBuilder sb = new StringBuilder();
+        if(from > 0)
+            sb.append("... ");
+        for(int i = from; i < to; i++){
+            if(i > from)
+                sb.append(' ');
+            sb.append(String.format("%02x",
+                                    buffer.get(buffer.position() + i)));
+        }
+        if(to < buffer.remaining())
+            sb.append(" ...");
+        return sb.toString();
+    }
+    
+    public String toString(){
+        if(this.channel != 0)
+            return this.describe() + " ON CHANNEL " + this.channel;
+        return this.describe();
+    }
+    
+    private String describe(){
+        if(this.input != null)
+            return "INPUT (" + this.input.toString() + ")";
+        else if(this.inputHandler != null)
+            return "INPUT (" + this.inputHandler.toString() + ")";
+        else if(this.output != null)
+            return "OUTPUT (" + this.output.toString() + ")";
+        else if(this.group != null)
+            return "OUTPUT GROUP (" + this.group.size() + " outputs)";
+        else
+            return "OUTPUT (" + this.outputHandler.toString() + ")";
+    }
+}
@@ -25,12 +25,15 @@ public interface CDSTHandler<InputType> {
      * @param message
      * @param trace - An exception you can use to print the stack trace to
      *        isolate the point at which the addOutputRead() or addInputWrite()
-     *        
+     *        was called (how much of the stack it contains depends on the
+     *        tester's CDSTTraceCapture setting)
      */
     public void fail(String message, Exception trace);
     
     /**
      * Fulfil a request from the tester to send input to the input stream.
+     * Throwing a RuntimeException (for example when the input can't be
+     * written) fails the test.
      * @param input
      */
     public void writeToStream(InputType input);
@@ -0,0 +1,159 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts values (such as latencies in nanoseconds) for reporting percentiles,
+ * without keeping the values themselves.
+ * 
+ * Values are counted in buckets which are exact up to 255, and after that
+ * are within 1% of the values in them, so recording a value is just working
+ * out its bucket and incrementing a counter, and the histogram is the same
+ * size however many values it counts. Values can be recorded from any number
+ * of threads at once.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTHistogram {
+    
+    /**
+     * Each power of two above 255 is split into this many buckets
+     */
+    private static final int SUB_BUCKETS = 128;
+    private static final int SUB_BUCKET_BITS = 7;
+    
+    /**
+     * Enough buckets for every non-negative long
+     */
+    private static final int BUCKETS = 56 * SUB_BUCKETS + SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Count a value
+     * @param value - negative values are counted as 0
+     */
+    public void record(long value) {
+        if(value < 0)
+            value = 0;
+        this.counts.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.total.addAndGet(value);
+        long max = this.max.get();
+        while(value > max && !this.max.compareAndSet(max, value))
+            max = this.max.get();
+    }
+    
+    /**
+     * Forget every value counted so far, such as after a warm-up. Values
+     * being recorded at the same time may or may not be forgotten.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++)
+            this.counts.set(i, 0);
+        this.count.set(0);
+        this.total.set(0);
+        this.max.set(0);
+    }
+    
+    /**
+     * @return how many values have been counted
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+    
+    /**
+     * @return the largest value counted, or 0 if there are none
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+    
+    /**
+     * @return the mean of the values counted, or 0 if there are none
+     */
+    public double getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : (double) this.total.get() / count;
+    }
+    
+    /**
+     * Get the value which the given percentage of values are less than or
+     * equal to (to within 1%)
+     * @param percentile - between 0 and 100, such as 99.9
+     * @return the value, or 0 if no values have been counted
+     */
+    public long getPercentile(double percentile) {
+        if(percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException(
+                "Percentile must be between 0 and 100: " + percentile);
+        
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++)
+            count += this.counts.get(i);
+        if(count == 0)
+            return 0;
+        
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += this.counts.get(i);
+            if(seen >= rank)
+                return Math.min(highest(i), this.max.get());
+        }
+        return this.max.get();
+    }
+    
+    /**
+     * The bucket a value is counted in, keeping the top 8 bits of the value
+     */
+    private static int bucket(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - 8);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+    
+    /**
+     * The highest value counted in a bucket
+     */
+    private static long highest(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long top = bucket - ((long) shift << SUB_BUCKET_BITS);
+        return ((top + 1) << shift) - 1;
+    }
+    
+    public String toString(){
+        return String.format(
+            "%d values, p50 %d, p99 %d, p99.9 %d, max %d",
+            this.getCount(),
+            this.getPercentile(50),
+            this.getPercentile(99),
+            this.getPercentile(99.9),
+            this.getMax());
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * Implement this to tell the tester when the stream has gone quiet, so that
+ * it can write the next input straight away rather than always waiting for
+ * the full write delay.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public interface CDSTIdleDetector {
+
+    /**
+     * Block until the stream is quiescent (it will not produce any more
+     * output until it is given more input), or until the timeout passes.
+     * 
+     * Any output produced before the stream became quiescent must already
+     * have been passed to CDSTester.readFromStream() when this returns.
+     * 
+     * @param timeout - the write delay of the tester, in milliseconds
+     * @return true if the stream became quiescent, false if timed out
+     * @throws InterruptedException
+     */
+    public boolean awaitIdle(long timeout) throws InterruptedException;
+    
+}
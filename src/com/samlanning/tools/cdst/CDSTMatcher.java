@@ -0,0 +1,196 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks text outputs against a pattern, to be added to a tester with
+ * addOutputRead() like any other CDSTReadHandler.
+ * 
+ * Everything a matcher needs is worked out when it is created, so create
+ * matchers while building the script (or once, and share them between
+ * scripts) rather than in a read handler. Matchers are immutable and thread
+ * safe.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public abstract class CDSTMatcher implements CDSTReadHandler<String> {
+    
+    /**
+     * Match outputs in their entirety against a regular expression, compiled
+     * once when the matcher is created
+     * @param regex
+     * @return
+     */
+    public static CDSTMatcher regex(String regex){
+        return new RegexMatcher(Pattern.compile(regex));
+    }
+    
+    /**
+     * Match outputs starting with a prefix
+     * @param prefix
+     * @return
+     */
+    public static CDSTMatcher prefix(String prefix){
+        return new PrefixMatcher(prefix);
+    }
+    
+    /**
+     * Match outputs equal to any of the given strings, looked up in a hash
+     * set
+     * @param alternatives
+     * @return
+     */
+    public static CDSTMatcher anyOf(String... alternatives){
+        return anyOf(Arrays.asList(alternatives));
+    }
+    
+    /**
+     * Match outputs equal to any of the given strings, looked up in a hash
+     * set
+     * @param alternatives
+     * @return
+     */
+    public static CDSTMatcher anyOf(Collection<String> alternatives){
+        return new AnyOfMatcher(new HashSet<String>(alternatives));
+    }
+    
+    /**
+     * Match outputs containing any of the given strings, searched for all at
+     * once in a single pass over the output (with an Aho-Corasick automaton)
+     * @param keywords
+     * @return
+     */
+    public static CDSTMatcher containsAny(String... keywords){
+        return containsAny(Arrays.asList(keywords));
+    }
+    
+    /**
+     * Match outputs containing any of the given strings (see
+     * containsAny(String...))
+     * @param keywords
+     * @return
+     */
+    public static CDSTMatcher containsAny(Collection<String> keywords){
+        return new ContainsAnyMatcher(keywords);
+    }
+    
+    /**
+     * @param output
+     * @return whether the output matches
+     */
+    public abstract boolean matches(String output);
+    
+    @Override
+    public void read(String output) throws Exception {
+        if(output == null || !this.matches(output))
+            throw new CDSTException("Output doesn't match " + this);
+    }
+    
+    private static class RegexMatcher extends CDSTMatcher {
+        
+        private final Pattern pattern;
+        
+        public RegexMatcher(Pattern pattern){
+            this.pattern = pattern;
+        }
+        
+        @Override
+        public boolean matches(String output) {
+            return this.pattern.matcher(output).matches();
+        }
+        
+        public String toString(){
+            return "regex /" + this.pattern.pattern() + "/";
+        }
+    }
+    
+    private static class PrefixMatcher extends CDSTMatcher {
+        
+        private final String prefix;
+        
+        public PrefixMatcher(String prefix){
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public boolean matches(String output) {
+            return output.startsWith(this.prefix);
+        }
+        
+        public String toString(){
+            return "prefix '" + this.prefix + "'";
+        }
+    }
+    
+    private static class AnyOfMatcher extends CDSTMatcher {
+        
+        private final Set<String> alternatives;
+        
+        public AnyOfMatcher(Set<String> alternatives){
+            this.alternatives = alternatives;
+        }
+        
+        @Override
+        public boolean matches(String output) {
+            return this.alternatives.contains(output);
+        }
+        
+        public String toString(){
+            return "any of " + describe(this.alternatives);
+        }
+    }
+    
+    private static class ContainsAnyMatcher extends CDSTMatcher {
+        
+        private final AhoCorasick automaton;
+        private final Collection<String> keywords;
+        
+        public ContainsAnyMatcher(Collection<String> keywords){
+            this.automaton = new AhoCorasick(keywords);
+            this.keywords = new ArrayList<String>(keywords);
+        }
+        
+        @Override
+        public boolean matches(String output) {
+            return this.automaton.containsAny(output);
+        }
+        
+        public String toString(){
+            return "containing any of " + describe(this.keywords);
+        }
+    }
+    
+    /**
+     * Describe a set of strings for a failure message, without listing
+     * thousands of them
+     */
+    private static String describe(Collection<String> strings){
+        if(strings.size() <= 10)
+            return strings.toString();
+        return strings.size() + " strings";
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * A handler for a tester of a multiplexed stream (see
+ * CDSTester.setMultiplexHandler()), which is given the logical channel of
+ * each input to write. The tester only writes to the stream with
+ * writeToStream(int, InputType).
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public interface CDSTMultiplexHandler<InputType>
+    extends CDSTHandler<InputType> {
+    
+    /**
+     * Fulfil a request from the tester to send input to the input stream on
+     * the given logical channel.
+     * @param channel
+     * @param input
+     */
+    public void writeToStream(int channel, InputType input);
+    
+}
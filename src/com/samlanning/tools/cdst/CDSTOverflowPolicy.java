@@ -0,0 +1,42 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * What readFromStream() does when a tester is ingesting outputs (see
+ * CDSTester.setIngestion()) and there is no room left to queue another one.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public enum CDSTOverflowPolicy {
+    
+    /**
+     * Drop the output and fail the test, so the stream is never held up by
+     * the tester.
+     */
+    FAIL,
+    
+    /**
+     * Wait for the tester to make room, holding up the stream only when the
+     * tester has fallen behind.
+     */
+    BLOCK
+    
+}
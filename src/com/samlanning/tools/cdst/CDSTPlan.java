@@ -0,0 +1,278 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A compiled, immutable script which can be run any number of times, one
+ * after the other or at the same time, by creating a CDSTester for each run
+ * with CDSTester(CDSTPlan).
+ * 
+ * Build a plan with a CDSTPlan.Builder, in the same way as adding
+ * communications to a tester.
+ * 
+ * Any CDSTReadHandler or CDSTWriteHandler in the plan is shared by every run,
+ * so must be safe to use from all of them.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public final class CDSTPlan<InputType, OutputType> {
+    
+    private final CDSTCommunication<InputType, OutputType>[] comms;
+    
+    private CDSTPlan(CDSTCommunication<InputType, OutputType>[] comms){
+        this.comms = comms;
+    }
+    
+    /**
+     * @return the number of communications in the plan
+     */
+    public int size(){
+        return this.comms.length;
+    }
+    
+    CDSTCommunication<InputType, OutputType> get(int index){
+        return this.comms[index];
+    }
+    
+    /**
+     * Builds up the list of communications for a plan
+     */
+    public static class Builder<InputType, OutputType> {
+        
+        private final ArrayList<CDSTCommunication<InputType, OutputType>>
+            comms = new ArrayList<CDSTCommunication<InputType, OutputType>>();
+        
+        /**
+         * How much of the call site to capture for each communication added
+         */
+        private CDSTTraceCapture traceCapture = CDSTTraceCapture.FULL;
+        
+        /**
+         * The logical channel of each communication added
+         */
+        private int channel = 0;
+        
+        /**
+         * Choose how much of the call site to capture for each communication
+         * added after this, to be used as the trace if it fails.
+         * @param traceCapture
+         */
+        public void setTraceCapture(CDSTTraceCapture traceCapture){
+            this.traceCapture = traceCapture;
+        }
+        
+        /**
+         * Put each communication added after this on the given logical
+         * channel (0 to begin with), for testing a multiplexed stream (see
+         * CDSTester.setMultiplexHandler()).
+         * @param channel
+         * @throws CDSTException if the channel is negative
+         */
+        public void setChannel(int channel) throws CDSTException {
+            this.channel = CDSTCommunication.checkChannel(channel);
+        }
+        
+        /**
+         * Expect some output from the stream at this point.
+         * @param object
+         */
+        public void addOutputRead(OutputType object){
+            this.add(CDSTCommunication.<InputType, OutputType>output(
+                object, this.traceCapture.capture(),
+                CDSTCommunication.DEFAULT_DEADLINE));
+        }
+        
+        /**
+         * Expect some output from the stream at this point, failing if it
+         * hasn't arrived within the deadline.
+         * @param object
+         * @param deadline - in milliseconds, 0 for no deadline
+         * @throws CDSTException if the deadline is negative
+         */
+        public void addOutputRead(OutputType object, long deadline)
+                throws CDSTException {
+            this.add(CDSTCommunication.<InputType, OutputType>output(
+                object, this.traceCapture.capture(),
+                CDSTCommunication.checkDeadline(deadline)));
+        }
+        
+        /**
+         * Expect all of these outputs from the stream at this point, in any
+         * order, with each output expected as many times as it appears.
+         * @param objects
+         * @throws CDSTException if the group is empty or expects null
+         */
+        public void addOutputGroup(Collection<? extends OutputType> objects)
+                throws CDSTException {
+            this.add(
+                CDSTCommunication.<InputType, OutputType>outputGroup(
+                    OutputGroup.<OutputType>of(objects),
+                    this.traceCapture.capture(),
+                    CDSTCommunication.DEFAULT_DEADLINE));
+        }
+        
+        /**
+         * Expect these outputs from the stream at this point, in any order,
+         * each as many times as given.
+         * @param counts
+         * @throws CDSTException if the group is empty, expects null or has a
+         * count below 1
+         */
+        public void addOutputGroup(Map<? extends OutputType, Integer> counts)
+                throws CDSTException {
+            this.add(
+                CDSTCommunication.<InputType, OutputType>outputGroup(
+                    new OutputGroup<OutputType>(counts),
+                    this.traceCapture.capture(),
+                    CDSTCommunication.DEFAULT_DEADLINE));
+        }
+        
+        /**
+         * Write to the stream at this point.
+         * @param object
+         */
+        public void addInputWrite(InputType object){
+            this.add(CDSTCommunication.<InputType, OutputType>input(
+                object, this.traceCapture.capture(),
+                CDSTCommunication.DEFAULT_WRITE_DELAY));
+        }
+        
+        /**
+         * Write to the stream at this point, after waiting the given delay
+         * instead of the tester's write delay.
+         * @param object
+         * @param writeDelay - in milliseconds
+         * @throws CDSTException if the write delay is negative
+         */
+        public void addInputWrite(InputType object, long writeDelay)
+                throws CDSTException {
+            this.add(CDSTCommunication.<InputType, OutputType>input(
+                object, this.traceCapture.capture(),
+                CDSTCommunication.checkWriteDelay(writeDelay)));
+        }
+        
+        /**
+         * Expect some output from the stream at this point, and pass the
+         * object to the handler.
+         * @param handler
+         */
+        public void addOutputRead(CDSTReadHandler<OutputType> handler){
+            this.add(CDSTCommunication.<InputType, OutputType>output(
+                handler, this.traceCapture.capture(),
+                CDSTCommunication.DEFAULT_DEADLINE));
+        }
+        
+        /**
+         * Expect some output from the stream at this point, and pass the
+         * object to the handler, failing if it hasn't arrived within the
+         * deadline.
+         * @param handler
+         * @param deadline - in milliseconds, 0 for no deadline
+         * @throws CDSTException if the deadline is negative
+         */
+        public void addOutputRead(CDSTReadHandler<OutputType> handler,
+                                  long deadline) throws CDSTException {
+            this.add(CDSTCommunication.<InputType, OutputType>output(
+                handler, this.traceCapture.capture(),
+                CDSTCommunication.checkDeadline(deadline)));
+        }
+        
+        /**
+         * Expect some output from the stream at this point, failing if it
+         * arrives more than maxLatency after the last input written before
+         * it.
+         * @param object
+         * @param maxLatency
+         * @param unit
+         * @throws CDSTException if the maximum latency is negative
+         */
+        public void addOutputRead(OutputType object, long maxLatency,
+                                  TimeUnit unit) throws CDSTException {
+            this.add(CDSTCommunication.<InputType, OutputType>output(
+                object, this.traceCapture.capture(),
+                CDSTCommunication.DEFAULT_DEADLINE,
+                CDSTCommunication.checkMaxLatency(maxLatency, unit)));
+        }
+        
+        /**
+         * Expect some output from the stream at this point, and pass the
+         * object to the handler, failing if it arrives more than maxLatency
+         * after the last input written before it.
+         * @param handler
+         * @param maxLatency
+         * @param unit
+         * @throws CDSTException if the maximum latency is negative
+         */
+        public void addOutputRead(CDSTReadHandler<OutputType> handler,
+                                  long maxLatency, TimeUnit unit)
+                throws CDSTException {
+            this.add(CDSTCommunication.<InputType, OutputType>output(
+                handler, this.traceCapture.capture(),
+                CDSTCommunication.DEFAULT_DEADLINE,
+                CDSTCommunication.checkMaxLatency(maxLatency, unit)));
+        }
+        
+        /**
+         * Write to the stream at this point, using a handler.
+         * @param handler
+         */
+        public void addInputWrite(CDSTWriteHandler<InputType> handler){
+            this.add(CDSTCommunication.<InputType, OutputType>input(
+                handler, this.traceCapture.capture(),
+                CDSTCommunication.DEFAULT_WRITE_DELAY));
+        }
+        
+        /**
+         * Write to the stream at this point using a handler, after waiting
+         * the given delay instead of the tester's write delay.
+         * @param handler
+         * @param writeDelay - in milliseconds
+         * @throws CDSTException if the write delay is negative
+         */
+        public void addInputWrite(CDSTWriteHandler<InputType> handler,
+                                  long writeDelay) throws CDSTException {
+            this.add(CDSTCommunication.<InputType, OutputType>input(
+                handler, this.traceCapture.capture(),
+                CDSTCommunication.checkWriteDelay(writeDelay)));
+        }
+        
+        private void add(CDSTCommunication<InputType, OutputType> comm){
+            if(this.channel != 0)
+                comm = comm.onChannel(this.channel);
+            this.comms.add(comm);
+        }
+        
+        /**
+         * Compile the communications added so far into a plan, the builder
+         * can carry on being used afterwards.
+         * @return
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public CDSTPlan<InputType, OutputType> build(){
+            return new CDSTPlan<InputType, OutputType>(
+                this.comms.toArray(new CDSTCommunication[this.comms.size()]));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.io.PrintStream;
+
+/**
+ * Writes each event to a PrintStream as a line prefixed with [CDST], this is
+ * what testers use unless given another sink.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTPrintSink implements CDSTTraceSink {
+    
+    /**
+     * Sink writing to stdout
+     */
+    public static final CDSTPrintSink STDOUT = new CDSTPrintSink(System.out);
+    
+    private final PrintStream out;
+    
+    public CDSTPrintSink(PrintStream out){
+        this.out = out;
+    }
+
+    @Override
+    public void trace(CDSTester<?, ?> tester, CDSTTraceEvent event,
+                      Object subject, long nanoTime) {
+        this.out.println("[CDST] " + event.format(subject));
+    }
+}
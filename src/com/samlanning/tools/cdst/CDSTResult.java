@@ -0,0 +1,105 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * The outcome of running a tester: whether it succeeded, and if not the
+ * failure that was reported to the CDSTHandler.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTResult {
+    
+    private final String failureMessage;
+    private final Exception trace;
+    private final long elapsedNanos;
+    private final long outputs;
+    private final CDSTTimingReport timings;
+    
+    CDSTResult(String failureMessage, Exception trace, long elapsedNanos,
+               long outputs, CDSTTimingReport timings){
+        this.failureMessage = failureMessage;
+        this.trace = trace;
+        this.elapsedNanos = elapsedNanos;
+        this.outputs = outputs;
+        this.timings = timings;
+    }
+    
+    public boolean isSuccess(){
+        return this.failureMessage == null;
+    }
+    
+    /**
+     * @return the message passed to CDSTHandler.fail(), or null if the test
+     *         succeeded
+     */
+    public String getFailureMessage(){
+        return this.failureMessage;
+    }
+    
+    /**
+     * @return the trace passed to CDSTHandler.fail() (or the exception that
+     *         stopped the test from running), or null if the test succeeded
+     */
+    public Exception getTrace(){
+        return this.trace;
+    }
+    
+    /**
+     * @return how long the test took to run, in nanoseconds
+     */
+    public long getElapsedNanos(){
+        return this.elapsedNanos;
+    }
+    
+    /**
+     * @return how many correct outputs were read from the stream
+     */
+    public long getOutputs(){
+        return this.outputs;
+    }
+    
+    /**
+     * @return correct outputs read per second over the whole test
+     */
+    public double getThroughput(){
+        if(this.elapsedNanos == 0)
+            return 0;
+        return this.outputs * 1e9 / this.elapsedNanos;
+    }
+    
+    /**
+     * @return when each step happened, or null if the tester wasn't asked for
+     *         a report (see CDSTester.setTimingReport())
+     */
+    public CDSTTimingReport getTimingReport(){
+        return this.timings;
+    }
+    
+    public String toString(){
+        if(this.isSuccess())
+            return String.format("SUCCESS (%d ms)",
+                                 this.elapsedNanos / 1000000);
+        else
+            return String.format("FAILURE (%d ms): %s",
+                                 this.elapsedNanos / 1000000,
+                                 this.failureMessage);
+    }
+}
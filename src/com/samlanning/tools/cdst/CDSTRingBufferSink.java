@@ -0,0 +1,156 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Records events into a lock-free ring buffer, and passes them on to another
+ * sink from a background thread. The threads being tested only pay for
+ * claiming a slot and storing references, so logging doesn't change the
+ * timing being tested.
+ * 
+ * If the ring buffer is full, events are dropped (and counted) rather than
+ * blocking the thread being tested.
+ * 
+ * Subjects are formatted when they are drained, so they shouldn't be changed
+ * after they have been passed to the tester.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTRingBufferSink implements CDSTTraceSink {
+    
+    public static final int DEFAULT_CAPACITY = 8192;
+    
+    /**
+     * How long the draining thread sleeps when there is nothing to drain
+     */
+    private static final long IDLE_PARK_NANOS = 1000000;
+    
+    private final MpscRing<Entry> ring;
+    private final CDSTTraceSink delegate;
+    
+    private final AtomicLong dropped = new AtomicLong(0);
+    
+    private final Thread drainer;
+    private volatile boolean closed = false;
+    
+    /**
+     * @param capacity - how many events to buffer (rounded up to a power of 2)
+     * @param delegate - sink to pass the events on to
+     */
+    public CDSTRingBufferSink(int capacity, CDSTTraceSink delegate){
+        this.ring = new MpscRing<Entry>(capacity, new Supplier<Entry>() {
+            @Override
+            public Entry get() {
+                return new Entry();
+            }
+        });
+        this.delegate = delegate;
+        this.drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CDSTRingBufferSink.this.drainLoop();
+            }
+        }, "CDSTRingBufferSink drainer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+    
+    /**
+     * Buffer events before printing them to stdout
+     */
+    public CDSTRingBufferSink(){
+        this(DEFAULT_CAPACITY, CDSTPrintSink.STDOUT);
+    }
+
+    @Override
+    public void trace(CDSTester<?, ?> tester, CDSTTraceEvent event,
+                      Object subject, long nanoTime) {
+        long position = this.ring.claim();
+        if(position < 0){
+            this.dropped.incrementAndGet();
+            return;
+        }
+        Entry entry = this.ring.entry(position);
+        entry.tester = tester;
+        entry.event = event;
+        entry.subject = subject;
+        entry.nanoTime = nanoTime;
+        this.ring.publish(position);
+    }
+    
+    /**
+     * @return how many events have been dropped because the buffer was full
+     */
+    public long getDropped(){
+        return this.dropped.get();
+    }
+    
+    /**
+     * Pass on all of the events buffered so far, and stop the background
+     * thread
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        this.closed = true;
+        LockSupport.unpark(this.drainer);
+        this.drainer.join();
+    }
+    
+    private void drainLoop(){
+        while(true){
+            boolean closing = this.closed;
+            if(!this.drain() && closing)
+                return;
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+    
+    /**
+     * Pass on everything currently in the buffer
+     * @return whether anything was drained
+     */
+    private boolean drain(){
+        boolean drained = false;
+        Entry entry;
+        while((entry = this.ring.peek()) != null){
+            CDSTester<?, ?> tester = entry.tester;
+            CDSTTraceEvent event = entry.event;
+            Object subject = entry.subject;
+            long nanoTime = entry.nanoTime;
+            entry.tester = null;
+            entry.subject = null;
+            this.ring.release();
+            this.delegate.trace(tester, event, subject, nanoTime);
+            drained = true;
+        }
+        return drained;
+    }
+    
+    private static class Entry {
+        CDSTester<?, ?> tester;
+        CDSTTraceEvent event;
+        Object subject;
+        long nanoTime;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * A single conversation to be run as part of a CDSTSuite.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public interface CDSTScript {
+    
+    /**
+     * Set up the stream under test, and a tester for it which is ready to
+     * run (its handler set and communications added). The suite will then
+     * call run() on the tester from one of its threads.
+     * 
+     * @return the tester to run
+     * @throws Exception if the stream could not be set up, this is reported
+     *         as a failure of the script
+     */
+    public CDSTester<?, ?> prepare() throws Exception;
+    
+    /**
+     * Tear down whatever prepare() set up for the tester (such as closing
+     * its connection and stopping the stream), called once the tester has
+     * finished running, whether or not it passed.
+     * 
+     * @param tester - the tester returned by prepare()
+     * @throws Exception if the stream could not be torn down, this is
+     *         reported as a failure of a script which otherwise passed
+     */
+    public void finished(CDSTester<?, ?> tester) throws Exception;
+    
+}
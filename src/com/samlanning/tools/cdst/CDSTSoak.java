@@ -0,0 +1,325 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a script over and over to load-test a stream, reporting the
+ * throughput and the latency of each output (from the last input written
+ * before it) instead of just whether it worked.
+ * 
+ * The script is repeated for a number of iterations, or for a length of
+ * time, whichever is reached first. A warm-up phase can be run first (for
+ * the JIT, caches and connection pools of the stream to settle), which is
+ * checked like any other run but not measured.
+ * 
+ * A plan can be soaked on a single connection, where one tester runs the
+ * plan again and again as one long script, or a CDSTScript can be soaked
+ * with a fresh tester (and whatever it sets up) for each iteration. The soak
+ * stops at the first failure.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTSoak {
+    
+    /**
+     * Connects a tester to the stream being soaked
+     */
+    public interface Connection<InputType, OutputType> {
+        
+        /**
+         * Connect the stream to the tester, setting its handler and passing
+         * outputs to tester.readFromStream() (such as with
+         * CDSTPipe.attach()), and make any other changes to the tester
+         * before it is run, such as setWindow()
+         * 
+         * @param tester
+         * @throws Exception if the stream could not be connected
+         */
+        public void connect(CDSTester<InputType, OutputType> tester)
+            throws Exception;
+    }
+    
+    private long iterations = 0;
+    private long durationNanos = 0;
+    private long warmupIterations = 0;
+    private long warmupNanos = 0;
+    private long writeDelay = 0;
+    
+    /**
+     * Stop after this many iterations (after the warm-up)
+     * @param iterations
+     * @throws CDSTException if iterations is less than 1
+     */
+    public void setIterations(long iterations) throws CDSTException {
+        if(iterations < 1)
+            throw new CDSTException(
+                "Iterations must be at least 1: " + iterations);
+        this.iterations = iterations;
+    }
+    
+    /**
+     * Stop starting new iterations after this many milliseconds (after the
+     * warm-up)
+     * @param duration
+     * @throws CDSTException if duration is less than 1
+     */
+    public void setDuration(long duration) throws CDSTException {
+        if(duration < 1)
+            throw new CDSTException(
+                "Duration must be at least 1 ms: " + duration);
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+    }
+    
+    /**
+     * Run this many iterations before measuring (default 0, no warm-up)
+     * @param iterations
+     * @throws CDSTException if iterations is negative
+     */
+    public void setWarmupIterations(long iterations) throws CDSTException {
+        if(iterations < 0)
+            throw new CDSTException(
+                "Iterations can't be negative: " + iterations);
+        this.warmupIterations = iterations;
+    }
+    
+    /**
+     * Run iterations for this many milliseconds before measuring (default
+     * 0, no warm-up)
+     * @param duration
+     * @throws CDSTException if duration is negative
+     */
+    public void setWarmupDuration(long duration) throws CDSTException {
+        if(duration < 0)
+            throw new CDSTException(
+                "Duration can't be negative: " + duration);
+        this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+    }
+    
+    /**
+     * The write delay of the tester when soaking a plan on one connection
+     * (default 0, see CDSTester.writeDelay)
+     * @param writeDelay
+     * @throws CDSTException if writeDelay is negative
+     */
+    public void setWriteDelay(long writeDelay) throws CDSTException {
+        if(writeDelay < 0)
+            throw new CDSTException(
+                "Write delay can't be negative: " + writeDelay);
+        this.writeDelay = writeDelay;
+    }
+    
+    /**
+     * Soak a plan on a single connection, running it with one tester as one
+     * long script
+     * @param plan
+     * @param connection
+     * @return the result of the soak
+     * @throws CDSTException
+     */
+    public <InputType, OutputType> CDSTSoakResult run(
+            CDSTPlan<InputType, OutputType> plan,
+            Connection<InputType, OutputType> connection)
+            throws CDSTException {
+        
+        this.assertLimited();
+        if(plan.size() == 0)
+            throw new CDSTException("Can't soak an empty plan");
+        
+        CDSTHistogram latencies = new CDSTHistogram();
+        Loop<InputType, OutputType> loop =
+            new Loop<InputType, OutputType>(plan, latencies);
+        CDSTester<InputType, OutputType> tester =
+            new CDSTester<InputType, OutputType>(loop, this.writeDelay);
+        
+        CDSTResult result;
+        try {
+            connection.connect(tester);
+            tester.setLatencyHistogram(latencies);
+            tester.run();
+            result = tester.getResult();
+        } catch (Exception e) {
+            result = failure(e, 0);
+        }
+        
+        long elapsed = System.nanoTime() - loop.start;
+        return new CDSTSoakResult(result.isSuccess() ? null : result,
+                                  loop.measured ? loop.iterations : 0,
+                                  loop.measured ? elapsed : 0,
+                                  latencies);
+    }
+    
+    /**
+     * Soak a script, preparing a new tester for each iteration, and calling
+     * finished() on the script once each tester has run
+     * @param script
+     * @return the result of the soak
+     * @throws CDSTException
+     */
+    public CDSTSoakResult run(CDSTScript script) throws CDSTException {
+        
+        this.assertLimited();
+        
+        long start = System.nanoTime();
+        for(long i = 0; !this.done(i, start, this.warmupIterations,
+                                   this.warmupNanos); i++){
+            CDSTResult result = runOnce(script, null);
+            if(!result.isSuccess())
+                return new CDSTSoakResult(result, 0, 0, new CDSTHistogram());
+        }
+        
+        CDSTHistogram latencies = new CDSTHistogram();
+        start = System.nanoTime();
+        long i;
+        for(i = 0; !this.done(i, start, this.iterations, this.durationNanos);
+            i++){
+            CDSTResult result = runOnce(script, latencies);
+            if(!result.isSuccess())
+                return new CDSTSoakResult(result, i,
+                                          System.nanoTime() - start,
+                                          latencies);
+        }
+        return new CDSTSoakResult(null, i, System.nanoTime() - start,
+                                  latencies);
+    }
+    
+    private static CDSTResult runOnce(CDSTScript script,
+                                      CDSTHistogram latencies) {
+        long start = System.nanoTime();
+        CDSTester<?, ?> tester;
+        try {
+            tester = script.prepare();
+        } catch (Exception e) {
+            return failure(e, System.nanoTime() - start);
+        }
+        
+        CDSTResult result = null;
+        Exception teardown = null;
+        try {
+            if(latencies != null)
+                tester.setLatencyHistogram(latencies);
+            tester.run();
+            result = tester.getResult();
+        } catch (Exception e) {
+            result = failure(e, System.nanoTime() - start);
+        } finally {
+            try {
+                script.finished(tester);
+            } catch (Exception e) {
+                teardown = e;
+            }
+        }
+        
+        if(teardown != null && result.isSuccess())
+            return new CDSTResult("Script could not be torn down: " +
+                                  teardown, teardown,
+                                  System.nanoTime() - start, 0, null);
+        return result;
+    }
+    
+    private static CDSTResult failure(Exception e, long elapsedNanos) {
+        return new CDSTResult("Script could not be run: " + e, e,
+                              elapsedNanos, 0, null);
+    }
+    
+    /**
+     * Whether a phase which has run the given number of iterations since the
+     * given time is over
+     */
+    private boolean done(long iterations, long start, long maxIterations,
+                         long maxNanos) {
+        return (maxIterations > 0 && iterations >= maxIterations) ||
+               (maxNanos > 0 && System.nanoTime() - start >= maxNanos) ||
+               (maxIterations <= 0 && maxNanos <= 0);
+    }
+    
+    private void assertLimited() throws CDSTException {
+        if(this.iterations <= 0 && this.durationNanos <= 0)
+            throw new CDSTException(
+                "Set a number of iterations or a duration to soak for");
+    }
+    
+    /**
+     * Repeats a plan through the warm-up and then the measured iterations.
+     * Only used by the thread moving the test on, which has the baton.
+     */
+    private class Loop<InputType, OutputType>
+            implements Iterator<CDSTCommunication<InputType, OutputType>> {
+        
+        private final CDSTPlan<InputType, OutputType> plan;
+        private final CDSTHistogram latencies;
+        
+        private int index = 0;
+        private long iterations = 0;
+        private long start;
+        private boolean started = false;
+        private boolean measured = false;
+        private boolean finished = false;
+        
+        public Loop(CDSTPlan<InputType, OutputType> plan,
+                    CDSTHistogram latencies){
+            this.plan = plan;
+            this.latencies = latencies;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            if(!this.started){
+                this.started = true;
+                this.start = System.nanoTime();
+                this.checkPhase();
+            }
+            if(this.index == this.plan.size() && !this.finished){
+                this.iterations++;
+                this.index = 0;
+                this.checkPhase();
+            }
+            return !this.finished;
+        }
+        
+        /**
+         * Move from the warm-up to measuring, or finish, at the end of an
+         * iteration
+         */
+        private void checkPhase() {
+            if(!this.measured && done(this.iterations, this.start,
+                                      warmupIterations, warmupNanos)){
+                this.measured = true;
+                this.latencies.reset();
+                this.iterations = 0;
+                this.start = System.nanoTime();
+            }
+            if(this.measured && done(this.iterations, this.start,
+                                     CDSTSoak.this.iterations,
+                                     durationNanos))
+                this.finished = true;
+        }
+        
+        @Override
+        public CDSTCommunication<InputType, OutputType> next() {
+            if(!this.hasNext())
+                throw new NoSuchElementException();
+            return this.plan.get(this.index++);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * The outcome of a CDSTSoak, only counting the iterations after the warm-up.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTSoakResult {
+    
+    private final CDSTResult failure;
+    private final long iterations;
+    private final long elapsedNanos;
+    private final CDSTHistogram latencies;
+    
+    CDSTSoakResult(CDSTResult failure, long iterations, long elapsedNanos,
+                   CDSTHistogram latencies){
+        this.failure = failure;
+        this.iterations = iterations;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = latencies;
+    }
+    
+    /**
+     * @return true if every iteration (including the warm-up) succeeded
+     */
+    public boolean isSuccess(){
+        return this.failure == null;
+    }
+    
+    /**
+     * @return the result of the run which failed, or null if none did
+     */
+    public CDSTResult getFailure(){
+        return this.failure;
+    }
+    
+    /**
+     * @return how many times the script was completed after the warm-up
+     */
+    public long getIterations(){
+        return this.iterations;
+    }
+    
+    /**
+     * @return how long the iterations after the warm-up took, in nanoseconds
+     */
+    public long getElapsedNanos(){
+        return this.elapsedNanos;
+    }
+    
+    /**
+     * @return how many correct outputs were read after the warm-up
+     */
+    public long getOutputs(){
+        return this.latencies.getCount();
+    }
+    
+    /**
+     * @return correct outputs read per second after the warm-up
+     */
+    public double getThroughput(){
+        if(this.elapsedNanos == 0)
+            return 0;
+        return this.getOutputs() * 1e9 / this.elapsedNanos;
+    }
+    
+    /**
+     * @return the latency of each correct output read after the warm-up, in
+     *         nanoseconds (see CDSTester.setLatencyHistogram())
+     */
+    public CDSTHistogram getLatencies(){
+        return this.latencies;
+    }
+    
+    public String toString(){
+        String summary = String.format(
+            "%d iterations, %d outputs in %d ms (%.0f outputs/s), " +
+            "latency p50 %d us, p99 %d us, p99.9 %d us",
+            this.iterations,
+            this.getOutputs(),
+            this.elapsedNanos / 1000000,
+            this.getThroughput(),
+            this.latencies.getPercentile(50) / 1000,
+            this.latencies.getPercentile(99) / 1000,
+            this.latencies.getPercentile(99.9) / 1000);
+        if(this.failure == null)
+            return summary;
+        return "Failed: " + this.failure.getFailureMessage() + " (" +
+               summary + ")";
+    }
+}
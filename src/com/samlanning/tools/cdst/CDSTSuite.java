@@ -0,0 +1,264 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent scripts concurrently, each with its own tester.
+ * 
+ * Every tester blocks the thread that runs it for the whole conversation, so
+ * the scripts are spread over a bounded pool of threads (or any other
+ * executor, such as one creating a virtual thread per task).
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTSuite {
+    
+    private final ExecutorService executor;
+    
+    /**
+     * Whether the executor was created by (and should be shut down by) the
+     * suite
+     */
+    private final boolean ownExecutor;
+    
+    /**
+     * Stop running scripts after the first failure
+     */
+    private boolean failFast = false;
+    
+    private boolean run = false;
+    
+    private final LinkedHashMap<String, CDSTScript> scripts =
+        new LinkedHashMap<String, CDSTScript>();
+    
+    /**
+     * Create a suite which runs up to the given number of scripts at once
+     * @param parallelism
+     */
+    public CDSTSuite(int parallelism){
+        this.executor = Executors.newFixedThreadPool(parallelism);
+        this.ownExecutor = true;
+    }
+    
+    /**
+     * Create a suite which runs one script per available processor at once
+     */
+    public CDSTSuite(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Create a suite which runs its scripts on the given executor, for
+     * example Executors.newVirtualThreadPerTaskExecutor() where available.
+     * 
+     * The executor is not shut down by the suite.
+     * @param executor
+     */
+    public CDSTSuite(ExecutorService executor){
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+    
+    /**
+     * Stop running (and interrupt) the remaining scripts as soon as one
+     * fails, instead of running them all.
+     * @param failFast
+     */
+    public void setFailFast(boolean failFast){
+        this.failFast = failFast;
+    }
+    
+    /**
+     * Add a script to the suite
+     * @param name - must be unique within the suite
+     * @param script
+     * @throws CDSTException
+     */
+    public void add(String name, CDSTScript script) throws CDSTException {
+        
+        this.assertPreparing();
+        
+        if(this.scripts.containsKey(name))
+            throw new CDSTException("Already added script: " + name);
+        
+        this.scripts.put(name, script);
+    }
+    
+    /**
+     * Run all of the scripts, and wait for them to finish.
+     * 
+     * Every script which was prepared has finished() called on it once its
+     * tester stops, including when it is cancelled by failFast.
+     * @return the result of each script
+     * @throws CDSTException
+     */
+    public CDSTSuiteResult run() throws CDSTException {
+        
+        this.assertPreparing();
+        this.run = true;
+        
+        long start = System.nanoTime();
+        
+        ExecutorCompletionService<CDSTResult> completion =
+            new ExecutorCompletionService<CDSTResult>(this.executor);
+        Map<String, Future<CDSTResult>> futures =
+            new LinkedHashMap<String, Future<CDSTResult>>();
+        Map<String, ScriptTask> tasks = new LinkedHashMap<String, ScriptTask>();
+        
+        try {
+            for(Map.Entry<String, CDSTScript> e : this.scripts.entrySet()){
+                ScriptTask task = new ScriptTask(e.getValue());
+                tasks.put(e.getKey(), task);
+                futures.put(e.getKey(), completion.submit(task));
+            }
+            
+            for(int i = 0; i < futures.size(); i++){
+                CDSTResult result = completion.take().get();
+                if(this.failFast && !result.isSuccess()){
+                    for(Future<CDSTResult> future : futures.values())
+                        future.cancel(true);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            for(Future<CDSTResult> future : futures.values())
+                future.cancel(true);
+            throw new CDSTException(e);
+        } catch (ExecutionException e) {
+            // ScriptTask catches everything
+            throw new CDSTException(e);
+        } finally {
+            if(this.ownExecutor)
+                this.executor.shutdownNow();
+        }
+        
+        long wallNanos = System.nanoTime() - start;
+        
+        LinkedHashMap<String, CDSTResult> results =
+            new LinkedHashMap<String, CDSTResult>();
+        List<String> skipped = new ArrayList<String>();
+        List<String> cancelled = new ArrayList<String>();
+        for(Map.Entry<String, Future<CDSTResult>> e : futures.entrySet()){
+            try {
+                results.put(e.getKey(), e.getValue().get());
+            } catch (CancellationException ex) {
+                if(tasks.get(e.getKey()).started)
+                    cancelled.add(e.getKey());
+                else
+                    skipped.add(e.getKey());
+            } catch (InterruptedException ex) {
+                throw new CDSTException(ex);
+            } catch (ExecutionException ex) {
+                throw new CDSTException(ex);
+            }
+        }
+        
+        return new CDSTSuiteResult(results, skipped, cancelled, wallNanos);
+    }
+    
+    private void assertPreparing() throws CDSTException {
+        if(this.run)
+            throw new CDSTException("Already run, can't perform action.");
+    }
+    
+    /**
+     * Prepares and runs a single script, and tears it down again
+     */
+    private static class ScriptTask implements Callable<CDSTResult> {
+        
+        private final CDSTScript script;
+        
+        /**
+         * Set once the script has begun running, so that cancelling it can
+         * be told apart from never running it
+         */
+        private volatile boolean started = false;
+        
+        public ScriptTask(CDSTScript script){
+            this.script = script;
+        }
+        
+        @Override
+        public CDSTResult call() {
+            this.started = true;
+            long start = System.nanoTime();
+            CDSTester<?, ?> tester = null;
+            CDSTResult result = null;
+            try {
+                tester = this.script.prepare();
+                tester.run();
+                result = tester.getResult();
+            } catch (Throwable e) {
+                // Including errors, so one script can't abort the suite
+                result = failure("Script could not be run: ", e, start);
+            } finally {
+                if(tester != null){
+                    Throwable teardown = this.finish(tester);
+                    if(teardown != null && result != null &&
+                       result.isSuccess())
+                        result = failure("Script could not be torn down: ",
+                                         teardown, start);
+                }
+            }
+            return result;
+        }
+        
+        /**
+         * Call finished() on the script, even if the suite is cancelling it
+         * @return what finished() threw, if anything
+         */
+        private Throwable finish(CDSTester<?, ?> tester) {
+            // Let the script wait while tearing down, then pass the
+            // cancellation on
+            boolean interrupted = Thread.interrupted();
+            try {
+                this.script.finished(tester);
+                return null;
+            } catch (Throwable e) {
+                return e;
+            } finally {
+                if(interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+        
+        private static CDSTResult failure(String message, Throwable e,
+                                          long start) {
+            return new CDSTResult(
+                message + e,
+                e instanceof Exception ? (Exception) e : new Exception(e),
+                System.nanoTime() - start,
+                0,
+                null);
+        }
+    }
+}
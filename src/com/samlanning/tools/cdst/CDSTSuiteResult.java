@@ -0,0 +1,120 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of running a CDSTSuite.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTSuiteResult {
+    
+    private final Map<String, CDSTResult> results;
+    private final List<String> skipped;
+    private final List<String> cancelled;
+    private final long wallNanos;
+    
+    CDSTSuiteResult(Map<String, CDSTResult> results, List<String> skipped,
+                    List<String> cancelled, long wallNanos){
+        this.results = Collections.unmodifiableMap(results);
+        this.skipped = Collections.unmodifiableList(skipped);
+        this.cancelled = Collections.unmodifiableList(cancelled);
+        this.wallNanos = wallNanos;
+    }
+    
+    /**
+     * @return true if every script was run to the end, and all succeeded
+     */
+    public boolean isSuccess(){
+        return this.skipped.isEmpty() && this.cancelled.isEmpty() &&
+               this.getFailed() == 0;
+    }
+    
+    /**
+     * @return the result of each script that was run, by name, in the order
+     *         they were added to the suite
+     */
+    public Map<String, CDSTResult> getResults(){
+        return this.results;
+    }
+    
+    /**
+     * @return the names of scripts that were not run because the suite
+     *         stopped early (see CDSTSuite.setFailFast())
+     */
+    public List<String> getSkipped(){
+        return this.skipped;
+    }
+    
+    /**
+     * @return the names of scripts that were interrupted part-way through
+     *         because the suite stopped early (see CDSTSuite.setFailFast())
+     */
+    public List<String> getCancelled(){
+        return this.cancelled;
+    }
+    
+    public int getPassed(){
+        return this.results.size() - this.getFailed();
+    }
+    
+    public int getFailed(){
+        int failed = 0;
+        for(CDSTResult result : this.results.values())
+            if(!result.isSuccess())
+                failed++;
+        return failed;
+    }
+    
+    /**
+     * @return how long the whole suite took to run, in nanoseconds
+     */
+    public long getWallNanos(){
+        return this.wallNanos;
+    }
+    
+    /**
+     * @return the sum of the time each script took to run, in nanoseconds
+     *         (compare with getWallNanos() to see the effect of running the
+     *         scripts concurrently)
+     */
+    public long getTotalScriptNanos(){
+        long total = 0;
+        for(CDSTResult result : this.results.values())
+            total += result.getElapsedNanos();
+        return total;
+    }
+    
+    public String toString(){
+        return String.format(
+            "%d passed, %d failed, %d cancelled, %d skipped in %d ms " +
+            "(%d ms of scripts)",
+            this.getPassed(),
+            this.getFailed(),
+            this.cancelled.size(),
+            this.skipped.size(),
+            this.wallNanos / 1000000,
+            this.getTotalScriptNanos() / 1000000);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * When each step of a test happened, and how long each output took to
+ * arrive after the last input written before it (see
+ * CDSTester.setTimingReport()).
+ * 
+ * Steps are numbered by their position in the script, starting from 0.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTTimingReport {
+    
+    private final long[] nanos;
+    private final long[] latencies;
+    private final int steps;
+    private final CDSTHistogram histogram = new CDSTHistogram();
+    private int slowest = -1;
+    
+    /**
+     * @param nanos - when each step happened, from the start of the test, or
+     *                -1 if it didn't
+     * @param latencies - the latency of each output step, or -1
+     * @param steps - how many of the steps were reached
+     */
+    CDSTTimingReport(long[] nanos, long[] latencies, int steps){
+        this.nanos = nanos;
+        this.latencies = latencies;
+        this.steps = steps;
+        for(int i = 0; i < steps; i++){
+            if(latencies[i] < 0)
+                continue;
+            this.histogram.record(latencies[i]);
+            if(this.slowest < 0 || latencies[i] > latencies[this.slowest])
+                this.slowest = i;
+        }
+    }
+    
+    /**
+     * @return how many steps were reached
+     */
+    public int size(){
+        return this.steps;
+    }
+    
+    /**
+     * @param step
+     * @return when the input was written, or the output read, in nanoseconds
+     *         from the start of the test, or -1 if it wasn't
+     */
+    public long getNanos(int step){
+        return this.nanos[step];
+    }
+    
+    /**
+     * @param step
+     * @return how long the output took to arrive after the last input
+     *         written before it, in nanoseconds, or -1 if the step is an
+     *         input or wasn't reached
+     */
+    public long getLatency(int step){
+        return this.latencies[step];
+    }
+    
+    /**
+     * @return the latencies of all of the outputs read
+     */
+    public CDSTHistogram getLatencies(){
+        return this.histogram;
+    }
+    
+    /**
+     * @return the step of the output which took longest to arrive, or -1 if
+     *         no outputs were read
+     */
+    public int getSlowestStep(){
+        return this.slowest;
+    }
+    
+    public String toString(){
+        if(this.slowest < 0)
+            return String.format("%d steps, no outputs", this.steps);
+        return String.format(
+            "%d steps, output latency p50 %d us, p99 %d us, " +
+            "max %d us (step %d)",
+            this.steps,
+            this.histogram.getPercentile(50) / 1000,
+            this.histogram.getPercentile(99) / 1000,
+            this.latencies[this.slowest] / 1000,
+            this.slowest);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.lang.StackWalker.StackFrame;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * How much of the call site to capture when adding a communication, so that
+ * failures can point back at the addOutputRead() or addInputWrite() call
+ * that set up the failing communication.
+ * 
+ * The trace given to CDSTHandler.fail() is only built when a failure is
+ * actually reported.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public enum CDSTTraceCapture {
+    
+    /**
+     * Capture the full stack (the default), this is the most expensive.
+     */
+    FULL {
+        @Override
+        CallSite capture() {
+            return new CallSite.Full(new Exception());
+        }
+    },
+    
+    /**
+     * Capture only the frame that called into the tester.
+     */
+    TOP_FRAME {
+        @Override
+        CallSite capture() {
+            return new CallSite.TopFrame(WALKER.walk(CALLER).orElse(null));
+        }
+    },
+    
+    /**
+     * Don't capture anything, failures will be reported with an empty trace.
+     */
+    OFF {
+        @Override
+        CallSite capture() {
+            return CallSite.NONE;
+        }
+    };
+    
+    private static final String PACKAGE =
+        CDSTTraceCapture.class.getPackage().getName();
+    
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    
+    /**
+     * Finds the first frame outside of this package (subpackages such as the
+     * tests don't count as part of the tester)
+     */
+    private static final Function<Stream<StackFrame>, Optional<StackFrame>>
+        CALLER = new Function<Stream<StackFrame>, Optional<StackFrame>>() {
+            @Override
+            public Optional<StackFrame> apply(Stream<StackFrame> frames) {
+                return frames.filter(new Predicate<StackFrame>() {
+                    @Override
+                    public boolean test(StackFrame frame) {
+                        // Compared in place, without a substring per frame
+                        String name = frame.getClassName();
+                        return name.lastIndexOf('.') != PACKAGE.length() ||
+                               !name.startsWith(PACKAGE);
+                    }
+                }).findFirst();
+            }
+        };
+    
+    /**
+     * Capture the current call site according to this policy
+     */
+    abstract CallSite capture();
+}
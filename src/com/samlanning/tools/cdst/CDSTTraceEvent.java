@@ -0,0 +1,72 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * The things a tester reports to its CDSTTraceSink as it runs, each with the
+ * log level it is reported at.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public enum CDSTTraceEvent {
+    
+    RUNNING(CDSTester.L_INFO, "Running"),
+    FINISHED(CDSTester.L_INFO, "Finished (success)"),
+    
+    /**
+     * Subject is the input written
+     */
+    WRITE(CDSTester.L_INPUT, "Writing: %s"),
+    
+    /**
+     * Subject is the output read
+     */
+    READ(CDSTester.L_OUTPUT, "Read: %s"),
+    
+    NEXT(CDSTester.L_INTERNALS, "Next Communication..."),
+    
+    /**
+     * Subject is the next communication
+     */
+    NEXT_IS(CDSTester.L_INTERNALS, "... is: %s"),
+    
+    IDLE(CDSTester.L_INTERNALS, "Stream idle, writing early");
+    
+    /**
+     * The log level this event is reported at
+     */
+    public final int level;
+    
+    private final String format;
+    
+    private CDSTTraceEvent(int level, String format){
+        this.level = level;
+        this.format = format;
+    }
+    
+    /**
+     * Describe this event as it would be logged
+     * @param subject
+     * @return
+     */
+    public String format(Object subject){
+        return String.format(this.format, subject);
+    }
+}
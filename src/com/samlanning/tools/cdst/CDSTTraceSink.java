@@ -0,0 +1,45 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+/**
+ * Implement this to receive the events a tester logs, instead of them being
+ * written to stdout.
+ * 
+ * Events are only passed to the sink when the tester's log level includes
+ * the level of the event, and nothing is formatted before then.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public interface CDSTTraceSink {
+    
+    /**
+     * Handle an event from a tester, this is called from whichever thread
+     * the event happened on.
+     * @param tester - the tester the event came from
+     * @param event
+     * @param subject - what the event is about (see CDSTTraceEvent), or null
+     * @param nanoTime - when the event happened, from System.nanoTime() or
+     *                   the tester's clock (see CDSTClock)
+     */
+    public void trace(CDSTester<?, ?> tester, CDSTTraceEvent event,
+                      Object subject, long nanoTime);
+    
+}
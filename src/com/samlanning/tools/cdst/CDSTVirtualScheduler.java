@@ -0,0 +1,326 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler with its own clock which only moves when told to, for running
+ * tests without waiting for write delays or deadlines, and in an order which
+ * can be repeated.
+ * 
+ * Nothing runs in the background, tasks are run by whichever thread calls
+ * runUntilIdle() or runFor(), in order of the time they were scheduled for,
+ * and the clock jumps straight to the time of each task as it is run. Tasks
+ * scheduled for the same time are run in an order chosen by a random number
+ * generator with the given seed, so different seeds try different orders,
+ * and the same seed always chooses the same order.
+ * 
+ * Pass a virtual scheduler to CDSTester.runAsync(ScheduledExecutorService)
+ * and the tester will be timed by it, including its deadlines. For a test to
+ * be repeatable, the stream being tested should also do its work with the
+ * scheduler (such as passing outputs to readFromStream() in a task given to
+ * execute()), rather than in threads of its own.
+ * 
+ * To repeat a test which failed, use getSeed() to find the seed it used.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTVirtualScheduler extends AbstractExecutorService
+        implements ScheduledExecutorService, CDSTClock {
+    
+    private final long seed;
+    private final Random random;
+    
+    /**
+     * Everything below is guarded by this
+     */
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<Task<?>>();
+    private long now = 0;
+    private long submitted = 0;
+    private boolean shutdown = false;
+    
+    /**
+     * Create a virtual scheduler with a seed of its own (see getSeed())
+     */
+    public CDSTVirtualScheduler(){
+        this(System.nanoTime());
+    }
+    
+    /**
+     * Create a virtual scheduler which orders tasks scheduled for the same
+     * time using the given seed
+     * @param seed
+     */
+    public CDSTVirtualScheduler(long seed){
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+    
+    /**
+     * @return the seed used to order tasks scheduled for the same time
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+    
+    /**
+     * @return the virtual time, which starts at 0
+     */
+    @Override
+    public synchronized long nanoTime() {
+        return this.now;
+    }
+    
+    /**
+     * Run tasks until there are none left, including any scheduled by the
+     * tasks themselves. This never returns if there are periodic tasks that
+     * haven't been cancelled.
+     * 
+     * @return the number of tasks run
+     */
+    public int runUntilIdle() {
+        return this.runUntil(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Run the tasks scheduled within the given time from now, then move the
+     * clock to the end of that time
+     * @param time
+     * @param unit
+     * @return the number of tasks run
+     */
+    public int runFor(long time, TimeUnit unit) {
+        long until;
+        synchronized(this){
+            until = this.now + unit.toNanos(time);
+        }
+        int count = this.runUntil(until);
+        synchronized(this){
+            if(this.now < until)
+                this.now = until;
+        }
+        return count;
+    }
+    
+    private int runUntil(long until) {
+        int count = 0;
+        Task<?> task;
+        while((task = this.next(until)) != null){
+            task.run();
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Take the next task due by the given time, and move the clock to it
+     */
+    private synchronized Task<?> next(long until) {
+        Task<?> task = this.queue.peek();
+        if(task == null || task.time > until)
+            return null;
+        this.queue.poll();
+        if(task.time > this.now)
+            this.now = task.time;
+        return task;
+    }
+    
+    private synchronized <V> Task<V> enqueue(Task<V> task, long delay) {
+        if(this.shutdown)
+            throw new RejectedExecutionException(
+                "Virtual scheduler has been shut down");
+        task.time = this.now + Math.max(0, delay);
+        task.tiebreak = this.random.nextLong();
+        task.sequence = this.submitted++;
+        this.queue.add(task);
+        return task;
+    }
+    
+    private synchronized boolean dequeue(Task<?> task) {
+        return this.queue.remove(task);
+    }
+    
+    // ***************
+    // ScheduledExecutorService
+    
+    @Override
+    public void execute(Runnable command) {
+        this.schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay,
+                                       TimeUnit unit) {
+        return this.schedule(Executors.callable(command), delay, unit);
+    }
+    
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay,
+                                           TimeUnit unit) {
+        return this.enqueue(new Task<V>(callable, 0), unit.toNanos(delay));
+    }
+    
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command,
+                                                  long initialDelay,
+                                                  long period,
+                                                  TimeUnit unit) {
+        if(period <= 0)
+            throw new IllegalArgumentException("Period must be positive");
+        return this.enqueue(
+            new Task<Object>(Executors.callable(command), unit.toNanos(period)),
+            unit.toNanos(initialDelay));
+    }
+    
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+                                                     long initialDelay,
+                                                     long delay,
+                                                     TimeUnit unit) {
+        if(delay <= 0)
+            throw new IllegalArgumentException("Delay must be positive");
+        return this.enqueue(
+            new Task<Object>(Executors.callable(command), -unit.toNanos(delay)),
+            unit.toNanos(initialDelay));
+    }
+    
+    @Override
+    public synchronized void shutdown() {
+        this.shutdown = true;
+    }
+    
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        List<Runnable> tasks = new ArrayList<Runnable>(this.queue);
+        this.queue.clear();
+        return tasks;
+    }
+    
+    @Override
+    public synchronized boolean isShutdown() {
+        return this.shutdown;
+    }
+    
+    @Override
+    public synchronized boolean isTerminated() {
+        return this.shutdown && this.queue.isEmpty();
+    }
+    
+    /**
+     * Nothing runs unless asked to, so this doesn't wait
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return this.isTerminated();
+    }
+    
+    @Override
+    public String toString() {
+        return "CDSTVirtualScheduler(seed=" + this.seed + ")";
+    }
+    
+    /**
+     * A scheduled task, ordered by time, then by a random tiebreak
+     */
+    private class Task<V> extends FutureTask<V>
+            implements RunnableScheduledFuture<V> {
+        
+        /**
+         * 0 if not periodic, positive for a fixed rate, and negative for a
+         * fixed delay
+         */
+        private final long period;
+        
+        private long time;
+        private long tiebreak;
+        private long sequence;
+        
+        public Task(Callable<V> callable, long period){
+            super(callable);
+            this.period = period;
+        }
+        
+        @Override
+        public boolean isPeriodic() {
+            return this.period != 0;
+        }
+        
+        @Override
+        public void run() {
+            if(!this.isPeriodic()){
+                super.run();
+            } else if(this.runAndReset()){
+                if(this.period > 0){
+                    CDSTVirtualScheduler.this.enqueue(
+                        this, this.time + this.period - nanoTime());
+                } else {
+                    CDSTVirtualScheduler.this.enqueue(this, -this.period);
+                }
+            }
+        }
+        
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            // Don't let cancelled tasks move the clock
+            if(cancelled)
+                CDSTVirtualScheduler.this.dequeue(this);
+            return cancelled;
+        }
+        
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(this.time - nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public int compareTo(Delayed other) {
+            if(other == this)
+                return 0;
+            if(!(other instanceof Task)){
+                return Long.compare(this.getDelay(TimeUnit.NANOSECONDS),
+                                    other.getDelay(TimeUnit.NANOSECONDS));
+            }
+            Task<?> task = (Task<?>) other;
+            if(this.time != task.time)
+                return Long.compare(this.time, task.time);
+            if(this.tiebreak != task.tiebreak)
+                return Long.compare(this.tiebreak, task.tiebreak);
+            return Long.compare(this.sequence, task.sequence);
+        }
+        
+    }
+    
+}
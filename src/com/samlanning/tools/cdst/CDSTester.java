@@ -18,10 +18,24 @@
 
 package com.samlanning.tools.cdst;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 /**
  * Tool which allows you to test arbitrary duplex "streams" that run over
@@ -37,7 +51,7 @@ import java.util.concurrent.Semaphore;
 public class CDSTester<InputType, OutputType> {
     
     // Log Levels
-    // Logs are written to stdout
+    // Logs are written to stdout, unless another CDSTTraceSink is set
     public static final int L_NONE = 0x0;
     public static final int L_INFO = 0x1;
     public static final int L_INPUT = 0x2;
@@ -48,338 +62,2550 @@ public class CDSTester<InputType, OutputType> {
     public static final int L_ALL = L_INFO | L_INPUT | L_OUTPUT | L_INTERNALS;
     
     private int logLevel = L_NONE;
+    
+    /**
+     * Where logged events are sent
+     */
+    private CDSTTraceSink traceSink = CDSTPrintSink.STDOUT;
 
     /**
      * How long should the tester wait before writing to the input to try and
      * catch out invalid outputs from the stream?
      * 
+     * If the stream signals that it is idle (see signalIdle() and
+     * setIdleDetector()) the tester will write sooner, so this is only the
+     * upper bound on the wait.
+     * 
      * In milliseconds
      */
     private long writeDelay = 20;
+    
+    /**
+     * How long to wait for each output which doesn't have its own deadline,
+     * in milliseconds (0 to wait forever)
+     */
+    private long defaultDeadline = 0;
 
-    private Semaphore lock = new Semaphore(1);
-    private Semaphore readWait = new Semaphore(1);
+    /**
+     * Passed between the thread running the test and the thread reading from
+     * the stream
+     */
+    private final Baton baton = new Baton();
+    
+    /**
+     * Released each time the stream signals that it is idle
+     */
+    private Semaphore idle = new Semaphore(0);
+    
+    /**
+     * Optional detector used instead of signalIdle() to wait for the stream
+     * to become idle before writing
+     */
+    private CDSTIdleDetector idleDetector = null;
     
     /**
      * Current state of the test
      */
-    private TesterState state = TesterState.PREPARING;
+    private volatile TesterState state = TesterState.PREPARING;
+    
+    /**
+     * Identifies the tester in JDK Flight Recorder events
+     */
+    private static final AtomicLong ids = new AtomicLong(0);
+    private final long id = ids.incrementAndGet();
+    
+    /**
+     * Handler to forward requests on to
+     */
+    private CDSTHandler<InputType> handler = null;
+    
+    /**
+     * When multiplexing (see setMultiplexHandler()), the same handler, and
+     * the channels of the plan in order of their numbers with a cursor for
+     * each
+     */
+    private CDSTMultiplexHandler<InputType> multiplexHandler = null;
+    private int[] channelIds;
+    private ChannelCursor[] channels;
+    
+    /**
+     * How many outputs can be waiting to be checked when multiplexing, unless
+     * set with setIngestion()
+     */
+    private static final int MULTIPLEX_CAPACITY = 1024;
+    
+    /**
+     * Longest a reader blocked on a full ingestion buffer parks before
+     * checking whether the tester has stopped
+     */
+    private static final long BLOCKED_PARK_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(10);
+    
+    /**
+     * Communications which should take place, added to the tester directly
+     * (or null when running a plan given to the constructor)
+     */
+    private CDSTPlan.Builder<InputType, OutputType> builder =
+        new CDSTPlan.Builder<InputType, OutputType>();
+    
+    /**
+     * The plan being run
+     */
+    private CDSTPlan<InputType, OutputType> plan = null;
+    
+    /**
+     * Communications still to come when running a script given to the
+     * constructor as an iterator, and the one after nextExpectedComm if it
+     * has been taken from the iterator already
+     */
+    private Iterator<? extends CDSTCommunication<InputType, OutputType>>
+        script = null;
+    private CDSTCommunication<InputType, OutputType> peeked = null;
+    
+    /**
+     * Position in the plan (or script) of the communication after
+     * nextExpectedComm
+     */
+    private int position = 0;
+    
+    private CDSTCommunication<InputType, OutputType> nextExpectedComm;
+    
+    /**
+     * The input produced for nextExpectedComm, if it has been yet
+     */
+    private InputType nextInput;
+    
+    /**
+     * When nextExpectedComm is a group of outputs, how many more times each
+     * output is expected, and how many outputs are left altogether (0 when
+     * it isn't a group)
+     */
+    private int[] groupCounts;
+    private int groupLeft = 0;
+    
+    /**
+     * How many outputs may be outstanding at once (see setWindow()), and when
+     * running with a window bigger than 1, the outputs which have been
+     * skipped over but not read yet, oldest first
+     */
+    private int window = 1;
+    private final ArrayDeque<CDSTCommunication<InputType, OutputType>>
+        inFlight = new ArrayDeque<CDSTCommunication<InputType, OutputType>>();
+    
+    /**
+     * How many outputs the communications in inFlight expect between them
+     */
+    private int inFlightOutputs = 0;
+    
+    /**
+     * When running with a window, when the input before each output in
+     * inFlight was written and the step of each output (rings in the same
+     * order, starting at inFlightHead), for measuring latency
+     */
+    private long[] inFlightWrites;
+    private int[] inFlightSteps;
+    private int inFlightHead = 0;
+    
+    /**
+     * When ingesting (see setIngestion()), outputs waiting to be checked by
+     * the test thread, what to do when there's no room for more, whether any
+     * have been lost, the thread to wake when there are more, and when the
+     * output being checked arrived
+     */
+    private MpscRing<Arrival<OutputType>> arrivals = null;
+    private boolean sequenced = false;
+    private CDSTOverflowPolicy overflowPolicy;
+    private volatile boolean overflowed = false;
+    
+    /**
+     * When ingesting, why the stream broke (see failStream()), for the test
+     * thread to report
+     */
+    private volatile String streamFailure = null;
+    private volatile Exception streamFailureTrace = null;
+    private volatile Thread ingester = null;
+    private long arrivalNanos;
+    
+    /**
+     * How many correct outputs have been read
+     */
+    private long outputs = 0;
+    
+    /**
+     * Where to count the latency of each correct output (see
+     * setLatencyHistogram()), when the last input was written, and when the
+     * input before the current output was written
+     */
+    private CDSTHistogram latencies = null;
+    private long lastWriteNanos;
+    private long expectedSinceNanos;
+    
+    /**
+     * The step (position in the script) of nextExpectedComm, and if a timing
+     * report was asked for (see setTimingReport()), when each step happened
+     * and the latency of each output step, for the steps reached so far
+     */
+    private int expectedStep;
+    private boolean timingReport = false;
+    private long[] stepNanos;
+    private long[] stepLatencies;
+    private int steps = 0;
+    
+    /**
+     * The first failure reported to the handler, if any
+     */
+    private volatile String failureMessage = null;
+    private volatile Exception failureTrace = null;
+    
+    /**
+     * When run() started, and the result once it has finished
+     */
+    private long startNanos;
+    private volatile CDSTResult result = null;
+    
+    /**
+     * Set when running asynchronously (see runAsync()), completed with the
+     * result
+     */
+    private volatile CompletableFuture<CDSTResult> future = null;
+    
+    /**
+     * Runs the writes when running asynchronously
+     */
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * Identifies the write currently waiting to happen when running
+     * asynchronously (or -1 if there isn't one), so that a write scheduled
+     * more than once only happens once.
+     */
+    private volatile long pendingWrite = -1;
+    private long writeCount = 0;
+    
+    /**
+     * The check for the deadline of the output currently being waited for
+     * (or null if there isn't one), and where it is scheduled. Only touched
+     * with the baton: the check re-arms itself without them when it has to
+     * try again.
+     */
+    private DeadlineTick deadlineTick = null;
+    private DeadlineWheel.Deadline deadline = null;
+    private ScheduledFuture<?> scheduledDeadline = null;
+    
+    /**
+     * When run(), the deadline missed by the output being waited for (or 0),
+     * and anything thrown while checking it on the deadline wheel, for the
+     * test thread to report
+     */
+    private long missedMillis = 0;
+    private volatile Throwable deadlineError = null;
+    
+    /**
+     * Where time comes from, the scheduler's own clock when it has one (see
+     * runAsync(ScheduledExecutorService)), otherwise System.nanoTime()
+     */
+    private CDSTClock clock = CDSTClock.SYSTEM;
+    
+    /**
+     * Start a tester with a specific delay before writing to stream input
+     * (see CDSTester.writeDelay)
+     * 
+     * @param writeDelay
+     */
+    public CDSTester(long writeDelay){
+        this();
+        this.writeDelay = writeDelay;
+    }
+    
+    public CDSTester(){
+        // Have Baton
+        // Baton: LOCKED
+    }
+    
+    /**
+     * Start a tester which will run a plan, instead of having communications
+     * added to it
+     * @param plan
+     */
+    public CDSTester(CDSTPlan<InputType, OutputType> plan){
+        this();
+        this.builder = null;
+        this.plan = plan;
+    }
+    
+    /**
+     * Start a tester which will run a plan, with a specific delay before
+     * writing to stream input
+     * @param plan
+     * @param writeDelay
+     */
+    public CDSTester(CDSTPlan<InputType, OutputType> plan, long writeDelay){
+        this(plan);
+        this.writeDelay = writeDelay;
+    }
+    
+    /**
+     * Start a tester which will run a script one communication at a time,
+     * taking each from the iterator only when the test gets to it.
+     * 
+     * Nothing is kept once the test has moved past it, so a script can be
+     * generated or read as it goes, and use the same memory however long it
+     * is. The iterator is only ever used by one thread at a time (whichever
+     * is moving the test on), so it doesn't need to be thread safe.
+     * @param script
+     */
+    public CDSTester(
+            Iterator<? extends CDSTCommunication<InputType, OutputType>>
+                script){
+        this();
+        this.builder = null;
+        this.script = script;
+    }
+    
+    /**
+     * Start a tester which will run a script one communication at a time,
+     * with a specific delay before writing to stream input (see
+     * CDSTester(Iterator))
+     * @param script
+     * @param writeDelay
+     */
+    public CDSTester(
+            Iterator<? extends CDSTCommunication<InputType, OutputType>>
+                script, long writeDelay){
+        this(script);
+        this.writeDelay = writeDelay;
+    }
+    
+    /**
+     * Setup the correct handler for this tester
+     * @param handler
+     */
+    public void setHandler(CDSTHandler<InputType> handler) throws CDSTException {
+        
+        this.assertPreparing();
+        
+        if(this.handler != null)
+            throw new CDSTException("Already set Handler");
+        
+        this.handler = handler;
+    }
+    
+    /**
+     * Setup the handler for a tester of a multiplexed stream, in place of
+     * setHandler(). Each communication is on a logical channel (see
+     * setChannel()) and the tester keeps a cursor for each channel: the
+     * communications on a channel happen in order, but channels don't wait
+     * for each other, so outputs on different channels can be interleaved in
+     * any way.
+     * 
+     * Outputs are passed to readFromChannel() and ingested (blocking when
+     * 1024 are waiting to be checked, unless changed with setIngestion()),
+     * and the test thread runs every channel. Each input is written after the
+     * write delay from when its channel reaches it (or when the stream
+     * signals that it is idle), and output on a channel waiting to write is
+     * unexpected. Only for run(), with a plan rather than a script given one
+     * step at a time.
+     * @param handler
+     * @throws CDSTException
+     */
+    public void setMultiplexHandler(CDSTMultiplexHandler<InputType> handler)
+            throws CDSTException {
+        
+        this.setHandler(handler);
+        this.multiplexHandler = handler;
+        if(this.arrivals == null)
+            this.setIngestion(MULTIPLEX_CAPACITY, CDSTOverflowPolicy.BLOCK);
+    }
+    
+    public void setLogLevel(int logLevel){
+        this.logLevel = logLevel;
+    }
+    
+    /**
+     * Send logged events to a sink instead of stdout
+     * @param traceSink
+     */
+    public void setTraceSink(CDSTTraceSink traceSink){
+        this.traceSink = traceSink;
+    }
+    
+    /**
+     * Count the latency of each correct output in the given histogram, as the
+     * nanoseconds between the last input written before the output in the
+     * script, and the output being read (see CDSTSoak). The histogram may be
+     * shared by several testers.
+     * @param latencies
+     * @throws CDSTException
+     */
+    public void setLatencyHistogram(CDSTHistogram latencies)
+            throws CDSTException {
+        
+        this.assertPreparing();
+        this.latencies = latencies;
+    }
+    
+    /**
+     * Record when each input is written and each output is read, and the
+     * latency of each output, for a CDSTTimingReport in the result (see
+     * CDSTResult.getTimingReport()).
+     * 
+     * Two longs are kept for each step, in arrays allocated up front for a
+     * plan (and grown as needed for an iterator script), so nothing is
+     * allocated per step.
+     * @param timingReport
+     * @throws CDSTException
+     */
+    public void setTimingReport(boolean timingReport) throws CDSTException {
+        
+        this.assertPreparing();
+        this.timingReport = timingReport;
+    }
+    
+    /**
+     * Fail the test if an output hasn't been read within this many
+     * milliseconds of the tester starting to wait for it, unless the output
+     * was added with its own deadline (default 0, wait forever)
+     * @param defaultDeadline
+     * @throws CDSTException
+     */
+    public void setDefaultDeadline(long defaultDeadline) throws CDSTException {
+        
+        this.assertPreparing();
+        if(defaultDeadline < 0)
+            throw new CDSTException("Deadline can't be negative");
+        this.defaultDeadline = defaultDeadline;
+    }
+    
+    /**
+     * How many times a thread should retry taking the baton before parking,
+     * spinning can reduce the latency of handing over control between the
+     * tester and the stream, at the cost of burning CPU (default 0)
+     * @param spinLimit
+     */
+    public void setSpinLimit(int spinLimit){
+        this.baton.setSpinLimit(spinLimit);
+    }
+    
+    /**
+     * Use a detector to find out when the stream is idle, so input can be
+     * written without waiting for the whole write delay.
+     * @param idleDetector
+     * @throws CDSTException
+     */
+    public void setIdleDetector(CDSTIdleDetector idleDetector)
+            throws CDSTException {
+        
+        this.assertPreparing();
+        this.idleDetector = idleDetector;
+    }
+    
+    /**
+     * Pipeline the script: write inputs without waiting for the outputs
+     * before them, as long as fewer than this many outputs are outstanding
+     * (default 1, lock-step).
+     * 
+     * With a window bigger than 1, outputs are expected in the order they
+     * appear in the script and inputs are written straight away, without
+     * the write delay. Each output in a group counts against the window (a
+     * group bigger than the window is let in once any output can be).
+     * Outputs can't be checked against deadlines (run() throws a
+     * CDSTException if a default deadline is set, or when it reaches an
+     * output with its own deadline), and the test can only be run with
+     * run(). The result reports the throughput achieved.
+     * @param window
+     * @throws CDSTException
+     */
+    public void setWindow(int window) throws CDSTException {
+        
+        this.assertPreparing();
+        if(window < 1)
+            throw new CDSTException("Window must be at least 1");
+        this.window = window;
+    }
+    
+    /**
+     * Have readFromStream() queue outputs and return straight away, instead
+     * of waiting for the test thread to be ready to check them, so that a
+     * slow read handler or a write delay never holds up the thread the
+     * stream reads on.
+     * 
+     * Outputs are checked by the test thread in the order they were queued,
+     * and the time each arrived is kept, so an output which arrives before
+     * the input it should follow is still reported as unexpected. Only for
+     * run(), without a window or an idle detector (signalIdle() can be used).
+     * 
+     * @param capacity - how many outputs can be waiting to be checked
+     *                   (rounded up to a power of 2)
+     * @param overflowPolicy - what to do with outputs when it is full
+     * @throws CDSTException
+     */
+    public void setIngestion(int capacity, CDSTOverflowPolicy overflowPolicy)
+            throws CDSTException {
+        
+        this.assertPreparing();
+        if(capacity < 1)
+            throw new CDSTException("Capacity must be at least 1");
+        this.arrivals = new MpscRing<Arrival<OutputType>>(
+            capacity, new Supplier<Arrival<OutputType>>() {
+                @Override
+                public Arrival<OutputType> get() {
+                    return new Arrival<OutputType>();
+                }
+            });
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    /**
+     * Ingest outputs (see setIngestion()) which are numbered by the stream,
+     * so that any number of threads can pass outputs to
+     * readFromStream(long, OutputType) at once. Outputs are checked in order
+     * of their sequence numbers, whichever order they arrive in.
+     * 
+     * Each thread fills in the slot for its own sequence number in a ring
+     * rather than contending for the next one, so the capacity is how far
+     * ahead of the oldest output not yet checked a sequence number can be.
+     * 
+     * @param capacity - (rounded up to a power of 2)
+     * @param overflowPolicy - what to do with outputs too far ahead
+     * @throws CDSTException
+     */
+    public void setSequencedIngestion(int capacity,
+                                      CDSTOverflowPolicy overflowPolicy)
+            throws CDSTException {
+        
+        this.setIngestion(capacity, overflowPolicy);
+        this.sequenced = true;
+    }
+    
+    /**
+     * Choose how much of the call site to capture for each communication
+     * added after this, to be used as the trace if it fails.
+     * @param traceCapture
+     * @throws CDSTException
+     */
+    public void setTraceCapture(CDSTTraceCapture traceCapture)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.setTraceCapture(traceCapture);
+    }
+    
+    /**
+     * Put each communication added after this on the given logical channel
+     * (0 to begin with). Channels are ignored unless multiplexing (see
+     * setMultiplexHandler()).
+     * @param channel
+     * @throws CDSTException
+     */
+    public void setChannel(int channel) throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.setChannel(channel);
+    }
+    
+    // ***************
+    // Methods used to build up list of communications
+    
+    /**
+     * Tell the tester to expect some output from the stream at this point.
+     * @param object
+     * @throws CDSTException 
+     */
+    public void addOutputRead(OutputType object) throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputRead(object);
+    }
+    
+    /**
+     * Tell the tester to expect some output from the stream at this point,
+     * failing if it hasn't arrived within the deadline.
+     * @param object
+     * @param deadline - in milliseconds, 0 for no deadline
+     * @throws CDSTException 
+     */
+    public void addOutputRead(OutputType object, long deadline)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputRead(object, deadline);
+    }
+    
+    /**
+     * Tell the tester to expect all of these outputs from the stream at this
+     * point, in any order, with each output expected as many times as it
+     * appears.
+     * @param objects
+     * @throws CDSTException 
+     */
+    public void addOutputGroup(Collection<? extends OutputType> objects)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputGroup(objects);
+    }
+    
+    /**
+     * Tell the tester to expect these outputs from the stream at this point,
+     * in any order, each as many times as given.
+     * @param counts
+     * @throws CDSTException 
+     */
+    public void addOutputGroup(Map<? extends OutputType, Integer> counts)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputGroup(counts);
+    }
+    
+    /**
+     * Tell the tester to write to the stream at this point.
+     * @param object
+     * @throws CDSTException 
+     */
+    public void addInputWrite(InputType object) throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addInputWrite(object);
+    }
+    
+    /**
+     * Tell the tester to expect some output from the stream at this point, and
+     * pass the object to the handler.
+     * @param handler
+     * @throws CDSTException 
+     */
+    public void addOutputRead(CDSTReadHandler<OutputType> handler)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputRead(handler);
+    }
+    
+    /**
+     * Tell the tester to expect some output from the stream at this point, and
+     * pass the object to the handler, failing if it hasn't arrived within the
+     * deadline.
+     * @param handler
+     * @param deadline - in milliseconds, 0 for no deadline
+     * @throws CDSTException 
+     */
+    public void addOutputRead(CDSTReadHandler<OutputType> handler,
+                              long deadline) throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputRead(handler, deadline);
+    }
+    
+    /**
+     * Tell the tester to expect some output from the stream at this point,
+     * failing if it arrives more than maxLatency after the last input written
+     * before it.
+     * @param object
+     * @param maxLatency
+     * @param unit
+     * @throws CDSTException 
+     */
+    public void addOutputRead(OutputType object, long maxLatency,
+                              TimeUnit unit) throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputRead(object, maxLatency, unit);
+    }
+    
+    /**
+     * Tell the tester to expect some output from the stream at this point, and
+     * pass the object to the handler, failing if it arrives more than
+     * maxLatency after the last input written before it.
+     * @param handler
+     * @param maxLatency
+     * @param unit
+     * @throws CDSTException 
+     */
+    public void addOutputRead(CDSTReadHandler<OutputType> handler,
+                              long maxLatency, TimeUnit unit)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addOutputRead(handler, maxLatency, unit);
+    }
+    
+    /**
+     * Tell the tester to write to the stream at this point, after waiting the
+     * given delay instead of the tester's write delay.
+     * @param object
+     * @param writeDelay - in milliseconds
+     * @throws CDSTException 
+     */
+    public void addInputWrite(InputType object, long writeDelay)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addInputWrite(object, writeDelay);
+    }
+    
+    /**
+     * Tell the tester to write to the stream at this point, using a handler.
+     * @param handler
+     * @throws CDSTException 
+     */
+    public void addInputWrite(CDSTWriteHandler<InputType> handler)
+            throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addInputWrite(handler);
+    }
+    
+    /**
+     * Tell the tester to write to the stream at this point using a handler,
+     * after waiting the given delay instead of the tester's write delay.
+     * @param handler
+     * @param writeDelay - in milliseconds
+     * @throws CDSTException 
+     */
+    public void addInputWrite(CDSTWriteHandler<InputType> handler,
+                              long writeDelay) throws CDSTException {
+        
+        this.assertBuilding();
+        this.builder.addInputWrite(handler, writeDelay);
+    }
+    
+    // End
+    // ***************
+    
+    // ***************
+    // Methods used to communicate with the tester during testing
+    
+    /**
+     * Tell the tester that there has been output received from the stream.
+     * @param object
+     * @throws InterruptedException 
+     */
+    public void readFromStream(OutputType object) throws CDSTException {
+        this.doRead(object);
+    }
+    
+    /**
+     * Tell the tester that there have been several outputs received from the
+     * stream, in order.
+     * 
+     * Consecutive outputs expected by the tester are checked together, without
+     * handing control back to the test thread between each of them.
+     * @param objects
+     * @throws CDSTException
+     */
+    public void readFromStream(Collection<? extends OutputType> objects)
+            throws CDSTException {
+        this.doRead(objects.iterator());
+    }
+    
+    /**
+     * Tell the tester that there have been several outputs received from the
+     * stream, in order (see readFromStream(Collection)).
+     * @param objects
+     * @throws CDSTException
+     */
+    public void readFromStream(OutputType[] objects) throws CDSTException {
+        this.doRead(Arrays.asList(objects).iterator());
+    }
+    
+    /**
+     * Tell the tester that there have been several outputs received from the
+     * stream, in encounter order (see readFromStream(Collection)).
+     * @param objects
+     * @throws CDSTException
+     */
+    public void readFromStream(Spliterator<? extends OutputType> objects)
+            throws CDSTException {
+        this.doRead(Spliterators.iterator(objects));
+    }
+    
+    /**
+     * Tell the tester that there has been output received from the stream,
+     * numbered by the stream starting from 0 (see setSequencedIngestion()).
+     * Can be called from many threads at once, but only once for each
+     * sequence number.
+     * @param sequence
+     * @param object
+     * @throws CDSTException
+     */
+    public void readFromStream(long sequence, OutputType object)
+            throws CDSTException {
+        
+        if(!this.sequenced)
+            throw new CDSTException(
+                "Outputs are only numbered when ingesting by sequence " +
+                "number, see setSequencedIngestion()");
+        this.ingestInSequence(sequence, object);
+    }
+    
+    /**
+     * Tell the tester that there has been output received from the stream on
+     * the given logical channel (see setMultiplexHandler()). Can be called
+     * from many threads at once, such as one for each channel.
+     * @param channel
+     * @param object
+     * @throws CDSTException
+     */
+    public void readFromChannel(int channel, OutputType object)
+            throws CDSTException {
+        
+        if(this.multiplexHandler == null)
+            throw new CDSTException(
+                "Outputs are only on channels when multiplexing, see " +
+                "setMultiplexHandler()");
+        this.ingestOnChannel(channel, object);
+    }
+    
+    /**
+     * Tell the tester that the stream is idle: it has passed all of its output
+     * so far to readFromStream() and will not produce any more until it is
+     * given more input.
+     * 
+     * If the tester is waiting to write input, it will do so straight away
+     * instead of waiting for the rest of the write delay.
+     */
+    public void signalIdle() {
+        this.idle.release();
+        LockSupport.unpark(this.ingester);
+        
+        long write = this.pendingWrite;
+        if(write >= 0)
+            this.scheduler.execute(new WriteTick(write));
+    }
+    
+    /**
+     * Tell the tester that the stream has broken, for example the connection
+     * was closed or couldn't be written to, failing the test unless it has
+     * already stopped.
+     * 
+     * Like readFromStream(), this waits for the tester, so it mustn't be
+     * called from the handler's writeToStream().
+     * @param message
+     * @param trace - what went wrong, or null
+     * @throws CDSTException
+     */
+    public void failStream(String message, Exception trace)
+            throws CDSTException {
+        
+        if(trace == null)
+            trace = CallSite.NONE.toException();
+        
+        if(this.arrivals != null){
+            // The test thread finds out while checking outputs
+            if(this.streamFailure == null){
+                this.streamFailureTrace = trace;
+                this.streamFailure = message;
+            }
+            LockSupport.unpark(this.ingester);
+            this.idle.release();
+            return;
+        }
+        
+        // Baton: FREE -> LOCKED
+        this.acquire();
+        
+        if(this.state == TesterState.STOPPED){
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+            return;
+        }
+        
+        // Have Baton
+        try {
+            this.fail(message, trace);
+        } finally {
+            this.stop();
+            if(this.window > 1){
+                // Baton: LOCKED -> HANDED_BACK
+                this.baton.handBack();
+            } else if(this.nextExpectedComm.isInput()){
+                // The test thread is waiting to write, and acquires the baton
+                // once the write delay is cut short
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                this.idle.release();
+            } else {
+                this.passBack();
+            }
+        }
+    }
+    
+    // End
+    // ***************
+    
+    
+    /**
+     * Run the test
+     * @throws CDSTException 
+     */
+    public void run() throws CDSTException {
+        
+        if(this.arrivals != null && this.window > 1)
+            throw new CDSTException("Can't ingest with a window");
+        if(this.window > 1 && this.defaultDeadline != 0)
+            throw new CDSTException(
+                "Can't check outputs against deadlines with a window");
+        if(this.arrivals != null && this.idleDetector != null)
+            throw new CDSTException(
+                "Can't ingest with an idle detector, use signalIdle() " +
+                "instead");
+        if(this.multiplexHandler != null && this.script != null)
+            throw new CDSTException(
+                "Can't multiplex a script given one step at a time, use a " +
+                "CDSTPlan instead");
+        if(this.multiplexHandler != null && this.sequenced)
+            throw new CDSTException(
+                "Can't multiplex when ingesting by sequence number");
+        
+        this.start();
+        
+        if(this.multiplexHandler != null)
+            this.doMultiplexedLoop();
+        else if(this.arrivals != null)
+            this.doIngestingLoop();
+        else if(this.window > 1)
+            this.doWindowedLoop();
+        else
+            this.doLoop();
+        
+        this.finish();
+    }
+    
+    /**
+     * Run the test without blocking, using the shared scheduler to write
+     * input after the write delay.
+     * 
+     * No thread waits for the test to finish: the test moves on when outputs
+     * are passed to readFromStream(), and when inputs are written by the
+     * scheduler.
+     * 
+     * @return a future completed with the result when the test finishes
+     * @throws CDSTException 
+     */
+    public CompletableFuture<CDSTResult> runAsync() throws CDSTException {
+        return this.runAsync(SharedScheduler.INSTANCE);
+    }
+    
+    /**
+     * Run the test without blocking, using the given scheduler to write
+     * input after the write delay (see runAsync())
+     * 
+     * If the scheduler is also a CDSTClock (such as CDSTVirtualScheduler),
+     * then the test is timed by that clock, and deadlines are scheduled with
+     * it too, so that no real time needs to pass.
+     * 
+     * @param scheduler
+     * @return a future completed with the result when the test finishes
+     * @throws CDSTException 
+     */
+    public CompletableFuture<CDSTResult> runAsync(
+            ScheduledExecutorService scheduler) throws CDSTException {
+        
+        if(this.idleDetector != null)
+            throw new CDSTException(
+                "Can't run asynchronously with an idle detector, use " +
+                "signalIdle() instead");
+        if(this.window > 1)
+            throw new CDSTException(
+                "Can't run asynchronously with a window, use run() instead");
+        if(this.arrivals != null)
+            throw new CDSTException(
+                "Can't run asynchronously when ingesting, use run() instead");
+        
+        this.scheduler = scheduler;
+        if(scheduler instanceof CDSTClock)
+            this.clock = (CDSTClock) scheduler;
+        this.future = new CompletableFuture<CDSTResult>();
+        
+        this.start();
+        
+        this.advanceAsync();
+        
+        return this.future;
+    }
+    
+    /**
+     * @return whether outputs are queued to be checked later rather than
+     *         checked before readFromStream() returns (see setIngestion() and
+     *         setMultiplexHandler())
+     */
+    public boolean isIngesting() {
+        return this.arrivals != null;
+    }
+    
+    /**
+     * @return a number identifying this tester, unique within the JVM, which
+     *         is given as the tester in JDK Flight Recorder events
+     */
+    public long getId() {
+        return this.id;
+    }
+    
+    /**
+     * Get the result of the test
+     * @return the result, or null if the test has not finished running
+     */
+    public CDSTResult getResult() {
+        return this.result;
+    }
+    
+    // ***************
+    // Internal methods used to actually run the test
+    
+    private void start() throws CDSTException {
+        
+        this.assertPreparing();
+        
+        this.log(CDSTTraceEvent.RUNNING, null);
+        
+        // Have Baton
+        // Baton: LOCKED
+        
+        if(this.handler == null)
+            throw new CDSTException("Didn't set Handler");
+        
+        this.state = TesterState.RUNNING;
+        if(this.plan == null && this.script == null)
+            this.plan = this.builder.build();
+        this.position = 0;
+        if(this.window > 1){
+            this.inFlightWrites = new long[this.window];
+            this.inFlightSteps = new int[this.window];
+        }
+        if(this.timingReport){
+            int size = this.plan != null ? this.plan.size() : 1024;
+            this.stepNanos = new long[size];
+            this.stepLatencies = new long[size];
+        }
+        this.startNanos = this.clock.nanoTime();
+        this.lastWriteNanos = this.startNanos;
+    }
+    
+    /**
+     * Stop testing, and complete the future if running asynchronously
+     */
+    private void stop() {
+        this.state = TesterState.STOPPED;
+        this.disarmDeadline();
+        if(this.future != null)
+            this.finish();
+    }
+    
+    private void finish() {
+        CDSTTimingReport timings = null;
+        if(this.timingReport)
+            timings = new CDSTTimingReport(this.stepNanos, this.stepLatencies,
+                                           this.steps);
+        this.result = new CDSTResult(this.failureMessage, this.failureTrace,
+                                     this.clock.nanoTime() - this.startNanos,
+                                     this.outputs, timings);
+        if(this.future != null)
+            this.future.complete(this.result);
+    }
+    
+    private void doRead(OutputType object) throws CDSTException {
+        
+        if(this.arrivals != null){
+            this.ingest(object);
+            return;
+        }
+        
+        if(this.window > 1){
+            this.doWindowedRead(Collections.singleton(object).iterator());
+            return;
+        }
+        
+        this.log(CDSTTraceEvent.READ, object);
+        
+        // Baton: FREE -> LOCKED
+        this.acquire();
+        
+        if(this.state == TesterState.STOPPED){
+            // Don't need to return transfer back to main thread, only to self
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+            throw new CDSTException("Already Stopped Testing");
+        }
+        
+        // Have Baton
+        if(!this.nextExpectedComm.isOutput()){
+            // Have received output when not supposed to
+            this.failUnexpected(object);
+        } else {
+            // An output is expected, lets check it is the correct output
+
+            if(!this.checkOutput(object)){
+                
+                // Stop testing
+                this.stop();
+            } else if(this.groupLeft > 0){
+                // Still waiting for the rest of the group
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                return;
+            }
+            
+            // Pass the Baton
+            this.passBack();
+        }
+    }
+    
+    private void doRead(Iterator<? extends OutputType> objects)
+            throws CDSTException {
+        
+        if(this.arrivals != null){
+            while(objects.hasNext())
+                this.ingest(objects.next());
+            return;
+        }
+        
+        if(this.window > 1){
+            this.doWindowedRead(objects);
+            return;
+        }
+        
+        while(objects.hasNext()){
+            
+            OutputType object = objects.next();
+            
+            this.log(CDSTTraceEvent.READ, object);
+            
+            // Baton: FREE -> LOCKED
+            this.acquire();
+            
+            if(this.state == TesterState.STOPPED){
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                throw new CDSTException("Already Stopped Testing");
+            }
+            
+            // Have Baton
+            if(!this.nextExpectedComm.isOutput()){
+                // Have received output when not supposed to, the rest of the
+                // outputs don't matter now
+                this.failUnexpected(object);
+                return;
+            }
+            
+            // Check this output and any more that the tester expects straight
+            // after it, while we have the baton
+            while(true){
+                if(!this.checkOutput(object)){
+                    // Stop testing, the rest of the outputs don't matter now
+                    this.stop();
+                    this.passBack();
+                    return;
+                }
+                
+                if(!objects.hasNext())
+                    break;
+                
+                // Carry on with the same group, or move on to the next
+                // communication if it is also an output
+                if(this.groupLeft == 0){
+                    if(!this.nextIsOutput())
+                        break;
+                    this.nextComm();
+                }
+                object = objects.next();
+                this.log(CDSTTraceEvent.READ, object);
+            }
+            
+            if(this.groupLeft > 0){
+                // Still waiting for the rest of the group
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                continue;
+            }
+            
+            // Let the test thread carry on with the next communication, if
+            // there are more outputs they are handled as usual from here
+            this.passBack();
+        }
+    }
+    
+    /**
+     * Read outputs when running with a window, matching each against the
+     * oldest outstanding output
+     * @param objects
+     * @throws CDSTException
+     */
+    private void doWindowedRead(Iterator<? extends OutputType> objects)
+            throws CDSTException {
+        
+        if(!objects.hasNext())
+            return;
+        
+        // Baton: FREE -> LOCKED
+        this.acquire();
+        
+        if(this.state == TesterState.STOPPED){
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+            throw new CDSTException("Already Stopped Testing");
+        }
+        
+        // Have Baton
+        while(objects.hasNext()){
+            OutputType object = objects.next();
+            this.log(CDSTTraceEvent.READ, object);
+            
+            if(this.groupLeft == 0){
+                CDSTCommunication<InputType, OutputType> oldest =
+                    this.inFlight.poll();
+                if(oldest != null)
+                    this.inFlightOutputs -= countOutputs(oldest);
+                if(oldest == null){
+                    this.fail(String.format(
+                        "Received unexpected output from stream, wasn't " +
+                        "expecting any outputs but received: '%s'",
+                        object),
+                        CallSite.NONE.toException());
+                    this.stop();
+                    // Baton: LOCKED -> HANDED_BACK
+                    this.baton.handBack();
+                    return;
+                }
+                this.expect(oldest);
+                this.expectedSinceNanos =
+                    this.inFlightWrites[this.inFlightHead];
+                this.expectedStep = this.inFlightSteps[this.inFlightHead];
+                this.inFlightHead = (this.inFlightHead + 1) % this.window;
+            }
+            
+            if(!this.checkOutput(object)){
+                this.stop();
+                // Baton: LOCKED -> HANDED_BACK
+                this.baton.handBack();
+                return;
+            }
+        }
+        
+        // Only wake the test thread if it can do something now
+        int outstanding = this.outstandingOutputs();
+        if(this.hasNextComm() ? outstanding < this.window : outstanding == 0){
+            // Baton: LOCKED -> HANDED_BACK
+            this.baton.handBack();
+        } else {
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+        }
+    }
+    
+    /**
+     * Fail because output was received while waiting to write input, called
+     * with the baton
+     * @param object
+     */
+    private void failUnexpected(OutputType object) {
+        this.fail(String.format(
+            "Received unexpected output from stream, was going to input: " +
+            "'%s' after delay, but instead received output: '%s'",
+            this.nextInput(),
+            object),
+            this.nextExpectedComm.trace());
+        
+        // Stop testing
+        this.stop();
+        
+        // Main Thread for testing is waiting to acquire the baton, not
+        // for it to be handed back (or when running asynchronously, the
+        // write will find that the test has stopped)
+        // Baton: LOCKED -> FREE
+        this.baton.release();
+        
+        // Cut the write delay short, so the test thread finds out now
+        this.idle.release();
+    }
+    
+    /**
+     * Give control back to the test thread after reading an expected output,
+     * or when running asynchronously carry on with the script from this
+     * thread. Called with the baton.
+     */
+    private void passBack() {
+        if(this.future == null){
+            // Baton: LOCKED -> HANDED_BACK
+            this.baton.handBack();
+        } else if(this.state == TesterState.STOPPED){
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+        } else {
+            this.advanceAsync();
+        }
+    }
+    
+    /**
+     * Move on through the script when running asynchronously, until there is
+     * something to wait for. Called with the baton, which is always released.
+     */
+    private void advanceAsync() {
+        
+        this.log(CDSTTraceEvent.NEXT, null);
+        
+        if(!this.hasNextComm()){
+            this.log(CDSTTraceEvent.FINISHED, null);
+            this.stop();
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+            return;
+        }
+        
+        this.nextComm();
+        
+        this.log(CDSTTraceEvent.NEXT_IS, this.nextExpectedComm);
+        
+        long write = -1;
+        if(this.nextExpectedComm.isInput())
+            this.pendingWrite = write = this.writeCount++;
+        else
+            this.armDeadline();
+        
+        // Either wait for the write delay or for the stream to produce output,
+        // and let readFromStream() catch any output in the meantime
+        // Baton: LOCKED -> FREE
+        this.baton.release();
+        
+        if(write >= 0){
+            this.scheduler.schedule(new WriteTick(write), this.writeDelay(),
+                                    TimeUnit.MILLISECONDS);
+            // The stream may already be idle
+            if(this.idle.availablePermits() > 0)
+                this.scheduler.execute(new WriteTick(write));
+        }
+    }
+    
+    /**
+     * Write the next input when running asynchronously
+     */
+    private class WriteTick implements Runnable {
+        
+        private final long write;
+        
+        public WriteTick(long write){
+            this.write = write;
+        }
+        
+        @Override
+        public void run() {
+            
+            // Baton: FREE -> LOCKED
+            try {
+                CDSTester.this.baton.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            
+            // Check that we are still running, and haven't already written
+            if(CDSTester.this.state == TesterState.STOPPED ||
+               CDSTester.this.pendingWrite != this.write){
+                // Baton: LOCKED -> FREE
+                CDSTester.this.baton.release();
+                return;
+            }
+            CDSTester.this.pendingWrite = -1;
+            
+            // Now send input, any idle signals so far were in response to
+            // earlier input
+            CDSTester.this.idle.drainPermits();
+            InputType input = CDSTester.this.nextInput();
+            if(!CDSTester.this.writeInput(input)){
+                // Baton: LOCKED -> FREE
+                CDSTester.this.baton.release();
+                return;
+            }
+            
+            CDSTester.this.advanceAsync();
+        }
+    }
+    
+    /**
+     * Whether there are any communications after the current one, called
+     * with the baton
+     */
+    private boolean hasNextComm() {
+        if(this.script == null)
+            return this.position < this.plan.size();
+        return this.peeked != null || this.script.hasNext();
+    }
+    
+    /**
+     * Whether the communication after the current one is an output, called
+     * with the baton
+     */
+    private boolean nextIsOutput() {
+        if(this.script == null)
+            return this.position < this.plan.size() &&
+                   this.plan.get(this.position).isOutput();
+        
+        if(this.peeked == null){
+            if(!this.script.hasNext())
+                return false;
+            this.peeked = this.script.next();
+        }
+        return this.peeked.isOutput();
+    }
+    
+    /**
+     * Move on to the next communication in the plan (or script), called with
+     * the baton
+     */
+    private void nextComm() {
+        this.expect(this.takeComm());
+    }
+    
+    /**
+     * Take the next communication from the plan (or script), called with the
+     * baton
+     */
+    private CDSTCommunication<InputType, OutputType> takeComm() {
+        CDSTCommunication<InputType, OutputType> comm;
+        if(this.script == null){
+            comm = this.plan.get(this.position);
+        } else if(this.peeked != null){
+            comm = this.peeked;
+            this.peeked = null;
+        } else {
+            comm = this.script.next();
+        }
+        this.position++;
+        return comm;
+    }
+    
+    /**
+     * Make a communication the current one, called with the baton
+     */
+    private void expect(CDSTCommunication<InputType, OutputType> comm) {
+        this.nextExpectedComm = comm;
+        this.nextInput = null;
+        this.expectedSinceNanos = this.lastWriteNanos;
+        this.expectedStep = this.position - 1;
+        
+        OutputGroup<OutputType> group = comm.getGroup();
+        if(group != null){
+            this.groupCounts = group.newCounts();
+            this.groupLeft = group.size();
+        }
+    }
+    
+    /**
+     * Write input to the stream, noting when for measuring latency. Called
+     * with the baton.
+     * @param input
+     * @return false if the handler couldn't write it, in which case the test
+     *         has failed and stopped
+     */
+    private boolean writeInput(InputType input) {
+        return this.writeInput(0, input);
+    }
+    
+    /**
+     * Write input to the stream on a logical channel (see writeInput()),
+     * which is only passed on to the handler when multiplexing
+     * @param channel
+     * @param input
+     * @return false if the handler couldn't write it
+     */
+    private boolean writeInput(int channel, InputType input) {
+        this.log(CDSTTraceEvent.WRITE, input);
+        // Before writing, as the output may be read before this returns
+        this.lastWriteNanos = this.clock.nanoTime();
+        if(this.stepNanos != null)
+            this.recordStep(this.position - 1, this.lastWriteNanos, -1);
+        FlightRecorderEvents.Write event = new FlightRecorderEvents.Write();
+        event.begin();
+        try {
+            if(this.multiplexHandler != null)
+                this.multiplexHandler.writeToStream(channel, input);
+            else
+                this.handler.writeToStream(input);
+        } catch (RuntimeException e) {
+            this.fail(String.format(
+                "Couldn't write input to stream: '%s' (%s)", input, e), e);
+            this.stop();
+            return false;
+        }
+        if(event.shouldCommit()){
+            event.tester = this.id;
+            event.step = this.position - 1;
+            event.input = String.valueOf(input);
+            event.commit();
+        }
+        return true;
+    }
+    
+    /**
+     * Note when a step happened for the timing report. Called with the
+     * baton.
+     * @param step
+     * @param nanos
+     * @param latency - or -1 for an input
+     */
+    private void recordStep(int step, long nanos, long latency) {
+        if(step >= this.stepNanos.length){
+            int size = Math.max(step + 1, this.stepNanos.length * 2);
+            this.stepNanos = Arrays.copyOf(this.stepNanos, size);
+            this.stepLatencies = Arrays.copyOf(this.stepLatencies, size);
+        }
+        // Steps skipped over (such as after a failure) stay unrecorded
+        for(int i = this.steps; i < step; i++){
+            this.stepNanos[i] = -1;
+            this.stepLatencies[i] = -1;
+        }
+        this.stepNanos[step] = nanos - this.startNanos;
+        this.stepLatencies[step] = latency;
+        if(step >= this.steps)
+            this.steps = step + 1;
+    }
+    
+    /**
+     * The input to write for the current communication, only produced once
+     * per run. Called with the baton.
+     */
+    private InputType nextInput() {
+        if(this.nextInput == null)
+            this.nextInput = this.nextExpectedComm.getInput();
+        return this.nextInput;
+    }
+    
+    /**
+     * Check an output against the current communication, and report it if it
+     * is incorrect. Called with the baton.
+     * @param object
+     * @return whether the output was correct
+     */
+    private boolean checkOutput(OutputType object) {
+        FlightRecorderEvents.Read event = new FlightRecorderEvents.Read();
+        event.begin();
+        String failure;
+        if(this.groupLeft > 0)
+            failure = this.checkGroupOutput(object);
+        else
+            failure = this.nextExpectedComm.checkOutput(object);
+        
+        long maxLatency = this.nextExpectedComm.getMaxLatency();
+        if(failure == null && (this.latencies != null ||
+                               this.stepNanos != null ||
+                               maxLatency != CDSTCommunication.NO_MAX_LATENCY)){
+            long read = this.arrivals != null ? this.arrivalNanos
+                                              : this.clock.nanoTime();
+            long latency = read - this.expectedSinceNanos;
+            if(this.latencies != null)
+                this.latencies.record(latency);
+            if(this.stepNanos != null)
+                this.recordStep(this.expectedStep, read, latency);
+            if(maxLatency != CDSTCommunication.NO_MAX_LATENCY &&
+               latency > maxLatency)
+                failure = String.format(
+                    "Received output from stream too late, %d us after the " +
+                    "last input instead of within %d us: '%s'",
+                    TimeUnit.NANOSECONDS.toMicros(latency),
+                    TimeUnit.NANOSECONDS.toMicros(maxLatency),
+                    object);
+        }
+        
+        if(event.shouldCommit()){
+            event.tester = this.id;
+            event.step = this.expectedStep;
+            event.output = String.valueOf(object);
+            event.correct = failure == null;
+            event.commit();
+        }
+        
+        if(failure == null){
+            this.outputs++;
+            // A group keeps its deadline until all of it has arrived
+            if(this.groupLeft == 0)
+                this.disarmDeadline();
+            return true;
+        }
+        this.fail(failure, this.nextExpectedComm.trace());
+        return false;
+    }
+    
+    /**
+     * Count an output off against the current group. Called with the baton.
+     * @param object
+     * @return null if the output is correct, otherwise a description of why
+     *         it is incorrect
+     */
+    private String checkGroupOutput(OutputType object) {
+        int slot = this.nextExpectedComm.getGroup().slot(object);
+        if(slot < 0 || this.groupCounts[slot] == 0)
+            return String.format(
+                "Received incorrect output from stream, was expecting one " +
+                "of the %d outputs left in the group but instead received: " +
+                "'%s'%s",
+                this.groupLeft,
+                object,
+                slot < 0 ? "" : " (more times than expected)");
+        this.groupCounts[slot]--;
+        this.groupLeft--;
+        return null;
+    }
+    
+    private void doLoop() throws CDSTException {
+        // Have Baton
+        // Baton: LOCKED
+        
+        while(true){
+            
+            this.log(CDSTTraceEvent.NEXT, null);
+            
+            if(!this.hasNextComm()){
+                this.stop();
+                this.log(CDSTTraceEvent.FINISHED, null);
+                // Release Baton
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                return;
+            }
+            
+            this.nextComm();
+            
+            this.log(CDSTTraceEvent.NEXT_IS, this.nextExpectedComm);
+            
+            // Inspect what the next communication is
+            if(this.nextExpectedComm.isInput()){
+                // Need to send input to stream, first wait to see if an invalid
+                // output will be sent first.
+
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                this.awaitIdle(this.writeDelay());
+                // Baton: FREE -> LOCKED
+                try {
+                    this.baton.acquire();
+                } catch (InterruptedException e) {
+                    this.state = TesterState.STOPPED;
+                    throw new CDSTException(e);
+                }
+                
+                // Check that we are still running
+                if(this.state == TesterState.STOPPED){
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    return;
+                }
+                
+                // Now send input, any idle signals so far were in response to
+                // earlier input
+                this.idle.drainPermits();
+                InputType input = this.nextInput();
+                if(!this.writeInput(input)){
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    return;
+                }
+                
+                // And now loop back for next communication
+                
+            } else {
+                // Next communication is an output, so we expect to have
+                // readFromStream called next
+                
+                // transfer control to that thread and wait for transfer back
+                this.armDeadline();
+                
+                // Pass the Baton
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                
+                // Wait for transfer back
+                // Baton: HANDED_BACK -> LOCKED
+                this.awaitHandBack();
+                
+                // Check that we are still running
+                if(this.state == TesterState.STOPPED){
+                    try {
+                        this.reportMissedDeadline();
+                    } finally {
+                        // Baton: LOCKED -> FREE
+                        this.baton.release();
+                    }
+                    return;
+                }
+                
+                // Now loop round again
+                
+            }
+        }
+        
+    }
+    
+    /**
+     * Queue an output for the test thread to check (see setIngestion()),
+     * without the baton
+     * @param object
+     * @throws CDSTException
+     */
+    private void ingest(OutputType object) throws CDSTException {
+        this.ingestOnChannel(0, object);
+    }
+    
+    /**
+     * Queue an output on a logical channel for the test thread to check (see
+     * setMultiplexHandler()), without the baton
+     * @param channel
+     * @param object
+     * @throws CDSTException
+     */
+    private void ingestOnChannel(int channel, OutputType object)
+            throws CDSTException {
+        
+        if(this.state == TesterState.STOPPED)
+            throw new CDSTException("Already Stopped Testing");
+        if(this.sequenced)
+            throw new CDSTException(
+                "Outputs need a sequence number when ingesting by sequence " +
+                "number");
+        
+        long position = this.arrivals.claim();
+        while(position < 0){
+            if(this.overflowPolicy == CDSTOverflowPolicy.FAIL){
+                this.overflowed = true;
+                LockSupport.unpark(this.ingester);
+                return;
+            }
+            // Wait for the test thread to make room
+            if(this.state == TesterState.STOPPED)
+                throw new CDSTException("Already Stopped Testing");
+            this.arrivals.awaitClaim(BLOCKED_PARK_NANOS);
+            if(Thread.interrupted())
+                throw new CDSTException(new InterruptedException());
+            position = this.arrivals.claim();
+        }
+        
+        this.publish(position, channel, object);
+    }
+    
+    /**
+     * Queue an output numbered by the stream for the test thread to check in
+     * order (see setSequencedIngestion()), without the baton
+     * @param sequence
+     * @param object
+     * @throws CDSTException
+     */
+    private void ingestInSequence(long sequence, OutputType object)
+            throws CDSTException {
+        
+        if(this.state == TesterState.STOPPED)
+            throw new CDSTException("Already Stopped Testing");
+        if(sequence < 0)
+            throw new CDSTException("Negative sequence number: " + sequence);
+        
+        while(!this.arrivals.available(sequence)){
+            if(this.arrivals.filled(sequence))
+                throw new CDSTException(
+                    "Already received output with sequence number " +
+                    sequence);
+            if(this.overflowPolicy == CDSTOverflowPolicy.FAIL){
+                this.overflowed = true;
+                LockSupport.unpark(this.ingester);
+                return;
+            }
+            // Wait for the test thread to catch up
+            if(this.state == TesterState.STOPPED)
+                throw new CDSTException("Already Stopped Testing");
+            this.arrivals.awaitAvailable(sequence, BLOCKED_PARK_NANOS);
+            if(Thread.interrupted())
+                throw new CDSTException(new InterruptedException());
+        }
+        
+        this.publish(sequence, 0, object);
+    }
+    
+    private void publish(long position, int channel, OutputType object) {
+        Arrival<OutputType> arrival = this.arrivals.entry(position);
+        arrival.object = object;
+        arrival.channel = channel;
+        arrival.nanos = System.nanoTime();
+        this.arrivals.publish(position);
+        LockSupport.unpark(this.ingester);
+    }
+    
+    /**
+     * Run the script, checking outputs queued by readFromStream() (see
+     * setIngestion())
+     * @throws CDSTException
+     */
+    private void doIngestingLoop() throws CDSTException {
+        // Have Baton, and keep it, readers queue outputs instead of taking it
+        // Baton: LOCKED
+        
+        this.ingester = Thread.currentThread();
+        
+        // When the last input was written, outputs which arrived before then
+        // can't be a response to it
+        long written = Long.MIN_VALUE;
+        
+        try {
+            while(true){
+                
+                this.log(CDSTTraceEvent.NEXT, null);
+                
+                if(!this.hasNextComm()){
+                    this.stop();
+                    this.log(CDSTTraceEvent.FINISHED, null);
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    return;
+                }
+                
+                this.nextComm();
+                
+                this.log(CDSTTraceEvent.NEXT_IS, this.nextExpectedComm);
+                
+                FlightRecorderEvents.Wait event =
+                    new FlightRecorderEvents.Wait();
+                event.begin();
+                if(this.nextExpectedComm.isInput()){
+                    // Any output before the input is written is unexpected
+                    boolean running = this.awaitIngestedIdle(
+                        this.writeDelay());
+                    this.commitWait(event, "write delay");
+                    if(!running)
+                        return;
+                    this.idle.drainPermits();
+                    if(!this.writeInput(this.nextInput())){
+                        // Baton: LOCKED -> FREE
+                        this.baton.release();
+                        return;
+                    }
+                    written = this.lastWriteNanos;
+                } else {
+                    boolean running = this.checkIngestedOutputs(written);
+                    this.commitWait(event, "output");
+                    if(!running)
+                        return;
+                }
+            }
+        } finally {
+            this.ingester = null;
+        }
+    }
+    
+    /**
+     * Run the plan with a cursor for each logical channel, checking each
+     * output queued by readFromChannel() against the cursor of its channel
+     * (see setMultiplexHandler())
+     * @throws CDSTException
+     */
+    private void doMultiplexedLoop() throws CDSTException {
+        // Have Baton, and keep it, readers queue outputs instead of taking it
+        // Baton: LOCKED
+        
+        this.ingester = Thread.currentThread();
+        this.splitChannels();
+        for(ChannelCursor channel : this.channels)
+            this.nextStep(channel);
+        
+        try {
+            while(true){
+                
+                // Outputs are queued before the stream signals idle, so look
+                // for them after checking for the signal
+                boolean idle = this.idle.tryAcquire();
+                Arrival<OutputType> arrival = this.arrivals.peek();
+                if(arrival != null){
+                    if(idle)
+                        this.idle.release();
+                    if(!this.checkChannelOutput(arrival))
+                        return;
+                    continue;
+                }
+                if(this.failIfBroken())
+                    return;
+                if(idle){
+                    this.log(CDSTTraceEvent.IDLE, null);
+                    this.idle.drainPermits();
+                }
+                
+                // Write the inputs which are due, and find out when the next
+                // step of any channel is due
+                long now = System.nanoTime();
+                long due = Long.MAX_VALUE;
+                boolean finished = true;
+                for(ChannelCursor channel : this.channels){
+                    // Signalling idle lets each channel write one input
+                    boolean ready = idle;
+                    while(!channel.isFinished() &&
+                          this.select(channel).isInput() &&
+                          (ready || channel.due <= now)){
+                        if(!this.writeInput(channel.id, this.nextInput())){
+                            // Baton: LOCKED -> FREE
+                            this.baton.release();
+                            return;
+                        }
+                        channel.written = this.lastWriteNanos;
+                        this.nextStep(channel);
+                        ready = false;
+                    }
+                    if(channel.isFinished())
+                        continue;
+                    finished = false;
+                    if(channel.due <= now){
+                        this.failIngesting(
+                            this.missedDeadline(this.deadlineMillis()),
+                            this.nextExpectedComm.trace());
+                        return;
+                    }
+                    due = Math.min(due, channel.due);
+                }
+                
+                if(finished){
+                    this.stop();
+                    this.log(CDSTTraceEvent.FINISHED, null);
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    return;
+                }
+                
+                FlightRecorderEvents.Wait event =
+                    new FlightRecorderEvents.Wait();
+                event.begin();
+                if(due == Long.MAX_VALUE)
+                    LockSupport.park(this);
+                else
+                    LockSupport.parkNanos(this, due - System.nanoTime());
+                this.commitWait(event, "channels");
+                if(Thread.interrupted()){
+                    this.stop();
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    throw new CDSTException(new InterruptedException());
+                }
+            }
+        } finally {
+            this.ingester = null;
+        }
+    }
+    
+    /**
+     * Split the plan into a cursor for each logical channel on it
+     */
+    private void splitChannels() {
+        int[] ids = new int[this.plan.size()];
+        for(int i = 0; i < ids.length; i++)
+            ids[i] = this.plan.get(i).getChannel();
+        
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for(int i = 0; i < sorted.length; i++)
+            if(i == 0 || sorted[i] != sorted[i - 1])
+                sorted[count++] = sorted[i];
+        this.channelIds = Arrays.copyOf(sorted, count);
+        
+        int[] sizes = new int[count];
+        for(int id : ids)
+            sizes[Arrays.binarySearch(this.channelIds, id)]++;
+        this.channels = new ChannelCursor[count];
+        for(int i = 0; i < count; i++)
+            this.channels[i] = new ChannelCursor(this.channelIds[i], sizes[i]);
+        
+        int[] filled = new int[count];
+        for(int step = 0; step < ids.length; step++){
+            int index = Arrays.binarySearch(this.channelIds, ids[step]);
+            this.channels[index].steps[filled[index]++] = step;
+        }
+    }
+    
+    /**
+     * Move a channel on to its next step, and work out when that is due.
+     * Called with the baton.
+     */
+    private void nextStep(ChannelCursor channel) {
+        channel.cursor++;
+        if(channel.isFinished())
+            return;
+        
+        CDSTCommunication<InputType, OutputType> comm =
+            this.plan.get(channel.steps[channel.cursor]);
+        channel.since = Math.max(channel.written, this.startNanos);
+        OutputGroup<OutputType> group = comm.getGroup();
+        channel.groupCounts = group != null ? group.newCounts() : null;
+        channel.groupLeft = group != null ? group.size() : 0;
+        this.select(channel);
+        this.log(CDSTTraceEvent.NEXT_IS, comm);
+        
+        long millis = comm.isInput() ? this.writeDelay()
+                                     : this.deadlineMillis();
+        if(comm.isOutput() && millis == 0)
+            channel.due = Long.MAX_VALUE;
+        else
+            channel.due = System.nanoTime() +
+                          TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+    
+    /**
+     * Make the current step of a channel the current communication, along
+     * with what the channel kept for it. Called with the baton.
+     */
+    private CDSTCommunication<InputType, OutputType> select(
+            ChannelCursor channel) {
+        
+        int step = channel.steps[channel.cursor];
+        this.nextExpectedComm = this.plan.get(step);
+        this.nextInput = null;
+        this.position = step + 1;
+        this.expectedStep = step;
+        this.expectedSinceNanos = channel.since;
+        this.groupCounts = channel.groupCounts;
+        this.groupLeft = channel.groupLeft;
+        return this.nextExpectedComm;
+    }
+    
+    /**
+     * Check a queued output against the current step of its channel. Called
+     * with the baton.
+     * @param arrival
+     * @return false if the test has stopped
+     */
+    private boolean checkChannelOutput(Arrival<OutputType> arrival) {
+        OutputType object = arrival.object;
+        int id = arrival.channel;
+        long nanos = arrival.nanos;
+        arrival.object = null;
+        this.arrivals.release();
+        this.log(CDSTTraceEvent.READ, object);
+        
+        int index = Arrays.binarySearch(this.channelIds, id);
+        if(index < 0 || this.channels[index].isFinished()){
+            this.failIngesting(String.format(
+                "Received unexpected output from stream on channel %d, " +
+                "wasn't expecting any outputs on it but received: '%s'",
+                id,
+                object),
+                CallSite.NONE.toException());
+            return false;
+        }
+        
+        ChannelCursor channel = this.channels[index];
+        this.select(channel);
+        if(this.nextExpectedComm.isInput()){
+            this.failIngesting(String.format(
+                "Received unexpected output from stream on channel %d, was " +
+                "going to input: '%s' after delay, but instead received " +
+                "output: '%s'",
+                id,
+                this.nextInput(),
+                object),
+                this.nextExpectedComm.trace());
+            return false;
+        }
+        if(nanos < channel.written){
+            this.failIngesting(String.format(
+                "Received unexpected output from stream before the last " +
+                "input on its channel was written, was expecting: %s but it " +
+                "arrived too early: '%s'",
+                this.nextExpectedComm,
+                object),
+                this.nextExpectedComm.trace());
+            return false;
+        }
+        
+        this.arrivalNanos = nanos;
+        if(!this.checkOutput(object)){
+            this.stop();
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+            return false;
+        }
+        
+        // A group needs all of its outputs
+        channel.groupLeft = this.groupLeft;
+        if(channel.groupLeft == 0)
+            this.nextStep(channel);
+        return true;
+    }
+    
+    /**
+     * Wait for the write delay, or for the stream to signal that it is idle,
+     * failing if any output arrives first. Called with the baton.
+     * @param milliseconds
+     * @return false if the test has stopped
+     * @throws CDSTException if interrupted
+     */
+    private boolean awaitIngestedIdle(long milliseconds)
+            throws CDSTException {
+        long deadline = System.nanoTime() +
+                        TimeUnit.MILLISECONDS.toNanos(milliseconds);
+        while(true){
+            // Outputs are queued before the stream signals idle, so look for
+            // them after checking for the signal
+            boolean idle = this.idle.tryAcquire();
+            Arrival<OutputType> arrival = this.arrivals.peek();
+            if(arrival != null){
+                OutputType object = arrival.object;
+                arrival.object = null;
+                this.arrivals.release();
+                this.log(CDSTTraceEvent.READ, object);
+                // Baton: LOCKED -> FREE
+                this.failUnexpected(object);
+                return false;
+            }
+            if(this.failIfBroken())
+                return false;
+            if(idle){
+                this.log(CDSTTraceEvent.IDLE, null);
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+                return true;
+            LockSupport.parkNanos(this, remaining);
+            if(Thread.interrupted()){
+                this.stop();
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                throw new CDSTException(new InterruptedException());
+            }
+        }
+    }
+    
+    /**
+     * Wait for and check the output (or group of outputs) expected next.
+     * Called with the baton.
+     * @param written - when the last input was written
+     * @return false if the test has stopped
+     * @throws CDSTException
+     */
+    private boolean checkIngestedOutputs(long written) throws CDSTException {
+        long millis = this.deadlineMillis();
+        long deadline = System.nanoTime() +
+                        TimeUnit.MILLISECONDS.toNanos(millis);
+        while(true){
+            Arrival<OutputType> arrival = this.arrivals.peek();
+            
+            if(arrival == null){
+                if(this.failIfBroken())
+                    return false;
+                if(millis == 0){
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0){
+                        this.failIngesting(this.missedDeadline(millis),
+                                           this.nextExpectedComm.trace());
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if(Thread.interrupted()){
+                    this.stop();
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    throw new CDSTException(new InterruptedException());
+                }
+                continue;
+            }
+            
+            OutputType object = arrival.object;
+            long nanos = arrival.nanos;
+            arrival.object = null;
+            this.arrivals.release();
+            this.log(CDSTTraceEvent.READ, object);
+            
+            if(nanos < written){
+                this.failIngesting(String.format(
+                    "Received unexpected output from stream before the " +
+                    "last input was written, was expecting: %s but it " +
+                    "arrived too early: '%s'",
+                    this.nextExpectedComm,
+                    object),
+                    this.nextExpectedComm.trace());
+                return false;
+            }
+            
+            this.arrivalNanos = nanos;
+            if(!this.checkOutput(object)){
+                this.stop();
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                return false;
+            }
+            
+            // A group needs all of its outputs
+            if(this.groupLeft == 0)
+                return true;
+        }
+    }
     
-    /**
-     * Handler to forward requests on to
-     */
-    private CDSTHandler<InputType> handler = null;
+    private String overflowMessage() {
+        if(this.sequenced)
+            return String.format(
+                "Outputs were lost, their sequence numbers were more than %d " +
+                "ahead of the output being waited for",
+                this.arrivals.capacity());
+        return String.format(
+            "Outputs were lost, more than %d were waiting to be checked",
+            this.arrivals.capacity());
+    }
     
     /**
-     * List of Communications which should take place
+     * Fail and stop if outputs have been lost, or the stream has broken (see
+     * failStream()), while ingesting. Called with the baton, which is
+     * released if so.
+     * @return whether the test has stopped
      */
-    private LinkedList<Communication> comms = new LinkedList<Communication>();
+    private boolean failIfBroken() {
+        if(this.overflowed){
+            this.failIngesting(this.overflowMessage(),
+                               CallSite.NONE.toException());
+            return true;
+        }
+        String message = this.streamFailure;
+        if(message != null){
+            this.failIngesting(message, this.streamFailureTrace);
+            return true;
+        }
+        return false;
+    }
     
     /**
-     * Iterator used during testing
+     * Fail and stop while ingesting. Called with the baton, which is released.
      */
-    private Iterator<Communication> iter;
-    
-    private Communication nextExpectedComm;
+    private void failIngesting(String message, Exception trace) {
+        this.fail(message, trace);
+        this.stop();
+        // Baton: LOCKED -> FREE
+        this.baton.release();
+    }
     
     /**
-     * Start a tester with a specific delay before writing to stream input
-     * (see CDSTester.writeDelay)
-     * 
-     * @param writeDelay
+     * Run the script with a window (see setWindow())
+     * @throws CDSTException
      */
-    public CDSTester(long writeDelay){
-        this();
-        this.writeDelay = writeDelay;
-    }
-    
-    public CDSTester(){
-        try {
-            this.lock.acquire();
-            this.readWait.acquire();
-            // Have Baton
-            // this.lock: 0
-            // this.readWait: 0
-        } catch (InterruptedException e) {
+    private void doWindowedLoop() throws CDSTException {
+        // Have Baton
+        // Baton: LOCKED
+        
+        while(true){
+            
+            // Write inputs, and skip over outputs, as far as the window
+            // allows
+            while(this.hasNextComm() &&
+                  this.outstandingOutputs() < this.window){
+                CDSTCommunication<InputType, OutputType> comm =
+                    this.takeComm();
+                this.log(CDSTTraceEvent.NEXT_IS, comm);
+                if(comm.isOutput() && comm.getDeadline() > 0){
+                    this.stop();
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    throw new CDSTException(
+                        "Can't check outputs against deadlines with a " +
+                        "window: " + comm);
+                }
+                if(comm.isOutput()){
+                    int slot = (this.inFlightHead + this.inFlight.size()) %
+                               this.window;
+                    this.inFlightWrites[slot] = this.lastWriteNanos;
+                    this.inFlightSteps[slot] = this.position - 1;
+                    this.inFlight.add(comm);
+                    this.inFlightOutputs += countOutputs(comm);
+                } else if(!this.writeInput(comm.getInput())){
+                    // Baton: LOCKED -> FREE
+                    this.baton.release();
+                    return;
+                }
+            }
+            
+            if(this.outstandingOutputs() == 0 && !this.hasNextComm()){
+                this.stop();
+                this.log(CDSTTraceEvent.FINISHED, null);
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                return;
+            }
+            
+            // Wait for outputs to make room in the window
+            // Baton: LOCKED -> FREE
+            this.baton.release();
+            
+            // Baton: HANDED_BACK -> LOCKED
+            this.awaitHandBack();
+            
+            // Check that we are still running
+            if(this.state == TesterState.STOPPED){
+                // Baton: LOCKED -> FREE
+                this.baton.release();
+                return;
+            }
         }
     }
     
     /**
-     * Setup the correct handler for this tester
-     * @param handler
+     * How many outputs are still expected when running with a window,
+     * counting each output of a group. Called with the baton.
      */
-    public void setHandler(CDSTHandler<InputType> handler) throws CDSTException {
-        
-        this.assertPreparing();
-        
-        if(this.handler != null)
-            throw new CDSTException("Already set Handler");
-        
-        this.handler = handler;
+    private int outstandingOutputs() {
+        return this.inFlightOutputs + this.groupLeft;
     }
     
-    public void setLogLevel(int logLevel){
-        this.logLevel = logLevel;
+    private static int countOutputs(CDSTCommunication<?, ?> comm) {
+        OutputGroup<?> group = comm.getGroup();
+        return group != null ? group.size() : 1;
     }
     
+    // End
     // ***************
-    // Methods used to build up list of communications
     
     /**
-     * Tell the tester to expect some output from the stream at this point.
-     * @param object
-     * @throws CDSTException 
+     * How long to wait before writing the current communication (an input).
+     * Called with the baton.
      */
-    public void addOutputRead(OutputType object) throws CDSTException {
-        
-        this.assertPreparing();
-        comms.add(new Communication(CommunicationType.OUTPUT, object,
-                new Exception()));
+    private long writeDelay() {
+        long millis = this.nextExpectedComm.getWriteDelay();
+        if(millis == CDSTCommunication.DEFAULT_WRITE_DELAY)
+            return this.writeDelay;
+        return millis;
     }
     
     /**
-     * Tell the tester to write to the stream at this point.
-     * @param object
-     * @throws CDSTException 
+     * Start the deadline for the current communication (an output) if it has
+     * one. Called with the baton.
      */
-    public void addInputWrite(InputType object) throws CDSTException {
-        
-        this.assertPreparing();
-        comms.add(new Communication(CommunicationType.INPUT, object,
-                new Exception()));
+    private void armDeadline() {
+        long millis = this.deadlineMillis();
+        if(millis == 0)
+            return;
+        this.deadlineTick = new DeadlineTick(millis);
+        this.scheduleDeadline(this.deadlineTick, millis);
     }
     
     /**
-     * Tell the tester to expect some output from the stream at this point, and
-     * pass the object to the handler.
-     * @param handler
-     * @throws CDSTException 
+     * The deadline of the current communication (an output), 0 for none
      */
-    public void addOutputRead(CDSTReadHandler<OutputType> handler)
-            throws CDSTException {
-        
-        this.assertPreparing();
-        comms.add(new Communication(handler, new Exception()));
+    private long deadlineMillis() {
+        long millis = this.nextExpectedComm.getDeadline();
+        if(millis == CDSTCommunication.DEFAULT_DEADLINE)
+            millis = this.defaultDeadline;
+        return millis;
+    }
+    
+    private String missedDeadline(long millis) {
+        return String.format(
+            "Didn't receive output from stream within %d ms, was expecting: %s",
+            millis,
+            this.nextExpectedComm);
     }
     
     /**
-     * Tell the tester to write to the stream at this point, using a handler.
-     * @param handler
-     * @throws CDSTException 
+     * Schedule a deadline check on the shared wheel, or on the scheduler when
+     * the test is timed by the scheduler's clock
      */
-    public void addInputWrite(CDSTWriteHandler<InputType> handler)
-            throws CDSTException {
-        
-        this.assertPreparing();
-        comms.add(new Communication(handler, new Exception()));
+    private void scheduleDeadline(DeadlineTick tick, long millis) {
+        if(this.clock == CDSTClock.SYSTEM)
+            this.deadline = DeadlineWheel.SHARED.schedule(tick, millis);
+        else
+            this.scheduledDeadline = this.scheduler.schedule(
+                tick, millis, TimeUnit.MILLISECONDS);
     }
     
-    // End
-    // ***************
-    
-    // ***************
-    // Methods used to communicate with the tester during testing
-    
     /**
-     * Tell the tester that there has been output received from the stream.
-     * @param object
-     * @throws InterruptedException 
+     * Stop waiting for the current deadline, if there is one. Called with the
+     * baton.
      */
-    public void readFromStream(OutputType object) throws CDSTException {
-        this.doRead(object);
+    private void disarmDeadline() {
+        if(this.deadlineTick != null){
+            this.deadlineTick.cancelled = true;
+            this.deadlineTick = null;
+        }
+        if(this.deadline != null){
+            this.deadline.cancel();
+            this.deadline = null;
+        }
+        if(this.scheduledDeadline != null){
+            this.scheduledDeadline.cancel(false);
+            this.scheduledDeadline = null;
+        }
     }
     
-    // End
-    // ***************
-    
-    
     /**
-     * Run the test
-     * @throws CDSTException 
+     * Report a deadline missed while the test thread was waiting in run(), on
+     * the test thread rather than the deadline wheel's. Called with the
+     * baton.
      */
-    public void run() throws CDSTException {
-        
-        this.assertPreparing();
-        
-        this.log("Running", CDSTester.L_INFO);
-
-        // Have Baton
-        // this.lock: 0
-        // this.readWait: 0
-        
-        if(this.handler == null)
-            throw new CDSTException("Didn't set Handler");
-        
-        this.doRun();
+    private void reportMissedDeadline() {
+        Throwable error = this.deadlineError;
+        if(error != null)
+            this.fail("Error while checking deadline: " + error,
+                      new Exception(error));
+        else if(this.missedMillis != 0)
+            this.fail(this.missedDeadline(this.missedMillis),
+                      this.nextExpectedComm.trace());
     }
     
-    // ***************
-    // Internal methods used to actually run the test
-    
-    private void doRun() throws CDSTException {
-        // Have Baton
-        // this.lock: 0
-        // this.readWait: 0
-        
-        this.state = TesterState.RUNNING;
-        this.iter = this.comms.iterator();
-        
-        this.doLoop();
+    /**
+     * Fail the test when an output hasn't arrived in time, run by the
+     * deadline wheel (or the scheduler when it has its own clock)
+     */
+    private class DeadlineTick implements Runnable, DeadlineWheel.Task {
         
-    }
-    
-    private void doRead(OutputType object) throws CDSTException {
+        private final long millis;
         
-        this.log("Read: " + object.toString(), CDSTester.L_OUTPUT);
+        /**
+         * Set with the baton once the output has been read (or the test has
+         * stopped), so a check which is still scheduled does nothing
+         */
+        private volatile boolean cancelled = false;
         
-        // this.lock: 1 -> 0
-        // this.readWait: 0 -> 0
-        this.acquire(this.lock);
+        public DeadlineTick(long millis){
+            this.millis = millis;
+        }
         
-        if(this.state == TesterState.STOPPED){
-            // Don't need to return transfer back to main thread, only to self
-            // this.lock: 0 -> 1
-            // this.readWait: 0 -> 0
-            this.release(this.lock);
-            throw new CDSTException("Already Stopped Testing");
+        @Override
+        public void expire() {
+            if(CDSTester.this.future != null)
+                // The handler is never called on the wheel, when running
+                // asynchronously the failure is reported from the scheduler
+                CDSTester.this.scheduler.execute(this);
+            else
+                this.run();
         }
         
-        // Have lock
-        if(!this.nextExpectedComm.isOutput()){
-            // Have received output when not supposed to
-            this.handler.fail(String.format(
-                "Received unexpected output from stream, was going to input: " +
-                "'%s' after delay, but instead received output: '%s'",
-                this.nextExpectedComm.getInput(),
-                object),
-                this.nextExpectedComm.trace);
-            
-            // Stop testing
-            this.state = TesterState.STOPPED;
-            
-            // Main Thread for testing is expecting this.lock to be released
-            // and not waiting on this.readWait
-            // this.lock: 0 -> 1
-            // this.readWait: 0 -> 0
-            this.release(this.lock);
-        } else {
-            // An output is expected, lets check it is the correct output
-
-            if(!this.nextExpectedComm.checkOutput(object)){
-                
-                // Stop testing
-                this.state = TesterState.STOPPED;
-            }
-            
-            // Pass the Baton
-            // this.lock: 0 -> 0
-            // this.readWait: 0 -> 1
-            this.release(this.readWait);
+        @Override
+        public void failed(Throwable e) {
+            if(CDSTester.this.deadlineError == null)
+                CDSTester.this.deadlineError = e;
+            if(CDSTester.this.future != null)
+                CDSTester.this.future.completeExceptionally(e);
         }
-    }
-    
-    private void doLoop() throws CDSTException {
-        // Have Baton
-        // this.lock: 0
-        // this.readWait: 0
         
-        while(true){
-            
-            this.log("Next Communication...", CDSTester.L_INTERNALS);
+        @Override
+        public void run() {
             
-            try {
-                this.nextExpectedComm = this.iter.next();
-            } catch (NoSuchElementException e) {
-                this.state = TesterState.STOPPED;
-                this.log("Finished (success)", CDSTester.L_INFO);
-                // Release Baton
-                this.release(this.lock);
+            // Never block the wheel, if someone else has the baton then
+            // they are probably reading the output, so check again shortly
+            // Baton: FREE -> LOCKED
+            if(!CDSTester.this.baton.tryAcquire()){
+                if(!this.cancelled &&
+                   CDSTester.this.state != TesterState.STOPPED)
+                    this.retry();
                 return;
             }
             
-            this.log("... is: " + this.nextExpectedComm.toString(),
-                     CDSTester.L_INTERNALS);
+            // Check that we are still running, and still waiting
+            if(CDSTester.this.state == TesterState.STOPPED || this.cancelled){
+                // Baton: LOCKED -> FREE
+                CDSTester.this.baton.release();
+                return;
+            }
             
-            // Inspect what the next communication is
-            if(this.nextExpectedComm.isInput()){
-                // Need to send input to stream, first wait to see if an invalid
-                // output will be sent first.
-
-                // this.lock: 0 -> 1
-                // this.readWait: 0 -> 0
-                this.release(this.lock);
-                this.sleep(this.writeDelay);
-                // this.lock: 1 -> 0
-                // this.readWait: 0 -> 0
-                this.acquire(this.lock);
-                
-                // Check that we are still running
-                if(this.state == TesterState.STOPPED){
-                    // this.lock: 0 -> 1
-                    // this.readWait: 0 -> 0
-                    this.release(this.lock);
-                    return;
-                }
-                
-                // Now send input
-                this.log("Writing: " + this.nextExpectedComm.getInput(),
-                         CDSTester.L_INPUT);
-                this.handler.writeToStream(this.nextExpectedComm.getInput());
-                
-                // And now loop back for next communication
-                
-            } else {
-                // Next communication is an output, so we expect to have
-                // readFromStream called next
-                
-                // transfer control to that thread and wait for transfer back
-                
-                // Pass the Baton
-                // this.lock: 0 -> 1
-                // this.readWait: 0 -> 0
-                this.release(this.lock);
-                
-                // Wait for transfer back
-                // this.lock: 0 -> 0
-                // this.readWait: 1 -> 0
-                this.acquire(this.readWait);
-                
-                // Check that we are still running
-                if(this.state == TesterState.STOPPED){
-                    // this.lock: 0 -> 1
-                    // this.readWait: 0 -> 0
-                    this.release(this.lock);
-                    return;
+            if(CDSTester.this.future == null){
+                // Stop testing, and let the test thread report it
+                try {
+                    CDSTester.this.missedMillis = this.millis;
+                    CDSTester.this.stop();
+                } finally {
+                    // Baton: LOCKED -> HANDED_BACK
+                    CDSTester.this.baton.handBack();
                 }
-                
-                // Now loop round again
-                
+                return;
+            }
+            
+            try {
+                CDSTester.this.fail(
+                    CDSTester.this.missedDeadline(this.millis),
+                    CDSTester.this.nextExpectedComm.trace());
+            } finally {
+                // Stop testing, and let the test thread find out
+                CDSTester.this.stop();
+                CDSTester.this.passBack();
             }
         }
         
+        /**
+         * Check again on the next tick, without the baton, so the tester's
+         * own record of where the deadline is scheduled is left alone (this
+         * stays its check, and cancelled is what stops it)
+         */
+        private void retry() {
+            if(CDSTester.this.clock == CDSTClock.SYSTEM)
+                DeadlineWheel.SHARED.schedule(this, 0);
+            else
+                CDSTester.this.scheduler.schedule(
+                    this, 0, TimeUnit.MILLISECONDS);
+        }
     }
     
-    // End
-    // ***************
-    
     // ***************
     // Helper Methods
     
     /**
-     * Acquire the lock on the mutex
+     * Acquire the baton from a reading thread
      * @throws CDSTException 
      */
+    private void acquire() throws CDSTException {
+        FlightRecorderEvents.Handoff event =
+            new FlightRecorderEvents.Handoff();
+        event.begin();
+        try {
+            this.baton.acquire();
+        } catch (InterruptedException e) {
+            throw new CDSTException(e);
+        }
+        if(event.shouldCommit()){
+            event.tester = this.id;
+            event.step = this.expectedStep;
+            event.commit();
+        }
+    }
     
-    private void acquire(Semaphore s) throws CDSTException {
+    /**
+     * Wait for a reading thread to hand the baton back
+     * @throws CDSTException
+     */
+    private void awaitHandBack() throws CDSTException {
+        FlightRecorderEvents.Wait event = new FlightRecorderEvents.Wait();
+        event.begin();
         try {
-            s.acquire();
+            // Baton: HANDED_BACK -> LOCKED
+            this.baton.awaitHandBack();
         } catch (InterruptedException e) {
+            // Make sure whoever reads next isn't left waiting
+            this.state = TesterState.STOPPED;
+            this.baton.abandon();
             throw new CDSTException(e);
         }
+        this.commitWait(event, "output");
+    }
+    
+    /**
+     * Finish a flight recorder wait event, if it is being recorded. Called
+     * with the baton.
+     */
+    private void commitWait(FlightRecorderEvents.Wait event, String reason) {
+        if(event.shouldCommit()){
+            event.tester = this.id;
+            event.step = this.position - 1;
+            event.reason = reason;
+            event.commit();
+        }
     }
     
-    private void release(Semaphore s) {
-        s.release();
+    /**
+     * Record the failure and pass it on to the handler
+     * @param message
+     * @param trace
+     */
+    private void fail(String message, Exception trace) {
+        if(this.failureMessage == null){
+            this.failureMessage = message;
+            this.failureTrace = trace;
+        }
+        FlightRecorderEvents.Failure event =
+            new FlightRecorderEvents.Failure();
+        if(event.shouldCommit()){
+            event.tester = this.id;
+            event.step = this.expectedStep;
+            event.message = message;
+            event.commit();
+        }
+        this.handler.fail(message, trace);
     }
     
     private void assertPreparing() throws CDSTException {
@@ -387,131 +2613,120 @@ public class CDSTester<InputType, OutputType> {
             throw new CDSTException("Already run, can't perform action.");
     }
     
-    private void sleep(long milliseconds) throws CDSTException{
+    private void assertBuilding() throws CDSTException {
+        this.assertPreparing();
+        if(this.builder == null)
+            throw new CDSTException(
+                "Running a plan or script, can't add communications.");
+    }
+    
+    /**
+     * Wait for the stream to become idle, for at most the given time
+     * @param milliseconds
+     * @throws CDSTException
+     */
+    private void awaitIdle(long milliseconds) throws CDSTException {
+        FlightRecorderEvents.Wait event = new FlightRecorderEvents.Wait();
+        event.begin();
         try {
-            Thread.sleep(milliseconds);
+            boolean idle;
+            if(this.idleDetector != null)
+                idle = this.idleDetector.awaitIdle(milliseconds);
+            else
+                idle = this.idle.tryAcquire(milliseconds,
+                                            TimeUnit.MILLISECONDS);
+            if(idle)
+                this.log(CDSTTraceEvent.IDLE, null);
         } catch (InterruptedException e) {
             throw new CDSTException(e);
         }
+        this.commitWait(event, "write delay");
     }
     
     /**
-     * Log something at a specific log level
-     * @param msg
-     * @param logLevel
+     * Log an event if its level is enabled, nothing is formatted here
+     * @param event
+     * @param subject
      */
-    private void log(String msg, int logLevel){
-        if((logLevel & this.logLevel) > 0)
-            System.out.println("[CDST] " + msg);
+    private void log(CDSTTraceEvent event, Object subject){
+        if((event.level & this.logLevel) > 0)
+            this.traceSink.trace(this, event, subject,
+                                 this.clock.nanoTime());
     }
     
     // End
     // ***************
     
-    private enum TesterState {
-        PREPARING,
-        RUNNING,
-        STOPPED
-    }
-    
-    private class Communication {
-        private InputType input;
-        private OutputType output;
-        private CDSTWriteHandler<InputType> inputHandler;
-        private InputType inputHandlerCache;
-        private CDSTReadHandler<OutputType> outputHandler;
-        
-        public final Exception trace;
-        
-        @SuppressWarnings("unchecked")
-        public Communication(CommunicationType type, Object object
-                , Exception trace){
-            this.trace = trace;
-            switch(type){
-            case INPUT:
-                this.input = (InputType) object;
-                break;
-            case OUTPUT:
-                this.output = (OutputType) object;
-                break;
-            }
-        }
+    /**
+     * Scheduler shared by all testers running asynchronously, with a single
+     * daemon thread
+     */
+    private static class SharedScheduler {
         
-        public Communication(CDSTWriteHandler<InputType> handler
-                , Exception trace){
-            this.trace = trace;
-            this.inputHandler = handler;
-        }
+        static final ScheduledExecutorService INSTANCE = create();
         
-        public Communication(CDSTReadHandler<OutputType> handler
-                , Exception trace){
-            this.trace = trace;
-            this.outputHandler = handler;
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor scheduler =
+                new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "CDSTester scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            return scheduler;
         }
+    }
+    
+    /**
+     * An output queued when ingesting, the channel it arrived on, and when
+     */
+    private static class Arrival<OutputType> {
+        OutputType object;
+        int channel;
+        long nanos;
+    }
+    
+    /**
+     * A logical channel when multiplexing: the steps of the plan on it in
+     * order, how far through them it has got, and what the tester keeps for
+     * the current communication while it is another channel's turn
+     */
+    private static class ChannelCursor {
+        final int id;
+        final int[] steps;
+        int cursor = -1;
         
-        public boolean isInput(){
-            return this.input != null || this.inputHandler != null;
-        }
+        /**
+         * When to write the current input, or the deadline of the current
+         * output
+         */
+        long due;
         
-        public InputType getInput(){
-            if(this.input != null)
-                return this.input;
-            else
-                if(this.inputHandlerCache != null)
-                    return this.inputHandlerCache;
-                else
-                    return this.inputHandlerCache = this.inputHandler.write();
-            
-        }
+        /**
+         * When the last input on the channel was written, and when the one
+         * before the current step was
+         */
+        long written = Long.MIN_VALUE;
+        long since;
         
-        public boolean isOutput(){
-            return this.output != null || this.outputHandler != null;
-        }
+        int[] groupCounts;
+        int groupLeft;
         
-        public boolean checkOutput(OutputType object) {
-            if(this.output != null)
-                if(this.output.equals(object))
-                    return true;
-                else {
-                    // Have received invalid output.
-                    CDSTester.this.handler.fail(String.format(
-                        "Received incorrect output from stream, was " +
-                        "expecting: '%s' but instead received: '%s'",
-                        this.output,
-                        object),
-                        this.trace);
-                    return false;
-                }
-                else
-                    try {
-                        this.outputHandler.read(object);
-                        return true;
-                    } catch (Exception e) {
-                        CDSTester.this.handler.fail(String.format(
-                            "Received incorrect output from stream, " + 
-                            "CDSTReadHandler gave exception: '%s' after " +
-                            "receiving: '%s'",
-                            e,
-                            object),
-                            this.trace);
-                        return false;
-                    }
+        ChannelCursor(int id, int size){
+            this.id = id;
+            this.steps = new int[size];
         }
         
-        public String toString(){
-            if(this.input != null)
-                return "INPUT (" + this.input.toString() + ")";
-            else if(this.inputHandler != null)
-                return "INPUT (" + this.inputHandler.toString() + ")";
-            else if(this.output != null)
-                return "OUTPUT (" + this.output.toString() + ")";
-            else
-                return "INPUT (" + this.outputHandler.toString() + ")";
-                
+        boolean isFinished(){
+            return this.cursor >= this.steps.length;
         }
     }
     
-    private enum CommunicationType {
-        INPUT, OUTPUT
+    private enum TesterState {
+        PREPARING,
+        RUNNING,
+        STOPPED
     }
 }
@@ -0,0 +1,83 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.lang.StackWalker.StackFrame;
+
+/**
+ * Where a communication was added to the tester, as captured by a
+ * CDSTTraceCapture policy.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+abstract class CallSite {
+    
+    /**
+     * Shared call site used when capture is off
+     */
+    static final CallSite NONE = new CallSite() {
+        @Override
+        Exception toException() {
+            Exception e = new Exception("Call site capture is off");
+            e.setStackTrace(new StackTraceElement[0]);
+            return e;
+        }
+    };
+    
+    /**
+     * Build the exception handed to CDSTHandler.fail()
+     */
+    abstract Exception toException();
+    
+    static class Full extends CallSite {
+        
+        private final Exception trace;
+        
+        Full(Exception trace){
+            this.trace = trace;
+        }
+        
+        @Override
+        Exception toException() {
+            return this.trace;
+        }
+    }
+    
+    static class TopFrame extends CallSite {
+        
+        private final StackFrame frame;
+        
+        TopFrame(StackFrame frame){
+            this.frame = frame;
+        }
+        
+        @Override
+        Exception toException() {
+            Exception e = new Exception();
+            if(this.frame == null)
+                e.setStackTrace(new StackTraceElement[0]);
+            else
+                e.setStackTrace(new StackTraceElement[]{
+                    this.frame.toStackTraceElement()
+                });
+            return e;
+        }
+    }
+}
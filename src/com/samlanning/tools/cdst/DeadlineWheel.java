@@ -0,0 +1,200 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel, used to run tasks after a deadline with a single
+ * thread shared by every tester.
+ * 
+ * Deadlines are rounded up to the next tick. Scheduling and cancelling never
+ * block: new deadlines are queued for the wheel thread to put into their
+ * bucket on its next tick, and cancelled deadlines are dropped when their
+ * bucket is next visited. Expired tasks run on the wheel thread, so they
+ * should be quick and never block, and shouldn't run user code: anything
+ * they throw is given back to the task rather than stopping the wheel for
+ * every other tester.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+class DeadlineWheel {
+    
+    static final DeadlineWheel SHARED = new DeadlineWheel(10, 512);
+    
+    private final long tickNanos;
+    private final ArrayList<ArrayList<Deadline>> buckets;
+    
+    /**
+     * Deadlines scheduled since the last tick
+     */
+    private final Queue<Deadline> added = new ConcurrentLinkedQueue<Deadline>();
+    
+    /**
+     * When the wheel started, and how many ticks it has done (only used by
+     * the wheel thread)
+     */
+    private final long startNanos;
+    private long tick = 0;
+    
+    DeadlineWheel(long tickMillis, int bucketCount){
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new ArrayList<ArrayList<Deadline>>(bucketCount);
+        for(int i = 0; i < bucketCount; i++)
+            this.buckets.add(new ArrayList<Deadline>());
+        this.startNanos = System.nanoTime();
+        
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DeadlineWheel.this.loop();
+            }
+        }, "CDSTester deadlines");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Run a task once a delay has passed, unless it is cancelled first
+     * @param task
+     * @param delayMillis
+     * @return the deadline, which can be cancelled
+     */
+    Deadline schedule(Task task, long delayMillis){
+        long nanos =
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        Deadline deadline = new Deadline(task, nanos);
+        this.added.add(deadline);
+        return deadline;
+    }
+    
+    private void loop(){
+        while(true){
+            long next = this.startNanos + (this.tick + 1) * this.tickNanos;
+            long wait;
+            while((wait = next - System.nanoTime()) > 0)
+                LockSupport.parkNanos(this, wait);
+            
+            this.transferAdded();
+            this.expire(this.buckets.get(
+                (int) (this.tick % this.buckets.size())));
+            this.tick++;
+        }
+    }
+    
+    /**
+     * Put newly scheduled deadlines into their buckets
+     */
+    private void transferAdded(){
+        Deadline deadline;
+        while((deadline = this.added.poll()) != null){
+            if(deadline.cancelled.get())
+                continue;
+            // The tick at the end of which the deadline has passed
+            long ticks = (deadline.nanos - this.startNanos +
+                          this.tickNanos - 1) / this.tickNanos - 1;
+            // Never put it behind the current tick
+            ticks = Math.max(ticks, this.tick);
+            deadline.rounds = (ticks - this.tick) / this.buckets.size();
+            this.buckets.get((int) (ticks % this.buckets.size()))
+                .add(deadline);
+        }
+    }
+    
+    private void expire(ArrayList<Deadline> bucket){
+        Iterator<Deadline> it = bucket.iterator();
+        while(it.hasNext()){
+            Deadline deadline = it.next();
+            if(deadline.cancelled.get()){
+                it.remove();
+            } else if(deadline.rounds > 0){
+                deadline.rounds--;
+            } else {
+                it.remove();
+                if(deadline.cancelled.compareAndSet(false, true))
+                    this.run(deadline.task);
+            }
+        }
+    }
+    
+    private void run(Task task){
+        try {
+            task.expire();
+        } catch (Throwable e) {
+            try {
+                task.failed(e);
+            } catch (Throwable ignored) {
+                // Keep the wheel going for everyone else
+            }
+        }
+    }
+    
+    /**
+     * Something to do once a deadline has passed
+     */
+    interface Task {
+        
+        /**
+         * Called on the wheel thread when the deadline has passed
+         */
+        void expire();
+        
+        /**
+         * Called on the wheel thread if expire() threw, so the task can
+         * report it
+         * @param e
+         */
+        void failed(Throwable e);
+    }
+    
+    /**
+     * A task waiting in the wheel
+     */
+    static class Deadline {
+        
+        private final Task task;
+        private final long nanos;
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        
+        /**
+         * Times round the wheel left before the deadline (only used by the
+         * wheel thread)
+         */
+        private long rounds;
+        
+        private Deadline(Task task, long nanos){
+            this.task = task;
+            this.nanos = nanos;
+        }
+        
+        /**
+         * Stop the task from running, if it hasn't already
+         */
+        void cancel(){
+            this.cancelled.set(true);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for what testers do, so that long running
+ * tests can be profiled with the standard JFR tools, alongside GC and lock
+ * contention in the stream being tested.
+ * 
+ * Each event is created and begun where it happens, but only filled in
+ * (with strings formatted) if it is going to be committed, so when
+ * recording is off the JIT is left with next to nothing to do.
+ * 
+ * Every event has the id of the tester (see CDSTester.getId()), and the
+ * step (position in the script) it was at.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+final class FlightRecorderEvents {
+    
+    private FlightRecorderEvents(){
+    }
+    
+    @Category("CDST")
+    @StackTrace(false)
+    abstract static class TesterEvent extends Event {
+        
+        @Label("Tester")
+        long tester;
+        
+        @Label("Step")
+        int step;
+    }
+    
+    @Name("com.samlanning.cdst.Write")
+    @Label("Input Write")
+    @Description("The tester writing an input to the stream")
+    static class Write extends TesterEvent {
+        
+        @Label("Input")
+        String input;
+    }
+    
+    @Name("com.samlanning.cdst.Read")
+    @Label("Output Read")
+    @Description("The tester checking an output read from the stream")
+    static class Read extends TesterEvent {
+        
+        @Label("Output")
+        String output;
+        
+        @Label("Correct")
+        boolean correct;
+    }
+    
+    @Name("com.samlanning.cdst.Wait")
+    @Label("Tester Wait")
+    @Description("The test thread waiting, before writing input or for " +
+                 "output")
+    static class Wait extends TesterEvent {
+        
+        @Label("Waiting For")
+        String reason;
+    }
+    
+    @Name("com.samlanning.cdst.Handoff")
+    @Label("Baton Handoff")
+    @Description("A thread reading from the stream waiting to take the " +
+                 "baton from the test thread")
+    static class Handoff extends TesterEvent {
+    }
+    
+    @Name("com.samlanning.cdst.Failure")
+    @Label("Test Failure")
+    @Description("A failure reported to the tester's handler")
+    @StackTrace(true)
+    static class Failure extends TesterEvent {
+        
+        @Label("Message")
+        String message;
+    }
+}
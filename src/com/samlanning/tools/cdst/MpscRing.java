@@ -0,0 +1,188 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, lock-free ring buffer with many producers and a single
+ * consumer.
+ * 
+ * Entries are allocated up front and reused: a producer claims a slot, fills
+ * in its entry and publishes it; the consumer takes published entries in
+ * order and releases them for reuse.
+ * 
+ * Producers which number the entries themselves can instead fill in the
+ * slot for a given position once it is available, in any order, and the
+ * consumer still takes them in order of position. Each producer then only
+ * touches its own slots, so the ring is also a reorder buffer.
+ * 
+ * Producers which find the ring full can park until the consumer releases
+ * a slot.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+class MpscRing<E> {
+    
+    private final int mask;
+    private final E[] entries;
+    
+    /**
+     * For each slot, the position it is ready to be claimed at, or that
+     * position + 1 once published
+     */
+    private final AtomicLongArray sequences;
+    
+    private final AtomicLong tail = new AtomicLong(0);
+    
+    /**
+     * Only used by the consumer
+     */
+    private long head = 0;
+    
+    /**
+     * Producers parked until a slot is released
+     */
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    
+    /**
+     * @param capacity - rounded up to a power of 2
+     * @param factory - creates the entries
+     */
+    @SuppressWarnings("unchecked")
+    MpscRing(int capacity, Supplier<E> factory){
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.entries = (E[]) new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++){
+            this.entries[i] = factory.get();
+            this.sequences.set(i, i);
+        }
+    }
+    
+    int capacity(){
+        return this.mask + 1;
+    }
+    
+    /**
+     * Claim the next slot to fill in
+     * @return the position of the slot, or -1 if the ring is full
+     */
+    long claim(){
+        while(true){
+            long position = this.tail.get();
+            long sequence = this.sequences.get((int) position & this.mask);
+            if(sequence == position){
+                if(this.tail.compareAndSet(position, position + 1))
+                    return position;
+            } else if(sequence < position){
+                return -1;
+            }
+            // Otherwise another producer claimed it first, try again
+        }
+    }
+    
+    /**
+     * Whether the slot for a position numbered by the producer is ready to be
+     * filled in, and then published. Only one producer may fill in each
+     * position, and positions can't be mixed with claim().
+     */
+    boolean available(long position){
+        return this.sequences.get((int) position & this.mask) == position;
+    }
+    
+    /**
+     * Whether a position numbered by the producer has already been filled in
+     * (otherwise, if it isn't available, the ring is full)
+     */
+    boolean filled(long position){
+        return this.sequences.get((int) position & this.mask) > position;
+    }
+    
+    /**
+     * The entry to fill in at a claimed position
+     */
+    E entry(long position){
+        return this.entries[(int) position & this.mask];
+    }
+    
+    /**
+     * Make a claimed and filled in entry available to the consumer
+     */
+    void publish(long position){
+        this.sequences.set((int) position & this.mask, position + 1);
+    }
+    
+    /**
+     * Get the next published entry, consumer only
+     * @return the entry, or null if there isn't one
+     */
+    E peek(){
+        int index = (int) this.head & this.mask;
+        if(this.sequences.get(index) != this.head + 1)
+            return null;
+        return this.entries[index];
+    }
+    
+    /**
+     * Finish with the entry returned by peek(), consumer only
+     */
+    void release(){
+        int index = (int) this.head & this.mask;
+        this.sequences.set(index, this.head + this.mask + 1);
+        this.head++;
+        if(!this.waiters.isEmpty())
+            for(Thread waiter : this.waiters)
+                LockSupport.unpark(waiter);
+    }
+    
+    /**
+     * Park a producer which found the ring full in claim() until the
+     * consumer releases a slot, or for at most the given time
+     */
+    void awaitClaim(long nanos){
+        Thread current = Thread.currentThread();
+        this.waiters.add(current);
+        // Don't park if a slot was released before we were added
+        long position = this.tail.get();
+        if(this.sequences.get((int) position & this.mask) < position)
+            LockSupport.parkNanos(this, nanos);
+        this.waiters.remove(current);
+    }
+    
+    /**
+     * Park a producer until the slot for a position it numbered is available
+     * (or filled in by someone else), or for at most the given time
+     */
+    void awaitAvailable(long position, long nanos){
+        Thread current = Thread.currentThread();
+        this.waiters.add(current);
+        // Don't park if it was released before we were added
+        if(this.sequences.get((int) position & this.mask) < position)
+            LockSupport.parkNanos(this, nanos);
+        this.waiters.remove(current);
+    }
+}
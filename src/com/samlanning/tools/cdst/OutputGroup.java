@@ -0,0 +1,100 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Outputs which may arrive in any order, each expected a number of times.
+ * 
+ * Each distinct output is given a slot, found with a hash lookup, and the
+ * tester keeps a copy of the counts for each slot while it is waiting for
+ * the group (see newCounts()), so the group itself is immutable.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+class OutputGroup<OutputType> {
+    
+    private final HashMap<OutputType, Integer> slots =
+        new HashMap<OutputType, Integer>();
+    private final int[] counts;
+    private final int size;
+    
+    OutputGroup(Map<? extends OutputType, Integer> counts)
+            throws CDSTException {
+        this.counts = new int[counts.size()];
+        int size = 0;
+        for(Map.Entry<? extends OutputType, Integer> entry :
+                counts.entrySet()){
+            int count = entry.getValue();
+            if(entry.getKey() == null)
+                throw new CDSTException(
+                    "Group can't expect null");
+            if(count < 1)
+                throw new CDSTException(
+                    "Count must be at least 1 for: " + entry.getKey());
+            this.counts[this.slots.size()] = count;
+            this.slots.put(entry.getKey(), this.slots.size());
+            size += count;
+        }
+        if(size == 0)
+            throw new CDSTException("Group can't be empty");
+        this.size = size;
+    }
+    
+    /**
+     * Group expecting each output once for every time it appears
+     */
+    static <O> OutputGroup<O> of(Collection<? extends O> outputs)
+            throws CDSTException {
+        HashMap<O, Integer> counts = new HashMap<O, Integer>();
+        for(O output : outputs){
+            Integer count = counts.get(output);
+            counts.put(output, count == null ? 1 : count + 1);
+        }
+        return new OutputGroup<O>(counts);
+    }
+    
+    /**
+     * @return how many outputs the group expects in total
+     */
+    int size(){
+        return this.size;
+    }
+    
+    /**
+     * @return the number of times each slot is expected, for the tester to
+     *         count down
+     */
+    int[] newCounts(){
+        return this.counts.clone();
+    }
+    
+    /**
+     * @param output
+     * @return the slot for the output, or -1 if the group doesn't expect it
+     */
+    int slot(Object output){
+        Integer slot = this.slots.get(output);
+        return slot == null ? -1 : slot;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small harness to run benchmarks with warm up and measurement iterations,
+ * and report the results in a stable format so they can be compared across
+ * releases.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class BenchmarkRunner {
+    
+    public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    public static final int DEFAULT_ITERATIONS = 10;
+    
+    private final int warmupIterations;
+    private final int iterations;
+    
+    private final List<Result> results = new ArrayList<Result>();
+    
+    public BenchmarkRunner(int warmupIterations, int iterations){
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+    }
+    
+    public BenchmarkRunner(){
+        this(DEFAULT_WARMUP_ITERATIONS, DEFAULT_ITERATIONS);
+    }
+    
+    /**
+     * A single thing to measure, set up afresh for every iteration
+     */
+    public static abstract class Task {
+        
+        /**
+         * Prepare an iteration, this isn't timed
+         * @throws Exception
+         */
+        public void setUp() throws Exception {
+        }
+        
+        /**
+         * Run an iteration
+         * @return the number of operations performed
+         * @throws Exception
+         */
+        public abstract long run() throws Exception;
+        
+        /**
+         * Clean up after an iteration, this isn't timed
+         * @throws Exception
+         */
+        public void tearDown() throws Exception {
+        }
+    }
+    
+    public static class Result {
+        
+        public final String benchmark;
+        public final String param;
+        
+        /**
+         * Mean and standard deviation across iterations, in ns per operation
+         */
+        public final double mean;
+        public final double stddev;
+        
+        Result(String benchmark, String param, double mean, double stddev){
+            this.benchmark = benchmark;
+            this.param = param;
+            this.mean = mean;
+            this.stddev = stddev;
+        }
+        
+        public double opsPerSecond(){
+            return 1e9 / this.mean;
+        }
+        
+        public String toString(){
+            return String.format(
+                "%-32s %-10s %12.1f +- %9.1f ns/op %14.0f ops/s",
+                                 this.benchmark,
+                                 this.param,
+                                 this.mean,
+                                 this.stddev,
+                                 this.opsPerSecond());
+        }
+    }
+    
+    /**
+     * Measure a task, print and record its result
+     * @param benchmark - name of the benchmark
+     * @param param - the parameter used for this run (or "-")
+     * @param task
+     * @return the result
+     * @throws Exception
+     */
+    public Result measure(String benchmark, String param, Task task)
+            throws Exception {
+        
+        for(int i = 0; i < this.warmupIterations; i++)
+            this.iteration(task);
+        
+        double[] samples = new double[this.iterations];
+        double sum = 0;
+        for(int i = 0; i < this.iterations; i++){
+            samples[i] = this.iteration(task);
+            sum += samples[i];
+        }
+        
+        double mean = sum / this.iterations;
+        double squares = 0;
+        for(double sample : samples)
+            squares += (sample - mean) * (sample - mean);
+        double stddev = this.iterations > 1 ?
+            Math.sqrt(squares / (this.iterations - 1)) : 0;
+        
+        Result result = new Result(benchmark, param, mean, stddev);
+        this.results.add(result);
+        System.out.println(result);
+        return result;
+    }
+    
+    /**
+     * Run a single iteration
+     * @return ns per operation
+     */
+    private double iteration(Task task) throws Exception {
+        task.setUp();
+        long start = System.nanoTime();
+        long ops = task.run();
+        long elapsed = System.nanoTime() - start;
+        task.tearDown();
+        return (double) elapsed / ops;
+    }
+    
+    public List<Result> getResults(){
+        return this.results;
+    }
+    
+    /**
+     * Write all of the results measured so far as CSV
+     * @param writer
+     * @throws IOException
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("benchmark,param,mean_ns_per_op,stddev_ns_per_op," +
+                     "ops_per_second\n");
+        for(Result result : this.results)
+            writer.write(String.format("%s,%s,%.2f,%.2f,%.0f\n",
+                                       result.benchmark,
+                                       result.param,
+                                       result.mean,
+                                       result.stddev,
+                                       result.opsPerSecond()));
+        writer.flush();
+    }
+}
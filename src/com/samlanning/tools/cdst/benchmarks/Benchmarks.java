@@ -0,0 +1,51 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import java.io.FileWriter;
+import java.io.Writer;
+
+/**
+ * Runs every benchmark, optionally writing the results as CSV to the file
+ * given as the first argument so they can be tracked across releases.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class Benchmarks {
+    
+    public static void main(String[] args) throws Exception {
+        
+        BenchmarkRunner runner = new BenchmarkRunner();
+        
+        HandoffBenchmark.register(runner);
+        MatchingBenchmark.register(runner);
+        ScalingBenchmark.register(runner);
+        ScriptConstructionBenchmark.register(runner);
+        
+        if(args.length > 0){
+            Writer writer = new FileWriter(args[0]);
+            try {
+                runner.writeCsv(writer);
+            } finally {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTOverflowPolicy;
+import com.samlanning.tools.cdst.CDSTTraceCapture;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Measures the cost of passing control between the test thread and the
+ * reading thread, per communication.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class HandoffBenchmark {
+    
+    public static final int COMMUNICATIONS = 10000;
+    
+    public static void main(String[] args) throws Exception {
+        register(new BenchmarkRunner());
+    }
+    
+    public static void register(BenchmarkRunner runner) throws Exception {
+        
+        // Outputs only, one handoff to the reader and back per output
+        runner.measure("handoff.output", "-", new BenchmarkRunner.Task() {
+            
+            private CDSTester<Integer, Integer> tester;
+            private InMemoryStream<Integer> stream;
+            
+            public void setUp() throws Exception {
+                this.tester = new CDSTester<Integer, Integer>(0);
+                this.stream = new InMemoryStream<Integer>();
+                this.tester.setHandler(this.stream);
+                this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+                Integer[] outputs = new Integer[COMMUNICATIONS];
+                for(int i = 0; i < COMMUNICATIONS; i++){
+                    outputs[i] = i;
+                    this.tester.addOutputRead(i);
+                }
+                this.stream.startOutputs(this.tester, outputs);
+            }
+            
+            public long run() throws Exception {
+                this.tester.run();
+                return COMMUNICATIONS;
+            }
+            
+            public void tearDown() throws Exception {
+                this.stream.stop();
+            }
+        });
+        
+        // Outputs only, passed to the tester 100 at a time
+        runner.measure("handoff.batch", "100", new BenchmarkRunner.Task() {
+            
+            private CDSTester<Integer, Integer> tester;
+            private InMemoryStream<Integer> stream;
+            
+            public void setUp() throws Exception {
+                this.tester = new CDSTester<Integer, Integer>(0);
+                this.stream = new InMemoryStream<Integer>();
+                this.tester.setHandler(this.stream);
+                this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+                Integer[] outputs = new Integer[COMMUNICATIONS];
+                for(int i = 0; i < COMMUNICATIONS; i++){
+                    outputs[i] = i;
+                    this.tester.addOutputRead(i);
+                }
+                this.stream.startBatches(this.tester, outputs, 100);
+            }
+            
+            public long run() throws Exception {
+                this.tester.run();
+                return COMMUNICATIONS;
+            }
+            
+            public void tearDown() throws Exception {
+                this.stream.stop();
+            }
+        });
+        
+        // Input then output, echoed back by the stream with no write delay
+        runner.measure("handoff.roundtrip", "-", new BenchmarkRunner.Task() {
+            
+            private CDSTester<Integer, Integer> tester;
+            private InMemoryStream<Integer> stream;
+            
+            public void setUp() throws Exception {
+                this.tester = new CDSTester<Integer, Integer>(0);
+                this.stream = new InMemoryStream<Integer>();
+                this.tester.setHandler(this.stream);
+                this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+                for(int i = 0; i < COMMUNICATIONS; i += 2){
+                    this.tester.addInputWrite(i);
+                    this.tester.addOutputRead(i);
+                }
+                this.stream.startEcho(this.tester);
+            }
+            
+            public long run() throws Exception {
+                this.tester.run();
+                return COMMUNICATIONS / 2;
+            }
+            
+            public void tearDown() throws Exception {
+                this.stream.stop();
+            }
+        });
+        
+        // The same round trips, with several inputs in flight at once
+        for(final int window : new int[]{8, 64}){
+            runner.measure("handoff.window", Integer.toString(window),
+                           new BenchmarkRunner.Task() {
+                
+                private CDSTester<Integer, Integer> tester;
+                private InMemoryStream<Integer> stream;
+                
+                public void setUp() throws Exception {
+                    this.tester = new CDSTester<Integer, Integer>(0);
+                    this.stream = new InMemoryStream<Integer>();
+                    this.tester.setHandler(this.stream);
+                    this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+                    this.tester.setWindow(window);
+                    for(int i = 0; i < COMMUNICATIONS; i += 2){
+                        this.tester.addInputWrite(i);
+                        this.tester.addOutputRead(i);
+                    }
+                    this.stream.startEcho(this.tester);
+                }
+                
+                public long run() throws Exception {
+                    this.tester.run();
+                    return COMMUNICATIONS / 2;
+                }
+                
+                public void tearDown() throws Exception {
+                    this.stream.stop();
+                }
+            });
+        }
+        
+        // Outputs only, numbered and read by several threads at once
+        for(final int readers : new int[]{1, 2, 4}){
+            runner.measure("handoff.sequenced", Integer.toString(readers),
+                           new BenchmarkRunner.Task() {
+                
+                private CDSTester<Integer, Integer> tester;
+                
+                public void setUp() throws Exception {
+                    this.tester = new CDSTester<Integer, Integer>(0);
+                    this.tester.setHandler(new InMemoryStream<Integer>());
+                    this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+                    this.tester.setSequencedIngestion(
+                        1024, CDSTOverflowPolicy.BLOCK);
+                    for(int i = 0; i < COMMUNICATIONS; i++)
+                        this.tester.addOutputRead(i);
+                }
+                
+                public long run() throws Exception {
+                    Thread[] threads = new Thread[readers];
+                    for(int i = 0; i < readers; i++){
+                        final int first = i;
+                        threads[i] = new Thread(){
+                            public void run(){
+                                try {
+                                    for(int seq = first; seq < COMMUNICATIONS;
+                                        seq += readers)
+                                        tester.readFromStream(seq, seq);
+                                } catch (CDSTException e) {
+                                }
+                            }
+                        };
+                        threads[i].start();
+                    }
+                    this.tester.run();
+                    for(Thread thread : threads)
+                        thread.join();
+                    return COMMUNICATIONS;
+                }
+                
+                public void tearDown() throws Exception {
+                }
+            });
+        }
+    }
+}
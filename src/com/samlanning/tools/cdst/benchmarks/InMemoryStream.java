@@ -0,0 +1,121 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * A stream held entirely in memory for benchmarking, with its own thread to
+ * pass output to the tester.
+ * 
+ * It can either echo back every input, or produce a fixed number of outputs
+ * straight away.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class InMemoryStream<T> implements CDSTHandler<T> {
+    
+    private final BlockingQueue<T> pending = new ArrayBlockingQueue<T>(1024);
+    
+    private volatile String failure = null;
+    
+    private Thread reader;
+    
+    /**
+     * Start a thread echoing every input written to the stream
+     */
+    public void startEcho(final CDSTester<T, T> tester){
+        this.start(new Runnable() {
+            public void run() {
+                try {
+                    while(true)
+                        tester.readFromStream(pending.take());
+                } catch (InterruptedException e) {
+                } catch (CDSTException e) {
+                }
+            }
+        });
+    }
+    
+    /**
+     * Start a thread writing the given outputs to the tester in order
+     */
+    public void startOutputs(final CDSTester<T, T> tester,
+                             final T[] outputs){
+        this.start(new Runnable() {
+            public void run() {
+                try {
+                    for(T output : outputs)
+                        tester.readFromStream(output);
+                } catch (CDSTException e) {
+                }
+            }
+        });
+    }
+    
+    /**
+     * Start a thread writing the given outputs to the tester in batches
+     */
+    public void startBatches(final CDSTester<T, T> tester,
+                             final T[] outputs, final int batchSize){
+        this.start(new Runnable() {
+            public void run() {
+                try {
+                    for(int i = 0; i < outputs.length; i += batchSize)
+                        tester.readFromStream(Arrays.asList(outputs).subList(
+                            i, Math.min(i + batchSize, outputs.length)));
+                } catch (CDSTException e) {
+                }
+            }
+        });
+    }
+    
+    private void start(Runnable runnable){
+        this.reader = new Thread(runnable, "InMemoryStream reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+    
+    /**
+     * Stop the reading thread, and check that the test didn't fail
+     */
+    public void stop() throws Exception {
+        this.reader.interrupt();
+        this.reader.join();
+        if(this.failure != null)
+            throw new Exception("Benchmark test failed: " + this.failure);
+    }
+
+    @Override
+    public void fail(String message, Exception trace) {
+        this.failure = message;
+    }
+
+    @Override
+    public void writeToStream(T input) {
+        this.pending.add(input);
+    }
+}
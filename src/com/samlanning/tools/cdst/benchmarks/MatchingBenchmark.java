@@ -0,0 +1,140 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import java.nio.ByteBuffer;
+
+import com.samlanning.tools.cdst.CDSTReadHandler;
+import com.samlanning.tools.cdst.CDSTTraceCapture;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Measures the cost of checking outputs, against literal values and with a
+ * CDSTReadHandler, and of comparing binary frames in place. All include the handoff, so compare them with each other
+ * (and with handoff.output) rather than on their own.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class MatchingBenchmark {
+    
+    public static final int OUTPUTS = 10000;
+    
+    public static void main(String[] args) throws Exception {
+        register(new BenchmarkRunner());
+    }
+    
+    public static void register(BenchmarkRunner runner) throws Exception {
+        runner.measure("matching.literal", "-", new MatchingTask(false));
+        runner.measure("matching.readHandler", "-", new MatchingTask(true));
+        runner.measure("matching.bytes", "256", new BytesTask(256));
+    }
+    
+    private static class MatchingTask extends BenchmarkRunner.Task {
+        
+        private final boolean useHandler;
+        
+        private CDSTester<String, String> tester;
+        private InMemoryStream<String> stream;
+        
+        public MatchingTask(boolean useHandler){
+            this.useHandler = useHandler;
+        }
+        
+        public void setUp() throws Exception {
+            this.tester = new CDSTester<String, String>(0);
+            this.stream = new InMemoryStream<String>();
+            this.tester.setHandler(this.stream);
+            this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+            
+            String[] outputs = new String[OUTPUTS];
+            for(int i = 0; i < OUTPUTS; i++){
+                // Build a new string each time so equals() has to compare
+                final String expected = "response " + i;
+                outputs[i] = new String(expected);
+                if(this.useHandler)
+                    this.tester.addOutputRead(new CDSTReadHandler<String>() {
+                        public void read(String output) throws Exception {
+                            if(!output.startsWith("response ") ||
+                               !output.equals(expected))
+                                throw new Exception("Wrong response");
+                        }
+                    });
+                else
+                    this.tester.addOutputRead(expected);
+            }
+            this.stream.startOutputs(this.tester, outputs);
+        }
+        
+        public long run() throws Exception {
+            this.tester.run();
+            return OUTPUTS;
+        }
+        
+        public void tearDown() throws Exception {
+            this.stream.stop();
+        }
+    }
+    
+    /**
+     * Outputs are slices of a single direct buffer, as a transport would
+     * produce them
+     */
+    private static class BytesTask extends BenchmarkRunner.Task {
+        
+        private final int frameSize;
+        
+        private CDSTester<ByteBuffer, ByteBuffer> tester;
+        private InMemoryStream<ByteBuffer> stream;
+        
+        public BytesTask(int frameSize){
+            this.frameSize = frameSize;
+        }
+        
+        public void setUp() throws Exception {
+            this.tester = new CDSTester<ByteBuffer, ByteBuffer>(0);
+            this.stream = new InMemoryStream<ByteBuffer>();
+            this.tester.setHandler(this.stream);
+            this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+            
+            ByteBuffer received =
+                ByteBuffer.allocateDirect(OUTPUTS * this.frameSize);
+            ByteBuffer[] outputs = new ByteBuffer[OUTPUTS];
+            for(int i = 0; i < OUTPUTS; i++){
+                byte[] expected = new byte[this.frameSize];
+                for(int j = 0; j < this.frameSize; j++)
+                    expected[j] = (byte) (i + j);
+                this.tester.addOutputRead(ByteBuffer.wrap(expected));
+                received.put(expected);
+                outputs[i] = received.slice(i * this.frameSize,
+                                            this.frameSize);
+            }
+            this.stream.startOutputs(this.tester, outputs);
+        }
+        
+        public long run() throws Exception {
+            this.tester.run();
+            return OUTPUTS;
+        }
+        
+        public void tearDown() throws Exception {
+            this.stream.stop();
+        }
+    }
+}
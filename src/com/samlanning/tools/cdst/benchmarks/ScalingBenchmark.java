@@ -0,0 +1,68 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import com.samlanning.tools.cdst.CDSTTraceCapture;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Measures how the cost per communication changes as scripts get longer.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class ScalingBenchmark {
+    
+    public static final int[] LENGTHS = {10, 100, 1000, 10000, 100000};
+    
+    public static void main(String[] args) throws Exception {
+        register(new BenchmarkRunner());
+    }
+    
+    public static void register(BenchmarkRunner runner) throws Exception {
+        for(final int length : LENGTHS)
+            runner.measure("scaling.roundtrip", Integer.toString(length),
+                           new BenchmarkRunner.Task() {
+                
+                private CDSTester<Integer, Integer> tester;
+                private InMemoryStream<Integer> stream;
+                
+                public void setUp() throws Exception {
+                    this.tester = new CDSTester<Integer, Integer>(0);
+                    this.stream = new InMemoryStream<Integer>();
+                    this.tester.setHandler(this.stream);
+                    this.tester.setTraceCapture(CDSTTraceCapture.OFF);
+                    for(int i = 0; i < length; i += 2){
+                        this.tester.addInputWrite(i);
+                        this.tester.addOutputRead(i);
+                    }
+                    this.stream.startEcho(this.tester);
+                }
+                
+                public long run() throws Exception {
+                    this.tester.run();
+                    return length;
+                }
+                
+                public void tearDown() throws Exception {
+                    this.stream.stop();
+                }
+            });
+    }
+}
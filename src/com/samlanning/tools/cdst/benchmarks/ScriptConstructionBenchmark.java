@@ -0,0 +1,98 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.benchmarks;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTTraceCapture;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Measures how long it takes to build up a script with each of the
+ * CDSTTraceCapture policies, and how much heap the finished scripts keep
+ * alive.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class ScriptConstructionBenchmark {
+    
+    public static final int SCRIPT_LENGTH = 1000;
+    public static final int SCRIPTS_PER_ITERATION = 200;
+    public static final int RETAINED_SCRIPTS = 100;
+    
+    public static void main(String[] args) throws Exception {
+        register(new BenchmarkRunner());
+    }
+    
+    public static void register(BenchmarkRunner runner) throws Exception {
+        for(final CDSTTraceCapture capture : CDSTTraceCapture.values()){
+            runner.measure("construction", capture.toString(),
+                           new BenchmarkRunner.Task() {
+                public long run() throws Exception {
+                    for(int i = 0; i < SCRIPTS_PER_ITERATION; i++)
+                        buildScript(capture);
+                    return SCRIPTS_PER_ITERATION * SCRIPT_LENGTH;
+                }
+            });
+        }
+        
+        for(CDSTTraceCapture capture : CDSTTraceCapture.values())
+            System.out.println(String.format(
+                "%-32s %-10s %12.1f bytes/communication retained",
+                "construction",
+                capture,
+                (double) retained(capture) /
+                    (RETAINED_SCRIPTS * SCRIPT_LENGTH)));
+    }
+    
+    /**
+     * Approximate heap kept alive by a number of finished scripts
+     */
+    public static long retained(CDSTTraceCapture capture)
+            throws CDSTException {
+        
+        Object[] scripts = new Object[RETAINED_SCRIPTS];
+        long before = usedHeap();
+        for(int i = 0; i < RETAINED_SCRIPTS; i++)
+            scripts[i] = buildScript(capture);
+        long after = usedHeap();
+        if(scripts[0] == null)
+            throw new IllegalStateException();
+        return after - before;
+    }
+    
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    public static CDSTester<String, String> buildScript(
+            CDSTTraceCapture capture) throws CDSTException {
+        
+        CDSTester<String, String> tester = new CDSTester<String, String>();
+        tester.setTraceCapture(capture);
+        for(int i = 0; i < SCRIPT_LENGTH; i += 2){
+            tester.addInputWrite("ping");
+            tester.addOutputRead("pong");
+        }
+        return tester;
+    }
+}
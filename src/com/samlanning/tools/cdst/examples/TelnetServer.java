@@ -27,6 +27,7 @@ import java.net.Socket;
 
 import com.samlanning.tools.cdst.CDSTException;
 import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTMatcher;
 import com.samlanning.tools.cdst.CDSTester;
 import com.samlanning.tools.cdst.CDSTReadHandler;
 import com.samlanning.tools.cdst.CDSTWriteHandler;
@@ -92,16 +93,14 @@ public class TelnetServer {
         tester.addInputWrite("How are you today?");
         
         final Container<String> result = new Container<String>();
+        final CDSTMatcher goodOrBad = CDSTMatcher.anyOf("Good", "Bad");
         
         tester.addOutputRead(new CDSTReadHandler<String>(){
 
             @Override
             public void read(String output) throws Exception {
-                if(output.equals("Good") || output.equals("Bad")){
-                    result.object = output;
-                } else {
-                    throw new Exception("Not 'Good' or 'Bad'!");
-                }
+                goodOrBad.read(output);
+                result.object = output;
             }
             
         });
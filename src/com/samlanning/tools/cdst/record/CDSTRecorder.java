@@ -0,0 +1,201 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.samlanning.tools.cdst.CDSTCodec;
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Records the inputs and outputs of a live session to an append-only log
+ * file, which can be loaded with CDSTRecording and replayed as a plan.
+ * 
+ * Inputs are recorded by wrapping the tester's handler with record(), and
+ * outputs by passing them through readFromStream() (or recordOutput()).
+ * 
+ * The file is written through a memory mapping which is extended a chunk at
+ * a time, so appending an event is just a copy into memory. Each event is:
+ * 
+ * type (1 byte) - INPUT or OUTPUT
+ * time (8 bytes) - nanoseconds since the recorder was created
+ * length (4 bytes) - of the value
+ * value - encoded with the codec for its direction
+ * 
+ * The type is written last, once the rest of the event is in place, so an
+ * event which was only partly written (by a process which crashed, or a
+ * codec which threw) still has a type of 0, and is where the log ends.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTRecorder<InputType, OutputType> implements Closeable {
+    
+    static final int MAGIC = 0x43445354;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    
+    static final byte INPUT = 1;
+    static final byte OUTPUT = 2;
+    
+    private static final long CHUNK_SIZE = 1 << 20;
+    
+    private final FileChannel channel;
+    private final CDSTCodec<InputType> inputCodec;
+    private final CDSTCodec<OutputType> outputCodec;
+    private final long startNanos;
+    
+    /**
+     * The mapped part of the file, starting at mapStart, which is written to
+     * from its position
+     */
+    private MappedByteBuffer map;
+    private long mapStart;
+    
+    private boolean closed = false;
+    
+    /**
+     * Start recording to a file, replacing anything already in it
+     * @param file
+     * @param inputCodec
+     * @param outputCodec
+     * @throws IOException
+     */
+    public CDSTRecorder(Path file, CDSTCodec<InputType> inputCodec,
+                        CDSTCodec<OutputType> outputCodec) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        this.inputCodec = inputCodec;
+        this.outputCodec = outputCodec;
+        this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                    CHUNK_SIZE);
+        this.map.putInt(MAGIC).putInt(VERSION);
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Wrap a handler so that every input written to the stream is recorded
+     * first
+     * @param handler
+     * @return
+     */
+    public CDSTHandler<InputType> record(final CDSTHandler<InputType> handler){
+        return new CDSTHandler<InputType>() {
+            @Override
+            public void fail(String message, Exception trace) {
+                handler.fail(message, trace);
+            }
+            
+            @Override
+            public void writeToStream(InputType input) {
+                CDSTRecorder.this.recordInput(input);
+                handler.writeToStream(input);
+            }
+        };
+    }
+    
+    /**
+     * Record an output, and pass it on to the tester
+     * @param tester
+     * @param output
+     * @throws CDSTException
+     */
+    public void readFromStream(CDSTester<InputType, OutputType> tester,
+                               OutputType output) throws CDSTException {
+        this.recordOutput(output);
+        tester.readFromStream(output);
+    }
+    
+    public void recordInput(InputType input){
+        this.append(INPUT, input, this.inputCodec);
+    }
+    
+    public void recordOutput(OutputType output){
+        this.append(OUTPUT, output, this.outputCodec);
+    }
+    
+    private synchronized <T> void append(byte type, T value,
+                                         CDSTCodec<T> codec){
+        if(this.closed)
+            throw new IllegalStateException("Recorder has been closed");
+        
+        long nanos = System.nanoTime() - this.startNanos;
+        while(true){
+            int start = this.map.position();
+            try {
+                this.map.put((byte) 0).putLong(nanos);
+                int lengthPosition = this.map.position();
+                this.map.putInt(0);
+                codec.encode(value, this.map);
+                this.map.putInt(lengthPosition,
+                                this.map.position() - lengthPosition - 4);
+                // Commit the event
+                this.map.put(start, type);
+                return;
+            } catch (BufferOverflowException e) {
+                // Map more of the file, starting with this event, and try
+                // again (a bigger chunk if it didn't fit in a whole one)
+                long size = this.map.capacity();
+                if(start > 0)
+                    size = Math.max(CHUNK_SIZE, size - start);
+                else
+                    size *= 2;
+                this.remap(start, size);
+            } catch (RuntimeException e) {
+                // Leave the event uncommitted, to be written over
+                this.map.put(start, (byte) 0);
+                this.map.position(start);
+                throw e;
+            }
+        }
+    }
+    
+    private void remap(int offset, long size){
+        this.mapStart += offset;
+        try {
+            this.map = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                                        this.mapStart, size);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't extend recording", e);
+        }
+    }
+    
+    /**
+     * Flush the log to disk, and trim the unused part of the last chunk
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(this.closed)
+            return;
+        this.closed = true;
+        this.map.force();
+        this.channel.truncate(this.mapStart + this.map.position());
+        this.channel.close();
+    }
+}
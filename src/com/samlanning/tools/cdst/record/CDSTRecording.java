@@ -0,0 +1,288 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import com.samlanning.tools.cdst.CDSTCodec;
+import com.samlanning.tools.cdst.CDSTCommunication;
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTPlan;
+import com.samlanning.tools.cdst.CDSTTraceCapture;
+
+/**
+ * A session recorded by CDSTRecorder, which can be replayed as a plan: the
+ * recorded inputs are written, and the recorded outputs are expected.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTRecording<InputType, OutputType> {
+    
+    private final ArrayList<Object> values = new ArrayList<Object>();
+    private final ArrayList<Boolean> inputs = new ArrayList<Boolean>();
+    private final ArrayList<Long> times = new ArrayList<Long>();
+    
+    private CDSTRecording(){
+    }
+    
+    /**
+     * Load a recording
+     * 
+     * A recording which wasn't closed properly is read up to the last
+     * complete event.
+     * @param file
+     * @param inputCodec
+     * @param outputCodec
+     * @return
+     * @throws IOException if the file isn't a recording
+     */
+    public static <I, O> CDSTRecording<I, O> load(Path file,
+                                                 CDSTCodec<I> inputCodec,
+                                                 CDSTCodec<O> outputCodec)
+            throws IOException {
+        
+        CDSTRecording<I, O> recording = new CDSTRecording<I, O>();
+        EventReader<I, O> reader =
+            new EventReader<I, O>(file, inputCodec, outputCodec);
+        while(reader.next()){
+            recording.values.add(reader.value);
+            recording.inputs.add(reader.input);
+            recording.times.add(reader.nanos);
+        }
+        return recording;
+    }
+    
+    /**
+     * Replay a recording one communication at a time (see
+     * CDSTester(Iterator)), without loading it all into memory first
+     * @param file
+     * @param inputCodec
+     * @param outputCodec
+     * @param paced - see toPlan(boolean)
+     * @return
+     * @throws IOException if the file isn't a recording
+     */
+    public static <I, O> Iterator<CDSTCommunication<I, O>> stream(
+            Path file, CDSTCodec<I> inputCodec, CDSTCodec<O> outputCodec,
+            final boolean paced) throws IOException {
+        
+        final EventReader<I, O> reader =
+            new EventReader<I, O>(file, inputCodec, outputCodec);
+        return new Iterator<CDSTCommunication<I, O>>() {
+            
+            private boolean ready = false;
+            private boolean more = true;
+            private long previous = 0;
+            
+            @Override
+            public boolean hasNext() {
+                if(!this.ready && this.more){
+                    this.more = reader.next();
+                    this.ready = true;
+                }
+                return this.more;
+            }
+            
+            @Override
+            @SuppressWarnings("unchecked")
+            public CDSTCommunication<I, O> next() {
+                if(!this.hasNext())
+                    throw new NoSuchElementException();
+                this.ready = false;
+                
+                long delay = delay(paced, reader.nanos, this.previous);
+                this.previous = reader.nanos;
+                if(reader.input)
+                    return delayedInput((I) reader.value, delay);
+                else
+                    return CDSTCommunication.<I, O>output((O) reader.value);
+            }
+        };
+    }
+    
+    /**
+     * @return the number of recorded events
+     */
+    public int size(){
+        return this.values.size();
+    }
+    
+    /**
+     * @param i
+     * @return whether the event was an input (otherwise it was an output)
+     */
+    public boolean isInput(int i){
+        return this.inputs.get(i);
+    }
+    
+    /**
+     * @param i
+     * @return the recorded input or output
+     */
+    public Object getValue(int i){
+        return this.values.get(i);
+    }
+    
+    /**
+     * @param i
+     * @return when the event happened, in nanoseconds since recording
+     *         started
+     */
+    public long getNanos(int i){
+        return this.times.get(i);
+    }
+    
+    /**
+     * Turn the recording into a plan which replays it as fast as possible:
+     * each input is written as soon as the outputs before it have arrived
+     * @return
+     */
+    public CDSTPlan<InputType, OutputType> toPlan(){
+        return this.toPlan(false);
+    }
+    
+    /**
+     * Turn the recording into a plan
+     * @param paced - if true, wait before writing each input for as long as
+     *                was recorded since the event before it, otherwise write
+     *                each input as soon as possible
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public CDSTPlan<InputType, OutputType> toPlan(boolean paced){
+        CDSTPlan.Builder<InputType, OutputType> builder =
+            new CDSTPlan.Builder<InputType, OutputType>();
+        // The loader's call site is no help in finding a failure
+        builder.setTraceCapture(CDSTTraceCapture.OFF);
+        
+        long previous = 0;
+        try {
+            for(int i = 0; i < this.values.size(); i++){
+                long nanos = this.times.get(i);
+                if(this.inputs.get(i)){
+                    builder.addInputWrite((InputType) this.values.get(i),
+                                          delay(paced, nanos, previous));
+                } else {
+                    builder.addOutputRead((OutputType) this.values.get(i));
+                }
+                previous = nanos;
+            }
+        } catch (CDSTException e) {
+            // delay() never gives a negative write delay
+            throw new IllegalStateException(e);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * How long to wait before writing an input
+     */
+    private static long delay(boolean paced, long nanos, long previous){
+        if(!paced)
+            return 0;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(nanos - previous));
+    }
+    
+    /**
+     * Write an input after a delay from delay(), which is never negative
+     */
+    private static <I, O> CDSTCommunication<I, O> delayedInput(I input,
+                                                               long delay){
+        try {
+            return CDSTCommunication.<I, O>input(input, delay);
+        } catch (CDSTException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Reads the events of a recording in order, through a read-only mapping
+     */
+    private static class EventReader<I, O> {
+        
+        private final MappedByteBuffer map;
+        private final CDSTCodec<I> inputCodec;
+        private final CDSTCodec<O> outputCodec;
+        
+        /**
+         * The event read by the last call to next()
+         */
+        private boolean input;
+        private long nanos;
+        private Object value;
+        
+        public EventReader(Path file, CDSTCodec<I> inputCodec,
+                           CDSTCodec<O> outputCodec) throws IOException {
+            this.inputCodec = inputCodec;
+            this.outputCodec = outputCodec;
+            try(FileChannel channel =
+                    FileChannel.open(file, StandardOpenOption.READ)){
+                this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                       channel.size());
+            }
+            
+            if(this.map.remaining() < CDSTRecorder.HEADER_SIZE ||
+               this.map.getInt() != CDSTRecorder.MAGIC)
+                throw new IOException("Not a CDST recording: " + file);
+            int version = this.map.getInt();
+            if(version != CDSTRecorder.VERSION)
+                throw new IOException(
+                    "Unsupported recording version: " + version);
+        }
+        
+        /**
+         * Read the next event
+         * 
+         * A recording which wasn't closed properly is read up to the last
+         * complete event.
+         * @return false if there are no more events
+         */
+        public boolean next(){
+            if(this.map.remaining() < 13)
+                return false;
+            byte type = this.map.get();
+            if(type != CDSTRecorder.INPUT && type != CDSTRecorder.OUTPUT)
+                // Unused part of the last chunk, or an event which was
+                // never committed
+                return false;
+            this.nanos = this.map.getLong();
+            int length = this.map.getInt();
+            if(length < 0 || length > this.map.remaining())
+                return false;
+            
+            ByteBuffer value = this.map.slice(this.map.position(), length);
+            this.map.position(this.map.position() + length);
+            
+            this.input = type == CDSTRecorder.INPUT;
+            this.value = this.input ? this.inputCodec.decode(value)
+                                    : this.outputCodec.decode(value);
+            return true;
+        }
+    }
+}
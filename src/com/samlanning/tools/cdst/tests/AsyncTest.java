@@ -0,0 +1,147 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class AsyncTest {
+    
+    /**
+     * Threads shared by every stream to pass output to the testers
+     */
+    private ExecutorService streams;
+    
+    @Before
+    public void setUp() {
+        this.streams = Executors.newFixedThreadPool(2);
+    }
+    
+    @After
+    public void tearDown() {
+        this.streams.shutdownNow();
+    }
+    
+    /**
+     * Stream which replies to every input with the given suffix added
+     */
+    private CDSTester<String, String> echoTester(final String suffix,
+                                                 long writeDelay)
+            throws CDSTException {
+        
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(writeDelay);
+        t.setHandler(new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {}
+            public void writeToStream(final String input) {
+                streams.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            t.readFromStream(input + suffix);
+                        } catch (CDSTException e) {
+                        }
+                    }
+                });
+            }
+        });
+        return t;
+    }
+    
+    @Test
+    public void testManyTesters() throws Exception {
+        List<CompletableFuture<CDSTResult>> futures =
+            new ArrayList<CompletableFuture<CDSTResult>>();
+        
+        for(int i = 0; i < 500; i++){
+            CDSTester<String, String> t = echoTester("", 10);
+            for(int j = 0; j < 5; j++){
+                t.addInputWrite("message " + j);
+                t.addOutputRead("message " + j);
+            }
+            futures.add(t.runAsync());
+        }
+        
+        for(CompletableFuture<CDSTResult> future : futures)
+            assertTrue(future.get().isSuccess());
+    }
+    
+    @Test
+    public void testIncorrectOutput() throws Exception {
+        CDSTester<String, String> t = echoTester("!", 10);
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        
+        CDSTResult result = t.runAsync().get();
+        assertFalse(result.isSuccess());
+        assertTrue(result.getFailureMessage().contains("'a!'"));
+    }
+    
+    @Test
+    public void testUnexpectedOutput() throws Exception {
+        CDSTester<String, String> t = echoTester("", 1000);
+        t.addInputWrite("a");
+        t.addInputWrite("b");
+        
+        CDSTResult result = t.runAsync().get();
+        assertFalse(result.isSuccess());
+        assertTrue(result.getFailureMessage().contains("unexpected output"));
+    }
+    
+    @Test
+    public void testSignalIdle() throws Exception {
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(60000);
+        t.setHandler(new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {}
+            public void writeToStream(final String input) {
+                streams.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            t.readFromStream(input);
+                            t.signalIdle();
+                        } catch (CDSTException e) {
+                        }
+                    }
+                });
+            }
+        });
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        t.addInputWrite("b");
+        t.addOutputRead("b");
+        
+        t.signalIdle();
+        assertTrue(t.runAsync().get().isSuccess());
+    }
+
+}
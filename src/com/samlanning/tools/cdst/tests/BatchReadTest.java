@@ -0,0 +1,110 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class BatchReadTest {
+    
+    @Test
+    public void testBatch() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        List<String> outputs = new ArrayList<String>();
+        for(int i = 0; i < 1000; i++){
+            outputs.add("frame " + i);
+            t.addOutputRead("frame " + i);
+        }
+        
+        Fixtures.run(t, outputs, outputs.size());
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testIncorrectOutputInBatch() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        t.addOutputRead("a");
+        t.addOutputRead("b");
+        t.addOutputRead("c");
+        
+        Fixtures.run(t, Arrays.asList("a", "x", "c"), 3);
+        
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure.contains("'b'"));
+    }
+    
+    @Test
+    public void testInputInsideBatch() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(1000);
+        t.setHandler(Fixtures.<String>silent());
+        
+        t.addOutputRead("a");
+        t.addOutputRead("b");
+        t.addInputWrite("x");
+        t.addOutputRead("c");
+        
+        // "c" arrives before "x" has been written
+        Fixtures.run(t, Arrays.asList("a", "b", "c"), 3);
+        
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure.contains("unexpected output"));
+    }
+    
+    @Test
+    public void testArrayAndSpliterator() throws Exception {
+        final CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        t.addOutputRead("a");
+        t.addOutputRead("b");
+        t.addOutputRead("c");
+        t.addOutputRead("d");
+        
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    t.readFromStream(new String[]{"a", "b"});
+                    t.readFromStream(Arrays.asList("c", "d").spliterator());
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        assertNull(t.getResult().getFailureMessage());
+    }
+
+}
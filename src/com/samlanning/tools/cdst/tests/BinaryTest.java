@@ -0,0 +1,84 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTester;
+
+public class BinaryTest {
+    
+    /**
+     * Run a tester expecting the given frames, while another thread passes
+     * it slices of a single buffer holding the given stream
+     */
+    private static String run(byte[][] expected, byte[] stream,
+                              int[] lengths) throws Exception {
+        
+        CDSTester<ByteBuffer, ByteBuffer> t =
+            new CDSTester<ByteBuffer, ByteBuffer>(0);
+        t.setHandler(Fixtures.<ByteBuffer>silent());
+        for(byte[] frame : expected)
+            t.addOutputRead(ByteBuffer.wrap(frame));
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(stream.length);
+        buffer.put(stream);
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        int position = 0;
+        for(int length : lengths){
+            frames.add(buffer.slice(position, length));
+            position += length;
+        }
+        Fixtures.run(t, frames, frames.size());
+        return t.getResult().getFailureMessage();
+    }
+    
+    @Test
+    public void testSlicesMatch() throws Exception {
+        assertNull(run(new byte[][]{{1, 2, 3}, {4, 5}},
+                       new byte[]{1, 2, 3, 4, 5},
+                       new int[]{3, 2}));
+    }
+    
+    @Test
+    public void testMismatchOffset() throws Exception {
+        String failure = run(new byte[][]{{1, 2, 3}, {4, 5, 6, 7}},
+                             new byte[]{1, 2, 3, 4, 5, 9, 7},
+                             new int[]{3, 4});
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("offset 2"));
+        assertTrue(failure, failure.contains("'04 05 09 07'"));
+    }
+    
+    @Test
+    public void testShortFrame() throws Exception {
+        String failure = run(new byte[][]{{1, 2, 3}},
+                             new byte[]{1, 2},
+                             new int[]{2});
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("offset 2"));
+        assertTrue(failure, failure.contains("received 2 bytes"));
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTByteBufferCodec;
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTOverflowPolicy;
+import com.samlanning.tools.cdst.CDSTReadHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTStringCodec;
+import com.samlanning.tools.cdst.CDSTester;
+import com.samlanning.tools.cdst.transport.CDSTChannelHandler;
+import com.samlanning.tools.cdst.transport.CDSTLengthPrefixedFraming;
+import com.samlanning.tools.cdst.transport.CDSTLineFraming;
+import com.samlanning.tools.cdst.transport.CDSTReactor;
+
+public class ChannelTransportTest {
+    
+    private ServerSocket server;
+    private CDSTReactor reactor;
+    
+    @Before
+    public void setUp() throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.reactor = new CDSTReactor();
+        
+        // Line echo server, thread per connection
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                while(true){
+                    final Socket socket;
+                    try {
+                        socket = server.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    Thread echo = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                BufferedReader in = new BufferedReader(
+                                    new InputStreamReader(
+                                        socket.getInputStream(),
+                                        StandardCharsets.UTF_8));
+                                OutputStream out = socket.getOutputStream();
+                                String line;
+                                while((line = in.readLine()) != null)
+                                    out.write((line + "!\n").getBytes(
+                                        StandardCharsets.UTF_8));
+                                socket.close();
+                            } catch (IOException e) {
+                            }
+                        }
+                    });
+                    echo.setDaemon(true);
+                    echo.start();
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        this.reactor.close();
+        this.server.close();
+    }
+    
+    private CDSTChannelHandler<String, String> connect(
+            CDSTester<String, String> t)
+            throws CDSTException, IOException {
+        
+        CDSTChannelHandler<String, String> handler =
+            new CDSTChannelHandler<String, String>(
+                this.reactor,
+                SocketChannel.open(this.server.getLocalSocketAddress()),
+                CDSTLineFraming.INSTANCE,
+                CDSTStringCodec.UTF_8, CDSTStringCodec.UTF_8);
+        handler.attach(t);
+        return handler;
+    }
+    
+    @Test
+    public void testManyConnections() throws Exception {
+        final int connections = 8;
+        
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CDSTester<String, String>[] testers = new CDSTester[connections];
+        for(int i = 0; i < connections; i++){
+            testers[i] = new CDSTester<String, String>(10);
+            for(int j = 0; j < 20; j++){
+                testers[i].addInputWrite(i + ":" + j);
+                testers[i].addOutputRead(i + ":" + j + "!");
+            }
+            this.connect(testers[i]);
+        }
+        
+        List<CompletableFuture<CDSTResult>> results =
+            new ArrayList<CompletableFuture<CDSTResult>>();
+        for(CDSTester<String, String> t : testers)
+            results.add(t.runAsync());
+        for(CompletableFuture<CDSTResult> result : results)
+            assertTrue(result.get().toString(), result.get().isSuccess());
+    }
+    
+    @Test
+    public void testSlowTesterDoesntHoldUpReactor() throws Exception {
+        CDSTester<String, String> slow = new CDSTester<String, String>(0);
+        slow.addInputWrite("slow");
+        slow.addOutputRead(new CDSTReadHandler<String>() {
+            public void read(String output) throws Exception {
+                Thread.sleep(1000);
+            }
+        });
+        this.connect(slow);
+        
+        CDSTester<String, String> fast = new CDSTester<String, String>(10);
+        for(int i = 0; i < 5; i++){
+            fast.addInputWrite("fast " + i);
+            fast.addOutputRead("fast " + i + "!");
+        }
+        this.connect(fast);
+        
+        CompletableFuture<CDSTResult> slowResult = slow.runAsync();
+        Thread.sleep(100);
+        assertTrue(fast.runAsync().get().isSuccess());
+        assertFalse(slowResult.isDone());
+        assertTrue(slowResult.get().isSuccess());
+    }
+    
+    @Test
+    public void testFailureClosesChannel() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(50);
+        t.addInputWrite("a");
+        t.addOutputRead("b");
+        CDSTChannelHandler<String, String> handler = this.connect(t);
+        
+        assertFalse(t.runAsync().get().isSuccess());
+        assertNotNull(handler.getFailure());
+    }
+    
+    @Test
+    public void testViewCopiedWhenIngesting() throws Exception {
+        CDSTester<ByteBuffer, ByteBuffer> t =
+            new CDSTester<ByteBuffer, ByteBuffer>(0);
+        t.setIngestion(4096, CDSTOverflowPolicy.BLOCK);
+        StringBuilder lines = new StringBuilder("0");
+        for(int i = 1; i < 2000; i++)
+            lines.append("\n" + i);
+        t.addInputWrite(ByteBuffer.wrap(
+            lines.toString().getBytes(StandardCharsets.UTF_8)));
+        // Check slowly, so frames are queued across several reads
+        t.addOutputRead(new CDSTReadHandler<ByteBuffer>() {
+            public void read(ByteBuffer output) throws Exception {
+                Thread.sleep(200);
+            }
+        });
+        for(int i = 1; i < 2000; i++)
+            t.addOutputRead(ByteBuffer.wrap(
+                (i + "!").getBytes(StandardCharsets.UTF_8)));
+        new CDSTChannelHandler<ByteBuffer, ByteBuffer>(
+            this.reactor,
+            SocketChannel.open(this.server.getLocalSocketAddress()),
+            CDSTLineFraming.INSTANCE,
+            CDSTByteBufferCodec.VIEW, CDSTByteBufferCodec.VIEW).attach(t);
+        
+        t.run();
+        assertTrue(t.getResult().toString(), t.getResult().isSuccess());
+    }
+    
+    /**
+     * Start a server which accepts one connection, sends it the given bytes,
+     * and closes it after the given delay (or never reads from it, and leaves
+     * it open until the server is closed, if the delay is negative)
+     */
+    private static ServerSocket peer(final byte[] send, final long closeAfter)
+            throws IOException {
+        final ServerSocket peer =
+            new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        // Small, so a peer which isn't reading is found out quickly
+        peer.setReceiveBufferSize(4096);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Socket socket = peer.accept();
+                    socket.getOutputStream().write(send);
+                    if(closeAfter < 0){
+                        peer.close();
+                        return;
+                    }
+                    Thread.sleep(closeAfter);
+                    socket.close();
+                } catch (Exception e) {
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return peer;
+    }
+    
+    private CDSTChannelHandler<String, String> connect(
+            CDSTester<String, String> t, ServerSocket peer, int bufferSize)
+            throws CDSTException, IOException {
+        
+        SocketChannel channel =
+            SocketChannel.open(peer.getLocalSocketAddress());
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 4096);
+        CDSTChannelHandler<String, String> handler =
+            new CDSTChannelHandler<String, String>(
+                this.reactor, channel, CDSTLineFraming.INSTANCE,
+                CDSTStringCodec.UTF_8, CDSTStringCodec.UTF_8, bufferSize);
+        handler.attach(t);
+        return handler;
+    }
+    
+    /**
+     * Run the tester on another thread, which must finish within 10 seconds
+     */
+    private static void runWithin(final CDSTester<String, String> t)
+            throws InterruptedException {
+        Thread runner = new Thread(){
+            public void run(){
+                try {
+                    t.run();
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        runner.start();
+        runner.join(10000);
+        assertFalse("Tester still running", runner.isAlive());
+    }
+    
+    @Test
+    public void testPeerClosesConnection() throws Exception {
+        ServerSocket peer = peer(new byte[0], 200);
+        try {
+            CDSTester<String, String> t = new CDSTester<String, String>(0);
+            t.addOutputRead("never");
+            CDSTChannelHandler<String, String> handler =
+                this.connect(t, peer, 1024);
+            
+            runWithin(t);
+            String failure = t.getResult().getFailureMessage();
+            assertNotNull(failure);
+            assertTrue(failure, failure.contains("closed by peer"));
+            assertEquals(failure, handler.getFailure());
+        } finally {
+            peer.close();
+        }
+    }
+    
+    @Test
+    public void testPeerClosesConnectionWhenIngesting() throws Exception {
+        ServerSocket peer = peer("a\n".getBytes(StandardCharsets.UTF_8), 200);
+        try {
+            CDSTester<String, String> t = new CDSTester<String, String>(0);
+            t.setIngestion(16, CDSTOverflowPolicy.BLOCK);
+            t.addOutputRead("a");
+            t.addOutputRead("never");
+            this.connect(t, peer, 1024);
+            
+            runWithin(t);
+            String failure = t.getResult().getFailureMessage();
+            assertNotNull(failure);
+            assertTrue(failure, failure.contains("closed by peer"));
+        } finally {
+            peer.close();
+        }
+    }
+    
+    @Test
+    public void testFrameLargerThanBuffer() throws Exception {
+        ServerSocket peer = peer(new byte[64], 10000);
+        try {
+            CDSTester<String, String> t = new CDSTester<String, String>(0);
+            t.addOutputRead("never");
+            this.connect(t, peer, 16);
+            
+            runWithin(t);
+            String failure = t.getResult().getFailureMessage();
+            assertNotNull(failure);
+            assertTrue(failure, failure.contains("larger than the buffer"));
+        } finally {
+            peer.close();
+        }
+    }
+    
+    @Test
+    public void testPeerNotReading() throws Exception {
+        ServerSocket peer = peer(new byte[0], -1);
+        try {
+            CDSTester<String, String> t = new CDSTester<String, String>(0);
+            char[] line = new char[500];
+            Arrays.fill(line, 'x');
+            for(int i = 0; i < 10000; i++)
+                t.addInputWrite(new String(line));
+            this.connect(t, peer, 1024);
+            
+            runWithin(t);
+            String failure = t.getResult().getFailureMessage();
+            assertNotNull(failure);
+            assertTrue(failure, failure.contains("isn't reading"));
+        } finally {
+            peer.close();
+        }
+    }
+    
+    @Test
+    public void testLengthPrefixedFraming() {
+        ByteBuffer out = ByteBuffer.allocate(64);
+        CDSTLengthPrefixedFraming.INSTANCE.encode(
+            ByteBuffer.wrap(new byte[]{1, 2, 3}), out);
+        CDSTLengthPrefixedFraming.INSTANCE.encode(
+            ByteBuffer.wrap(new byte[]{4}), out);
+        out.flip();
+        
+        // Only part of the second frame has arrived
+        out.limit(out.limit() - 1);
+        ByteBuffer frame = CDSTLengthPrefixedFraming.INSTANCE.decode(out);
+        assertEquals(3, frame.remaining());
+        assertEquals(3, frame.get(2));
+        assertNull(CDSTLengthPrefixedFraming.INSTANCE.decode(out));
+        
+        out.limit(out.limit() + 1);
+        frame = CDSTLengthPrefixedFraming.INSTANCE.decode(out);
+        assertEquals(1, frame.remaining());
+        assertEquals(4, frame.get(0));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class DeadlineTest {
+    
+    @Test
+    public void testDefaultDeadline() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setDefaultDeadline(50);
+        t.addInputWrite("ping");
+        t.addOutputRead("pong");
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        String failure = t.getResult().getFailureMessage();
+        assertTrue(failure, failure.contains("50 ms"));
+        assertTrue(failure, failure.contains("pong"));
+        assertNotNull(t.getResult().getTrace());
+    }
+    
+    @Test
+    public void testStepDeadlineOverridesDefault() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setDefaultDeadline(60000);
+        t.addOutputRead("pong", 50);
+        
+        long start = System.nanoTime();
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        String failure = t.getResult().getFailureMessage();
+        assertTrue(failure, failure.contains("50 ms"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+    
+    @Test
+    public void testOutputInTime() throws Exception {
+        final CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setDefaultDeadline(50);
+        t.addOutputRead("a", 5000);
+        t.addOutputRead("b", 5000);
+        
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    Thread.sleep(100);
+                    t.readFromStream("a");
+                    t.readFromStream("b");
+                } catch (Exception e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testManyAsyncDeadlines() throws Exception {
+        List<CompletableFuture<CDSTResult>> results =
+            new ArrayList<CompletableFuture<CDSTResult>>();
+        for(int i = 0; i < 2000; i++){
+            CDSTester<String, String> t = new CDSTester<String, String>(0);
+            t.setHandler(Fixtures.<String>silent());
+            t.addOutputRead("never", 20 + i % 100);
+            results.add(t.runAsync());
+        }
+        
+        for(CompletableFuture<CDSTResult> result : results)
+            assertFalse(result.get(10, TimeUnit.SECONDS).isSuccess());
+    }
+    
+    @Test
+    public void testHandlerThrowsOnTestThread() throws Exception {
+        final List<Thread> failed = new ArrayList<Thread>();
+        for(int i = 0; i < 2; i++){
+            CDSTester<String, String> t = new CDSTester<String, String>(0);
+            t.setHandler(new CDSTHandler<String>() {
+                public void fail(String message, Exception trace) {
+                    failed.add(Thread.currentThread());
+                    throw new AssertionError(message);
+                }
+                
+                public void writeToStream(String input) {
+                }
+            });
+            t.addOutputRead("pong", 20);
+            try {
+                t.run();
+                fail();
+            } catch (AssertionError e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("20 ms"));
+            }
+        }
+        
+        // The wheel is still running deadlines for everyone else
+        assertEquals(2, failed.size());
+        assertSame(Thread.currentThread(), failed.get(0));
+        assertSame(Thread.currentThread(), failed.get(1));
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.addOutputRead("never", 20);
+        assertFalse(t.runAsync().get(10, TimeUnit.SECONDS).isSuccess());
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testReadAfterTimeout() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.addOutputRead("pong", 20);
+        t.run();
+        
+        t.readFromStream("pong");
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Handler and reader threads shared by the tests, which check for failures
+ * through CDSTester.getResult()
+ */
+class Fixtures {
+    
+    private Fixtures(){
+    }
+    
+    /**
+     * Handler for a stream which never replies, and leaves failures to the
+     * tester's result
+     */
+    static <I> CDSTHandler<I> silent(){
+        return new CDSTHandler<I>() {
+            public void fail(String message, Exception trace) {
+            }
+            
+            public void writeToStream(I input) {
+            }
+        };
+    }
+    
+    /**
+     * Start a thread passing the outputs to the tester in batches of the
+     * given size, or one at a time if the size is 1
+     */
+    static <O> Thread reader(final CDSTester<?, O> t,
+                             final Iterator<? extends O> outputs,
+                             final int batch){
+        Thread thread = new Thread(){
+            public void run(){
+                List<O> pending = new ArrayList<O>(batch);
+                try {
+                    while(outputs.hasNext()){
+                        if(batch == 1){
+                            t.readFromStream(outputs.next());
+                            continue;
+                        }
+                        pending.add(outputs.next());
+                        if(pending.size() == batch){
+                            t.readFromStream(pending);
+                            pending.clear();
+                        }
+                    }
+                    if(!pending.isEmpty())
+                        t.readFromStream(pending);
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+    
+    static <O> Thread reader(CDSTester<?, O> t,
+                             Collection<? extends O> outputs, int batch){
+        return reader(t, outputs.iterator(), batch);
+    }
+    
+    /**
+     * Run the tester while another thread passes it the outputs
+     */
+    static <O> void run(CDSTester<?, O> t, Collection<? extends O> outputs,
+                        int batch) throws Exception {
+        Thread reader = reader(t, outputs, batch);
+        t.run();
+        reader.join();
+    }
+}
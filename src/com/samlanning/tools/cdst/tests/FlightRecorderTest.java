@@ -0,0 +1,135 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTester;
+import com.samlanning.tools.cdst.transport.CDSTPipe;
+
+public class FlightRecorderTest {
+    
+    private static final String[] EVENTS = {
+        "com.samlanning.cdst.Write",
+        "com.samlanning.cdst.Read",
+        "com.samlanning.cdst.Wait",
+        "com.samlanning.cdst.Handoff",
+        "com.samlanning.cdst.Failure"
+    };
+    
+    /**
+     * Start an implementation which replies to each input in upper case
+     */
+    private static Thread serve(final CDSTPipe<String, String> pipe){
+        Thread thread = new Thread(){
+            public void run(){
+                try {
+                    while(true)
+                        pipe.writeOutput(pipe.readInput().toUpperCase());
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    /**
+     * The events recorded for a tester with the given name
+     */
+    private static List<RecordedEvent> events(List<RecordedEvent> events,
+                                              CDSTester<?, ?> tester,
+                                              String name){
+        List<RecordedEvent> matching = new ArrayList<RecordedEvent>();
+        for(RecordedEvent event : events)
+            if(event.getEventType().getName().equals(name) &&
+               event.getLong("tester") == tester.getId())
+                matching.add(event);
+        return matching;
+    }
+    
+    @Test
+    public void testEvents() throws Exception {
+        Recording recording = new Recording();
+        for(String event : EVENTS)
+            recording.enable(event).withThreshold(Duration.ZERO);
+        recording.start();
+        
+        CDSTPipe<String, String> pipe = new CDSTPipe<String, String>();
+        CDSTester<String, String> t = new CDSTester<String, String>(1);
+        pipe.attach(t);
+        Thread server = serve(pipe);
+        for(int i = 0; i < 10; i++){
+            t.addInputWrite("line " + i);
+            t.addOutputRead("LINE " + i);
+        }
+        t.addInputWrite("wrong");
+        t.addOutputRead("RIGHT");
+        t.run();
+        pipe.close();
+        server.interrupt();
+        
+        recording.stop();
+        File file = File.createTempFile("cdst", ".jfr");
+        file.deleteOnExit();
+        recording.dump(file.toPath());
+        recording.close();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(
+            file.toPath());
+        
+        assertFalse(t.getResult().isSuccess());
+        
+        List<RecordedEvent> writes =
+            events(events, t, "com.samlanning.cdst.Write");
+        assertEquals(11, writes.size());
+        assertEquals("line 0", writes.get(0).getString("input"));
+        assertEquals(0, writes.get(0).getInt("step"));
+        
+        List<RecordedEvent> reads =
+            events(events, t, "com.samlanning.cdst.Read");
+        assertEquals(11, reads.size());
+        assertEquals("LINE 9", reads.get(9).getString("output"));
+        assertEquals(19, reads.get(9).getInt("step"));
+        assertTrue(reads.get(9).getBoolean("correct"));
+        assertFalse(reads.get(10).getBoolean("correct"));
+        
+        List<RecordedEvent> failures =
+            events(events, t, "com.samlanning.cdst.Failure");
+        assertEquals(1, failures.size());
+        assertEquals(21, failures.get(0).getInt("step"));
+        assertEquals(t.getResult().getFailureMessage(),
+                     failures.get(0).getString("message"));
+        
+        assertFalse(events(events, t, "com.samlanning.cdst.Wait").isEmpty());
+        assertFalse(
+            events(events, t, "com.samlanning.cdst.Handoff").isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class GroupTest {
+    
+    private static void testLargeGroup(boolean batch) throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        List<String> responses = new ArrayList<String>();
+        for(int i = 0; i < 5000; i++)
+            responses.add("response " + i);
+        t.addOutputRead("start");
+        t.addOutputGroup(responses);
+        t.addOutputRead("end");
+        
+        List<String> outputs = new ArrayList<String>(responses);
+        Collections.shuffle(outputs, new Random(1));
+        outputs.add(0, "start");
+        outputs.add("end");
+        Fixtures.run(t, outputs, batch ? outputs.size() : 1);
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testLargeGroup() throws Exception {
+        testLargeGroup(false);
+    }
+    
+    @Test
+    public void testLargeGroupBatch() throws Exception {
+        testLargeGroup(true);
+    }
+    
+    @Test
+    public void testCounts() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("ack", 3);
+        counts.put("done", 1);
+        t.addOutputGroup(counts);
+        
+        Fixtures.run(t, Arrays.asList("ack", "done", "ack", "ack"), 4);
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testTooManyOfOne() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.addOutputGroup(Arrays.asList("a", "b", "a"));
+        
+        Fixtures.run(t, Arrays.asList("a", "a", "a"), 1);
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("more times than expected"));
+    }
+    
+    @Test
+    public void testUnexpectedInGroup() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.addOutputGroup(Arrays.asList("a", "b"));
+        
+        Fixtures.run(t, Arrays.asList("b", "c"), 2);
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("'c'"));
+        assertTrue(failure, failure.contains("1 outputs left"));
+    }
+    
+    @Test
+    public void testGroupDeadline() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setDefaultDeadline(100);
+        t.addOutputGroup(Arrays.asList("a", "b"));
+        
+        // Only part of the group arrives
+        Fixtures.run(t, Arrays.asList("a"), 1);
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("100 ms"));
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testEmptyGroup() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.addOutputGroup(new ArrayList<String>());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class HandoffTest {
+    
+    private static final int COUNT = 10000;
+    
+    /**
+     * Outputs 0 to count - 1, with -1 in place of the wrong one
+     */
+    private static List<Integer> outputs(int count, int wrong){
+        List<Integer> outputs = new ArrayList<Integer>(count);
+        for(int i = 0; i < count; i++)
+            outputs.add(i == wrong ? -1 : i);
+        return outputs;
+    }
+    
+    private void testOutputs(int spinLimit) throws Exception {
+        CDSTester<Integer, Integer> t = new CDSTester<Integer, Integer>();
+        t.setHandler(Fixtures.<Integer>silent());
+        t.setSpinLimit(spinLimit);
+        
+        for(int i = 0; i < COUNT; i++)
+            t.addOutputRead(i);
+        
+        Fixtures.run(t, outputs(COUNT, -1), 1);
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+
+    @Test
+    public void testManyOutputs() throws Exception {
+        testOutputs(0);
+    }
+    
+    @Test
+    public void testManyOutputsSpinning() throws Exception {
+        testOutputs(100);
+    }
+    
+    @Test
+    public void testWrongOutput() throws Exception {
+        CDSTester<Integer, Integer> t = new CDSTester<Integer, Integer>();
+        t.setHandler(Fixtures.<Integer>silent());
+        
+        for(int i = 0; i < COUNT; i++)
+            t.addOutputRead(i);
+        
+        Fixtures.run(t, outputs(COUNT, COUNT / 2), 1);
+        
+        assertNotNull(t.getResult().getFailureMessage());
+        assertFalse(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testReadAfterFinished() throws Exception {
+        CDSTester<Integer, Integer> t = new CDSTester<Integer, Integer>();
+        t.setHandler(Fixtures.<Integer>silent());
+        t.addOutputRead(0);
+        
+        Fixtures.run(t, outputs(1, -1), 1);
+        
+        try {
+            t.readFromStream(1);
+            fail("Didn't Raise Exception");
+        } catch (CDSTException e) {
+        }
+    }
+
+}
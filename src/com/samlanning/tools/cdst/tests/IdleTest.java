@@ -0,0 +1,124 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class IdleTest {
+    
+    /**
+     * Stream which echoes every input back, then signals it is idle
+     */
+    private static class EchoHandler implements CDSTHandler<String> {
+        
+        private final CDSTester<String, String> tester;
+        private String failure = null;
+        
+        public EchoHandler(CDSTester<String, String> tester){
+            this.tester = tester;
+        }
+        
+        public void fail(String message, Exception trace) {
+            this.failure = message;
+        }
+        
+        public void writeToStream(final String input) {
+            new Thread(){
+                public void run(){
+                    try {
+                        tester.readFromStream(input);
+                        tester.signalIdle();
+                    } catch (CDSTException e) {
+                    }
+                }
+            }.start();
+        }
+    }
+
+    @Test
+    public void testSignalIdleWritesEarly() throws CDSTException {
+        CDSTester<String, String> t = new CDSTester<String, String>(10000);
+        EchoHandler handler = new EchoHandler(t);
+        t.setHandler(handler);
+        
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        t.addInputWrite("b");
+        t.addOutputRead("b");
+        
+        // The first write has to wait the full delay, so signal straight away
+        t.signalIdle();
+        
+        long start = System.currentTimeMillis();
+        t.run();
+        
+        assertNull(handler.failure);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+    
+    @Test
+    public void testUnexpectedOutputStillCaught() throws CDSTException {
+        CDSTester<String, String> t = new CDSTester<String, String>(10000);
+        EchoHandler handler = new EchoHandler(t);
+        t.setHandler(handler);
+        
+        t.addInputWrite("a");
+        // Expect no output, but the stream will echo "a"
+        t.addInputWrite("b");
+        
+        t.signalIdle();
+        t.run();
+        
+        assertNotNull(handler.failure);
+    }
+    
+    @Test
+    public void testUnexpectedOutputEndsWriteDelay() throws CDSTException {
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(10000);
+        EchoHandler handler = new EchoHandler(t);
+        t.setHandler(handler);
+        
+        t.addInputWrite("a");
+        
+        // Output while the tester is waiting to write
+        new Thread(){
+            public void run(){
+                try {
+                    Thread.sleep(100);
+                    t.readFromStream("b");
+                } catch (Exception e) {
+                }
+            }
+        }.start();
+        
+        long start = System.currentTimeMillis();
+        t.run();
+        
+        assertNotNull(handler.failure);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+}
@@ -0,0 +1,280 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTOverflowPolicy;
+import com.samlanning.tools.cdst.CDSTReadHandler;
+import com.samlanning.tools.cdst.CDSTTraceEvent;
+import com.samlanning.tools.cdst.CDSTTraceSink;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class IngestionTest {
+    
+    /**
+     * Handler for a stream which replies to each input in upper case, from
+     * inside writeToStream() (which only works when ingesting, as the test
+     * thread is busy writing)
+     */
+    private static class EchoHandler implements CDSTHandler<String> {
+        
+        private final CDSTester<String, String> tester;
+        private volatile String failure = null;
+        
+        public EchoHandler(CDSTester<String, String> tester)
+                throws CDSTException {
+            this.tester = tester;
+            tester.setHandler(this);
+        }
+        
+        public void fail(String message, Exception trace) {
+            if(this.failure == null)
+                this.failure = message;
+        }
+        
+        public void writeToStream(String input) {
+            try {
+                this.tester.readFromStream(input.toUpperCase());
+                this.tester.signalIdle();
+            } catch (CDSTException e) {
+            }
+        }
+    }
+    
+    @Test
+    public void testReadsDontWait() throws Exception {
+        final CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        CDSTReadHandler<String> slow = new CDSTReadHandler<String>(){
+            public void read(String output) throws Exception {
+                Thread.sleep(100);
+            }
+        };
+        t.addOutputRead(slow);
+        t.addOutputRead(slow);
+        t.addOutputRead(slow);
+        
+        final long[] readNanos = new long[1];
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    long start = System.nanoTime();
+                    t.readFromStream("a");
+                    t.readFromStream("b");
+                    t.readFromStream("c");
+                    readNanos[0] = System.nanoTime() - start;
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        assertNull(handler.failure);
+        assertTrue(t.getResult().isSuccess());
+        assertTrue(readNanos[0] < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    
+    @Test
+    public void testConversation() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(1000);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        for(int i = 0; i < 1000; i++){
+            t.addInputWrite("line " + i);
+            t.addOutputRead("LINE " + i);
+        }
+        
+        // Idle signals mean the write delay is never waited for in full
+        long start = System.nanoTime();
+        t.run();
+        
+        assertNull(handler.failure);
+        assertTrue(t.getResult().isSuccess());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+    
+    @Test
+    public void testUnexpectedOutput() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(50);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.readFromStream("surprise");
+        t.addInputWrite("ping");
+        t.addOutputRead("PING");
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure, handler.failure.contains("surprise"));
+        assertTrue(handler.failure, handler.failure.contains("ping"));
+    }
+    
+    @Test
+    public void testOutputArrivingBeforeInput() throws Exception {
+        final CDSTester<String, String> t = new CDSTester<String, String>(50);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.addInputWrite("ping");
+        t.addOutputRead("PING");
+        t.addInputWrite("pong");
+        t.addOutputRead("PONG");
+        
+        // Sneak in an output after the test thread has last looked for
+        // unexpected outputs, but before it writes "pong"
+        t.setLogLevel(CDSTester.L_INTERNALS);
+        t.setTraceSink(new CDSTTraceSink(){
+            private boolean sent = false;
+            public void trace(CDSTester<?, ?> tester, CDSTTraceEvent event,
+                              Object subject, long nanoTime) {
+                if(event == CDSTTraceEvent.IDLE && !this.sent){
+                    this.sent = true;
+                    try {
+                        t.readFromStream("PONG");
+                    } catch (CDSTException e) {
+                    }
+                }
+            }
+        });
+        t.signalIdle();
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure, handler.failure.contains("too early"));
+    }
+    
+    @Test
+    public void testGroup() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.addOutputGroup(Arrays.asList("a", "b", "c"));
+        t.addOutputRead("d");
+        t.readFromStream(Arrays.asList("c", "a", "b", "d"));
+        
+        t.run();
+        
+        assertNull(handler.failure);
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testOverflowFails() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(2, CDSTOverflowPolicy.FAIL);
+        for(int i = 0; i < 10; i++){
+            t.addOutputRead("out " + i);
+            t.readFromStream("out " + i);
+        }
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure, handler.failure.contains("lost"));
+    }
+    
+    @Test
+    public void testOverflowBlocks() throws Exception {
+        final CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(2, CDSTOverflowPolicy.BLOCK);
+        for(int i = 0; i < 10000; i++)
+            t.addOutputRead("out " + i);
+        
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    for(int i = 0; i < 10000; i++)
+                        t.readFromStream("out " + i);
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        assertNull(handler.failure);
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testDeadline() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.addOutputRead("never", 50);
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure, handler.failure.contains("50 ms"));
+    }
+    
+    @Test
+    public void testInterruptedDuringWriteDelay() throws Exception {
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(60000);
+        t.setHandler(Fixtures.<String>silent());
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.addInputWrite("later");
+        
+        final CDSTException[] thrown = new CDSTException[1];
+        Thread runner = new Thread(){
+            public void run(){
+                try {
+                    t.run();
+                } catch (CDSTException e) {
+                    thrown[0] = e;
+                }
+            }
+        };
+        runner.start();
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        runner.interrupt();
+        runner.join(10000);
+        
+        assertFalse(runner.isAlive());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertNotNull(thrown[0]);
+        assertTrue(thrown[0].getCause() instanceof InterruptedException);
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testNotWithWindow() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        new EchoHandler(t);
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.setWindow(4);
+        t.run();
+    }
+}
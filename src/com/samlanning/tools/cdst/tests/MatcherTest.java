@@ -0,0 +1,128 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTMatcher;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class MatcherTest {
+    
+    @Test
+    public void testRegex() {
+        CDSTMatcher m = CDSTMatcher.regex("HTTP/1\\.[01] [0-9]{3} .*");
+        assertTrue(m.matches("HTTP/1.1 200 OK"));
+        assertFalse(m.matches("HTTP/2 200 OK"));
+        // Whole output has to match
+        assertFalse(m.matches("> HTTP/1.1 200 OK"));
+    }
+    
+    @Test
+    public void testPrefix() {
+        CDSTMatcher m = CDSTMatcher.prefix("+OK");
+        assertTrue(m.matches("+OK ready"));
+        assertFalse(m.matches("-ERR +OK"));
+    }
+    
+    @Test
+    public void testAnyOf() {
+        List<String> alternatives = new ArrayList<String>();
+        for(int i = 0; i < 10000; i++)
+            alternatives.add("response " + i);
+        CDSTMatcher m = CDSTMatcher.anyOf(alternatives);
+        assertTrue(m.matches("response 9999"));
+        assertFalse(m.matches("response 10000"));
+        assertTrue(m.toString().contains("10000 strings"));
+    }
+    
+    @Test
+    public void testContainsAny() {
+        CDSTMatcher m = CDSTMatcher.containsAny("he", "she", "his", "hers");
+        assertTrue(m.matches("ushers"));
+        assertTrue(m.matches("this"));
+        assertFalse(m.matches("hxs"));
+        assertFalse(m.matches(""));
+    }
+    
+    @Test
+    public void testContainsAnyAgainstBruteForce() {
+        Random random = new Random(42);
+        for(int round = 0; round < 200; round++){
+            List<String> keywords = new ArrayList<String>();
+            for(int i = random.nextInt(8) + 1; i > 0; i--)
+                keywords.add(randomString(random, random.nextInt(4) + 1));
+            CDSTMatcher m = CDSTMatcher.containsAny(keywords);
+            
+            for(int i = 0; i < 50; i++){
+                String text = randomString(random, random.nextInt(20));
+                boolean expected = false;
+                for(String keyword : keywords)
+                    expected |= text.contains(keyword);
+                assertEquals(keywords + " in " + text, expected,
+                             m.matches(text));
+            }
+        }
+    }
+    
+    private static String randomString(Random random, int length){
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < length; i++)
+            sb.append((char) ('a' + random.nextInt(3)));
+        return sb.toString();
+    }
+    
+    @Test
+    public void testInScript() throws Exception {
+        final CDSTester<String, String> t = new CDSTester<String, String>(0);
+        final List<String> failures = new ArrayList<String>();
+        t.setHandler(new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {
+                failures.add(message);
+            }
+            public void writeToStream(String input) {}
+        });
+        t.addOutputRead(CDSTMatcher.anyOf("Good", "Bad"));
+        t.addOutputRead(CDSTMatcher.prefix("Yourself"));
+        
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    t.readFromStream(new String[]{"Good", "Fine"});
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0), failures.get(0).contains("Yourself"));
+        assertTrue(failures.get(0), failures.get(0).contains("'Fine'"));
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTMultiplexHandler;
+import com.samlanning.tools.cdst.CDSTPlan;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class MultiplexTest {
+    
+    /**
+     * Handler for a multiplexed stream which replies to each input in upper
+     * case on the same channel, from a thread of its own after the delay
+     * given for the channel
+     */
+    private static class EchoHandler implements CDSTMultiplexHandler<String> {
+        
+        private final CDSTester<String, String> tester;
+        private final long[] delays;
+        private volatile String failure = null;
+        private final List<String> written =
+            Collections.synchronizedList(new ArrayList<String>());
+        
+        public EchoHandler(CDSTester<String, String> tester, long... delays)
+                throws CDSTException {
+            this.tester = tester;
+            this.delays = delays;
+            tester.setMultiplexHandler(this);
+        }
+        
+        public void fail(String message, Exception trace) {
+            if(this.failure == null)
+                this.failure = message;
+        }
+        
+        public void writeToStream(String input) {
+            throw new AssertionError("Should be given a channel");
+        }
+        
+        public void writeToStream(final int channel, final String input) {
+            this.written.add(input);
+            final long delay = channel < this.delays.length ?
+                               this.delays[channel] : 0;
+            new Thread(){
+                public void run(){
+                    try {
+                        Thread.sleep(delay);
+                        tester.readFromChannel(channel, input.toUpperCase());
+                    } catch (Exception e) {
+                    }
+                }
+            }.start();
+        }
+    }
+    
+    @Test
+    public void testChannelsDontWaitForEachOther() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t, 0, 300, 0);
+        t.setChannel(1);
+        t.addInputWrite("a");
+        t.addOutputRead("A");
+        t.addInputWrite("b");
+        t.addOutputRead("B");
+        t.setChannel(2);
+        for(int i = 0; i < 5; i++){
+            t.addInputWrite("x" + i);
+            t.addOutputRead("X" + i);
+        }
+        t.run();
+        
+        assertNull(handler.failure);
+        assertTrue(t.getResult().isSuccess());
+        assertEquals(7, t.getResult().getOutputs());
+        // Channel 2 carried on while channel 1 was waiting for its reply
+        assertEquals(Arrays.asList("a", "x0", "x1", "x2", "x3", "x4", "b"),
+                     handler.written);
+    }
+    
+    @Test
+    public void testOrderWithinChannel() throws Exception {
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t, 0, 1000);
+        t.setChannel(1);
+        t.addInputWrite("a");
+        t.addOutputRead("A");
+        t.addOutputRead("B");
+        
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    Thread.sleep(100);
+                    t.readFromChannel(1, "B");
+                    t.readFromChannel(1, "A");
+                } catch (Exception e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertEquals(handler.failure, t.getResult().getFailureMessage());
+        assertTrue(handler.failure.contains("'A'"));
+        assertTrue(handler.failure.contains("'B'"));
+    }
+    
+    @Test
+    public void testPlan() throws Exception {
+        CDSTPlan.Builder<String, String> builder =
+            new CDSTPlan.Builder<String, String>();
+        for(int c = 0; c < 4; c++){
+            builder.setChannel(c);
+            builder.addInputWrite("in " + c);
+            builder.addOutputGroup(Arrays.asList("IN " + c));
+        }
+        CDSTPlan<String, String> plan = builder.build();
+        
+        for(int run = 0; run < 3; run++){
+            CDSTester<String, String> t =
+                new CDSTester<String, String>(plan, 0);
+            EchoHandler handler = new EchoHandler(t, 50, 40, 30, 20);
+            t.run();
+            assertNull(handler.failure);
+            assertTrue(t.getResult().isSuccess());
+        }
+    }
+    
+    @Test
+    public void testUnknownChannel() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t);
+        t.setChannel(1);
+        t.addOutputRead("A");
+        t.readFromChannel(7, "A");
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure.contains("on channel 7"));
+    }
+    
+    @Test
+    public void testOutputWhileWaitingToWrite() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(10000);
+        EchoHandler handler = new EchoHandler(t);
+        t.setChannel(3);
+        t.addInputWrite("a");
+        t.addOutputRead("A");
+        t.readFromChannel(3, "A");
+        long start = System.nanoTime();
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure.contains("on channel 3"));
+        assertTrue(handler.written.isEmpty());
+        assertTrue(System.nanoTime() - start < 5000000000L);
+    }
+    
+    @Test
+    public void testDeadline() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        EchoHandler handler = new EchoHandler(t, 0, 0, 1000);
+        t.setChannel(1);
+        t.addInputWrite("a");
+        t.addOutputRead("A", 500);
+        t.setChannel(2);
+        t.addInputWrite("b");
+        t.addOutputRead("B", 100);
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(handler.failure.contains("within 100 ms"));
+        assertTrue(handler.failure.contains("ON CHANNEL 2"));
+    }
+    
+    @Test
+    public void testOnlyWhenMultiplexing() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        try {
+            t.readFromChannel(1, "A");
+            fail();
+        } catch (CDSTException e) {
+        }
+        try {
+            t.setChannel(-1);
+            fail();
+        } catch (CDSTException e) {
+        }
+    }
+}
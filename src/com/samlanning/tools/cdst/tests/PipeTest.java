@@ -0,0 +1,122 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTester;
+import com.samlanning.tools.cdst.transport.CDSTPipe;
+
+public class PipeTest {
+    
+    /**
+     * Start an implementation which replies to each input in upper case,
+     * and with an extra "+" line for inputs starting with "+"
+     */
+    private static Thread serve(final CDSTPipe<String, String> pipe){
+        Thread thread = new Thread(){
+            public void run(){
+                try {
+                    while(true){
+                        String input = pipe.readInput();
+                        pipe.writeOutput(input.toUpperCase());
+                        if(input.startsWith("+"))
+                            pipe.writeOutput("+");
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    @Test
+    public void testManyRoundTrips() throws Exception {
+        // Small pipe, so the rings wrap round many times
+        CDSTPipe<String, String> pipe = new CDSTPipe<String, String>(4);
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        pipe.attach(t);
+        Thread server = serve(pipe);
+        
+        for(int i = 0; i < 5000; i++){
+            t.addInputWrite("message " + i);
+            t.addOutputRead("MESSAGE " + i);
+        }
+        t.run();
+        
+        pipe.close();
+        server.interrupt();
+        assertNull(pipe.getFailure());
+        assertTrue(t.getResult().toString(), t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testUnexpectedOutput() throws Exception {
+        CDSTPipe<String, String> pipe = new CDSTPipe<String, String>();
+        CDSTester<String, String> t = new CDSTester<String, String>(200);
+        pipe.attach(t);
+        Thread server = serve(pipe);
+        
+        t.addInputWrite("+a");
+        t.addOutputRead("+A");
+        t.addInputWrite("b");
+        t.addOutputRead("B");
+        t.run();
+        
+        pipe.close();
+        server.interrupt();
+        assertNotNull(pipe.getFailure());
+        assertTrue(pipe.getFailure(), pipe.getFailure().contains("'+'"));
+    }
+    
+    @Test
+    public void testInterruptedWhileWriting() throws Exception {
+        // Nothing takes the inputs, so writing blocks once the pipe is full
+        CDSTPipe<String, String> pipe = new CDSTPipe<String, String>(2);
+        final CDSTester<String, String> t = new CDSTester<String, String>(0);
+        pipe.attach(t);
+        for(int i = 0; i < 10; i++)
+            t.addInputWrite("message " + i);
+        
+        Thread runner = new Thread(){
+            public void run(){
+                try {
+                    t.run();
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        runner.start();
+        Thread.sleep(200);
+        runner.interrupt();
+        runner.join(10000);
+        pipe.close();
+        
+        assertFalse(runner.isAlive());
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("Interrupted while writing"));
+        assertEquals(failure, pipe.getFailure());
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTPlan;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTWriteHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class PlanTest {
+    
+    /**
+     * Create a tester for the plan, with a stream echoing every input
+     */
+    private static CDSTester<String, String> echoTester(
+            CDSTPlan<String, String> plan) throws CDSTException {
+        
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(plan, 0);
+        t.setHandler(new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {}
+            public void writeToStream(final String input) {
+                new Thread(){
+                    public void run(){
+                        try {
+                            t.readFromStream(input);
+                        } catch (CDSTException e) {
+                        }
+                    }
+                }.start();
+            }
+        });
+        return t;
+    }
+    
+    private static CDSTPlan<String, String> plan(final AtomicInteger writes){
+        CDSTPlan.Builder<String, String> builder =
+            new CDSTPlan.Builder<String, String>();
+        builder.addInputWrite("a");
+        builder.addOutputRead("a");
+        builder.addInputWrite(new CDSTWriteHandler<String>() {
+            public String write() {
+                writes.incrementAndGet();
+                return "b";
+            }
+        });
+        builder.addOutputRead("b");
+        return builder.build();
+    }
+
+    @Test
+    public void testSequentialRuns() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        CDSTPlan<String, String> plan = plan(writes);
+        
+        for(int i = 0; i < 20; i++){
+            CDSTester<String, String> t = echoTester(plan);
+            t.run();
+            assertTrue(t.getResult().isSuccess());
+        }
+        
+        // Write handlers are called once per run
+        assertEquals(20, writes.get());
+    }
+    
+    @Test
+    public void testConcurrentRuns() throws Exception {
+        CDSTPlan<String, String> plan = plan(new AtomicInteger());
+        
+        List<CompletableFuture<CDSTResult>> futures =
+            new ArrayList<CompletableFuture<CDSTResult>>();
+        for(int i = 0; i < 20; i++)
+            futures.add(echoTester(plan).runAsync());
+        
+        for(CompletableFuture<CDSTResult> future : futures)
+            assertTrue(future.get().isSuccess());
+    }
+    
+    @Test
+    public void testCantAddToPlan() throws Exception {
+        CDSTester<String, String> t =
+            echoTester(plan(new AtomicInteger()));
+        
+        try {
+            t.addOutputRead("c");
+            fail("Didn't Raise Exception");
+        } catch (CDSTException e) {
+        }
+    }
+
+}
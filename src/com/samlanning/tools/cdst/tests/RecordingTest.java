@@ -0,0 +1,207 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTCodec;
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTStringCodec;
+import com.samlanning.tools.cdst.CDSTester;
+import com.samlanning.tools.cdst.record.CDSTRecorder;
+import com.samlanning.tools.cdst.record.CDSTRecording;
+
+public class RecordingTest {
+    
+    private Path file;
+    
+    @Before
+    public void setUp() throws IOException {
+        this.file = Files.createTempFile("cdst", ".log");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+    
+    /**
+     * Handler for a stream which replies to every input with the given
+     * suffix added, passing replies through the recorder if there is one
+     */
+    private static CDSTHandler<String> echo(
+            final CDSTester<String, String> t,
+            final CDSTRecorder<String, String> recorder,
+            final String suffix){
+        
+        return new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {}
+            public void writeToStream(final String input) {
+                new Thread(){
+                    public void run(){
+                        try {
+                            if(recorder != null)
+                                recorder.readFromStream(t, input + suffix);
+                            else
+                                t.readFromStream(input + suffix);
+                        } catch (CDSTException e) {
+                        }
+                    }
+                }.start();
+            }
+        };
+    }
+    
+    private CDSTRecording<String, String> load() throws IOException {
+        return CDSTRecording.load(this.file, CDSTStringCodec.UTF_8,
+                                  CDSTStringCodec.UTF_8);
+    }
+    
+    /**
+     * Record a session of the echo stream
+     */
+    private void record(int exchanges) throws Exception {
+        CDSTRecorder<String, String> recorder =
+            new CDSTRecorder<String, String>(this.file, CDSTStringCodec.UTF_8,
+                                             CDSTStringCodec.UTF_8);
+        CDSTester<String, String> t = new CDSTester<String, String>(10);
+        t.setHandler(recorder.record(echo(t, recorder, "!")));
+        for(int i = 0; i < exchanges; i++){
+            t.addInputWrite("message " + i);
+            t.addOutputRead("message " + i + "!");
+        }
+        t.run();
+        recorder.close();
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        this.record(5);
+        
+        CDSTRecording<String, String> recording = this.load();
+        assertEquals(10, recording.size());
+        assertTrue(recording.isInput(0));
+        assertFalse(recording.isInput(1));
+        assertTrue(recording.getNanos(1) >= recording.getNanos(0));
+        
+        CDSTester<String, String> t =
+            new CDSTester<String, String>(recording.toPlan());
+        t.setHandler(echo(t, null, "!"));
+        t.run();
+        assertTrue(t.getResult().toString(), t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testStreamReplay() throws Exception {
+        this.record(5);
+        
+        CDSTester<String, String> t = new CDSTester<String, String>(
+            CDSTRecording.stream(this.file, CDSTStringCodec.UTF_8,
+                                 CDSTStringCodec.UTF_8, false));
+        t.setHandler(echo(t, null, "!"));
+        t.run();
+        assertTrue(t.getResult().toString(), t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testReplayCatchesRegression() throws Exception {
+        this.record(3);
+        
+        CDSTester<String, String> t =
+            new CDSTester<String, String>(this.load().toPlan(true));
+        t.setHandler(echo(t, null, "?"));
+        t.run();
+        assertFalse(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testPartlyWrittenEventIgnored() throws Exception {
+        // Writes part of "crash" and then fails, as if it was cut off
+        CDSTCodec<String> codec = new CDSTCodec<String>() {
+            public void encode(String value, ByteBuffer out) {
+                CDSTStringCodec.UTF_8.encode(value, out);
+                if(value.equals("crash"))
+                    throw new IllegalStateException();
+            }
+            
+            public String decode(ByteBuffer in) {
+                return CDSTStringCodec.UTF_8.decode(in);
+            }
+        };
+        CDSTRecorder<String, String> recorder =
+            new CDSTRecorder<String, String>(this.file, codec, codec);
+        recorder.recordInput("before");
+        try {
+            recorder.recordOutput("crash");
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        
+        // Not closed, and the event is left behind in the mapping
+        CDSTRecording<String, String> recording =
+            CDSTRecording.load(this.file, codec, codec);
+        assertEquals(1, recording.size());
+        assertEquals("before", recording.getValue(0));
+        
+        recorder.recordOutput("after");
+        recorder.close();
+        recording = CDSTRecording.load(this.file, codec, codec);
+        assertEquals(2, recording.size());
+        assertEquals("after", recording.getValue(1));
+    }
+    
+    @Test
+    public void testEventsLargerThanChunk() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 3 << 20; i++)
+            sb.append((char) ('a' + i % 26));
+        String large = sb.toString();
+        
+        CDSTRecorder<String, String> recorder =
+            new CDSTRecorder<String, String>(this.file, CDSTStringCodec.UTF_8,
+                                             CDSTStringCodec.UTF_8);
+        recorder.recordInput("small");
+        recorder.recordOutput(large);
+        recorder.recordInput("after");
+        recorder.close();
+        
+        CDSTRecording<String, String> recording = this.load();
+        assertEquals(3, recording.size());
+        assertEquals(large, recording.getValue(1));
+        assertEquals("after", recording.getValue(2));
+        assertEquals(3, recording.toPlan().size());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testNotARecording() throws Exception {
+        Files.write(this.file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        this.load();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTOverflowPolicy;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class ReorderTest {
+    
+    /**
+     * Start threads which between them read outputs 0 to count - 1, each
+     * taking every nth output, so that they arrive out of order
+     */
+    private static Thread[] readers(final CDSTester<String, String> t,
+                                    final int threads, final int count){
+        Thread[] readers = new Thread[threads];
+        for(int i = 0; i < threads; i++){
+            final int first = i;
+            readers[i] = new Thread(){
+                public void run(){
+                    try {
+                        for(int seq = first; seq < count; seq += threads)
+                            t.readFromStream(seq, "out " + seq);
+                    } catch (CDSTException e) {
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        return readers;
+    }
+    
+    @Test
+    public void testManyReaders() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setSequencedIngestion(64, CDSTOverflowPolicy.BLOCK);
+        for(int i = 0; i < 20000; i++)
+            t.addOutputRead("out " + i);
+        
+        Thread[] readers = readers(t, 4, 20000);
+        t.run();
+        for(Thread reader : readers)
+            reader.join();
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testReversed() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setSequencedIngestion(16, CDSTOverflowPolicy.FAIL);
+        for(int i = 0; i < 10; i++)
+            t.addOutputRead("out " + i);
+        for(int i = 9; i >= 0; i--)
+            t.readFromStream(i, "out " + i);
+        
+        t.run();
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testMissingSequence() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setSequencedIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.addOutputRead("out 0", 50);
+        t.addOutputRead("out 1", 50);
+        t.readFromStream(1, "out 1");
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        String failure = t.getResult().getFailureMessage();
+        assertTrue(failure, failure.contains("(out 0)"));
+    }
+    
+    @Test
+    public void testTooFarAhead() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setSequencedIngestion(4, CDSTOverflowPolicy.FAIL);
+        for(int i = 0; i < 5; i++)
+            t.addOutputRead("out " + i);
+        for(int i = 1; i < 5; i++)
+            t.readFromStream(i, "out " + i);
+        t.readFromStream(0, "out 0");
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        String failure = t.getResult().getFailureMessage();
+        assertTrue(failure, failure.contains("lost"));
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testDuplicateSequence() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setSequencedIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.readFromStream(3, "out 3");
+        t.readFromStream(3, "out 3");
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testNeedsSequence() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setSequencedIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.readFromStream("out 0");
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testNotSequenced() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setHandler(Fixtures.<String>silent());
+        t.setIngestion(16, CDSTOverflowPolicy.FAIL);
+        t.readFromStream(0, "out 0");
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTCommunication;
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class ScriptTest {
+    
+    /**
+     * The strings "0", "1", ... generated as they're needed
+     */
+    private static Iterator<String> numbers(final int count){
+        return new Iterator<String>() {
+            
+            private int next = 0;
+            
+            public boolean hasNext() {
+                return this.next < count;
+            }
+            
+            public String next() {
+                if(!this.hasNext())
+                    throw new NoSuchElementException();
+                return Integer.toString(this.next++);
+            }
+        };
+    }
+    
+    /**
+     * Script expecting the outputs "0", "1", ... generated as it goes
+     */
+    private static Iterator<CDSTCommunication<String, String>> outputs(
+            int count){
+        final Iterator<String> numbers = numbers(count);
+        return new Iterator<CDSTCommunication<String, String>>() {
+            
+            public boolean hasNext() {
+                return numbers.hasNext();
+            }
+            
+            public CDSTCommunication<String, String> next() {
+                return CDSTCommunication.<String, String>output(
+                    numbers.next());
+            }
+        };
+    }
+    
+    @Test
+    public void testLongGeneratedScript() throws Exception {
+        final int count = 1000000;
+        CDSTester<String, String> t =
+            new CDSTester<String, String>(outputs(count), 0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        Thread reader = Fixtures.reader(t, numbers(count), 1000);
+        t.run();
+        reader.join();
+        
+        assertTrue(t.getResult().isSuccess());
+    }
+    
+    @Test
+    public void testIncorrectOutput() throws Exception {
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(outputs(10), 0);
+        t.setHandler(Fixtures.<String>silent());
+        
+        Thread reader = new Thread(){
+            public void run(){
+                try {
+                    t.readFromStream(new String[]{
+                        "0", "1", "2", "3", "4", "wrong", "6"
+                    });
+                } catch (CDSTException e) {
+                }
+            }
+        };
+        reader.start();
+        t.run();
+        reader.join();
+        
+        String failure = t.getResult().getFailureMessage();
+        assertNotNull(failure);
+        assertTrue(failure, failure.contains("'5'"));
+    }
+    
+    @Test
+    public void testInputsAndOutputs() throws Exception {
+        List<CDSTCommunication<String, String>> script =
+            new ArrayList<CDSTCommunication<String, String>>();
+        for(int i = 0; i < 100; i++){
+            script.add(CDSTCommunication.<String, String>input("ping " + i));
+            script.add(CDSTCommunication.<String, String>output("pong " + i));
+        }
+        
+        final CDSTester<String, String> t =
+            new CDSTester<String, String>(script.iterator(), 0);
+        t.setHandler(new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {}
+            public void writeToStream(final String input) {
+                new Thread(){
+                    public void run(){
+                        try {
+                            t.readFromStream(input.replace("ping", "pong"));
+                        } catch (CDSTException e) {
+                        }
+                    }
+                }.start();
+            }
+        });
+        
+        assertTrue(t.runAsync().get().isSuccess());
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testCantAddToScript() throws Exception {
+        CDSTester<String, String> t =
+            new CDSTester<String, String>(outputs(1));
+        t.addOutputRead("more");
+    }
+}
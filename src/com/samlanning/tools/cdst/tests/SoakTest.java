@@ -0,0 +1,268 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHistogram;
+import com.samlanning.tools.cdst.CDSTPlan;
+import com.samlanning.tools.cdst.CDSTScript;
+import com.samlanning.tools.cdst.CDSTSoak;
+import com.samlanning.tools.cdst.CDSTSoakResult;
+import com.samlanning.tools.cdst.CDSTester;
+import com.samlanning.tools.cdst.transport.CDSTPipe;
+
+public class SoakTest {
+    
+    /**
+     * Start an implementation which replies to each input in upper case,
+     * until the given number of inputs, after which it replies in lower case
+     */
+    private static Thread serve(final CDSTPipe<String, String> pipe,
+                                final int correct){
+        Thread thread = new Thread(){
+            public void run(){
+                try {
+                    for(int i = 0; true; i++){
+                        String input = pipe.readInput();
+                        pipe.writeOutput(
+                            i < correct ? input.toUpperCase() : input);
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    private static CDSTPlan<String, String> plan(){
+        CDSTPlan.Builder<String, String> b =
+            new CDSTPlan.Builder<String, String>();
+        b.addInputWrite("hello");
+        b.addOutputRead("HELLO");
+        b.addInputWrite("bye");
+        b.addOutputRead("BYE");
+        return b.build();
+    }
+    
+    private static CDSTSoak.Connection<String, String> connection(
+            final int correct){
+        return new CDSTSoak.Connection<String, String>(){
+            public void connect(CDSTester<String, String> tester)
+                    throws CDSTException {
+                CDSTPipe<String, String> pipe =
+                    new CDSTPipe<String, String>();
+                pipe.attach(tester);
+                serve(pipe, correct);
+            }
+        };
+    }
+    
+    @Test
+    public void testIterationsOnOneConnection() throws Exception {
+        CDSTSoak soak = new CDSTSoak();
+        soak.setWarmupIterations(100);
+        soak.setIterations(500);
+        
+        CDSTSoakResult result =
+            soak.run(plan(), connection(Integer.MAX_VALUE));
+        
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(500, result.getIterations());
+        assertEquals(1000, result.getOutputs());
+        assertTrue(result.getThroughput() > 0);
+        CDSTHistogram latencies = result.getLatencies();
+        assertTrue(latencies.getPercentile(50) > 0);
+        assertTrue(latencies.getPercentile(50) <=
+                   latencies.getPercentile(99.9));
+        assertTrue(latencies.getPercentile(99.9) <= latencies.getMax());
+    }
+    
+    @Test
+    public void testDurationWithFreshTesters() throws Exception {
+        final CDSTPlan<String, String> plan = plan();
+        CDSTSoak soak = new CDSTSoak();
+        soak.setWarmupDuration(20);
+        soak.setDuration(100);
+        
+        final AtomicInteger open = new AtomicInteger();
+        CDSTSoakResult result = soak.run(new CDSTScript(){
+            private CDSTPipe<String, String> pipe;
+            private Thread server;
+            public CDSTester<?, ?> prepare() throws Exception {
+                CDSTester<String, String> tester =
+                    new CDSTester<String, String>(plan, 0);
+                this.pipe = new CDSTPipe<String, String>();
+                this.pipe.attach(tester);
+                this.server = serve(this.pipe, Integer.MAX_VALUE);
+                open.incrementAndGet();
+                return tester;
+            }
+            public void finished(CDSTester<?, ?> tester) throws Exception {
+                this.pipe.close();
+                this.server.interrupt();
+                this.server.join();
+                open.decrementAndGet();
+            }
+        });
+        
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(0, open.get());
+        assertTrue(result.getIterations() > 0);
+        assertEquals(result.getIterations() * 2, result.getOutputs());
+        assertTrue(result.getElapsedNanos() >= 100000000);
+    }
+    
+    @Test
+    public void testStopsAtFailure() throws Exception {
+        CDSTSoak soak = new CDSTSoak();
+        soak.setWarmupIterations(2);
+        soak.setIterations(100);
+        
+        // Fails on the 4th iteration after the warm-up
+        CDSTSoakResult result = soak.run(plan(), connection(2 * 2 + 7));
+        
+        assertFalse(result.isSuccess());
+        assertTrue(result.getFailure().getFailureMessage(),
+                   result.getFailure().getFailureMessage().contains("bye"));
+        assertEquals(3, result.getIterations());
+        assertEquals(7, result.getOutputs());
+    }
+    
+    @Test
+    public void testFinishedAfterFailure() throws Exception {
+        final CDSTPlan<String, String> plan = plan();
+        CDSTSoak soak = new CDSTSoak();
+        soak.setIterations(100);
+        
+        final AtomicInteger finished = new AtomicInteger();
+        CDSTSoakResult result = soak.run(new CDSTScript(){
+            private CDSTPipe<String, String> pipe;
+            private Thread server;
+            public CDSTester<?, ?> prepare() throws Exception {
+                CDSTester<String, String> tester =
+                    new CDSTester<String, String>(plan, 0);
+                this.pipe = new CDSTPipe<String, String>();
+                this.pipe.attach(tester);
+                this.server = serve(this.pipe, 1);
+                return tester;
+            }
+            public void finished(CDSTester<?, ?> tester) {
+                this.pipe.close();
+                this.server.interrupt();
+                finished.incrementAndGet();
+            }
+        });
+        
+        assertFalse(result.isSuccess());
+        assertEquals(1, finished.get());
+    }
+    
+    @Test
+    public void testTeardownFailure() throws Exception {
+        final CDSTPlan<String, String> plan = plan();
+        CDSTSoak soak = new CDSTSoak();
+        soak.setIterations(100);
+        
+        CDSTSoakResult result = soak.run(new CDSTScript(){
+            public CDSTester<?, ?> prepare() throws Exception {
+                CDSTester<String, String> tester =
+                    new CDSTester<String, String>(plan, 0);
+                connection(Integer.MAX_VALUE).connect(tester);
+                return tester;
+            }
+            public void finished(CDSTester<?, ?> tester) throws Exception {
+                throw new Exception("stuck");
+            }
+        });
+        
+        assertFalse(result.isSuccess());
+        assertTrue(result.getFailure().getFailureMessage(),
+                   result.getFailure().getFailureMessage().contains("stuck"));
+        assertEquals(0, result.getIterations());
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testNeedsLimit() throws Exception {
+        new CDSTSoak().run(plan(), connection(Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void testRejectsInvalidLimits() throws Exception {
+        CDSTSoak soak = new CDSTSoak();
+        try {
+            soak.setIterations(0);
+            fail("Expected a CDSTException");
+        } catch (CDSTException e) {
+        }
+        try {
+            soak.setDuration(-1);
+            fail("Expected a CDSTException");
+        } catch (CDSTException e) {
+        }
+        try {
+            soak.setWarmupIterations(-1);
+            fail("Expected a CDSTException");
+        } catch (CDSTException e) {
+        }
+        try {
+            soak.setWarmupDuration(-1);
+            fail("Expected a CDSTException");
+        } catch (CDSTException e) {
+        }
+        try {
+            soak.setWriteDelay(-1);
+            fail("Expected a CDSTException");
+        } catch (CDSTException e) {
+        }
+        // No warm-up is allowed
+        soak.setWarmupIterations(0);
+        soak.setWarmupDuration(0);
+    }
+    
+    @Test
+    public void testHistogram() throws Exception {
+        CDSTHistogram histogram = new CDSTHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for(int i = 1; i <= 100000; i++)
+            histogram.record(i);
+        
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 0.001);
+        assertEquals(50000, histogram.getPercentile(50), 500);
+        assertEquals(99000, histogram.getPercentile(99), 990);
+        assertEquals(99900, histogram.getPercentile(99.9), 999);
+        assertEquals(100000, histogram.getPercentile(100));
+        
+        // Small values are exact
+        histogram.reset();
+        histogram.record(3);
+        histogram.record(200);
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(200, histogram.getPercentile(100));
+    }
+}
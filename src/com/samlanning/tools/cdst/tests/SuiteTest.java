@@ -0,0 +1,214 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTScript;
+import com.samlanning.tools.cdst.CDSTSuite;
+import com.samlanning.tools.cdst.CDSTSuiteResult;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class SuiteTest {
+    
+    /**
+     * Script for a stream which echoes every input back
+     */
+    private static class EchoScript implements CDSTScript {
+        
+        private final String reply;
+        
+        /**
+         * How many testers have been prepared and not yet finished
+         */
+        private final AtomicInteger open;
+        
+        public EchoScript(String reply){
+            this(reply, new AtomicInteger());
+        }
+        
+        public EchoScript(String reply, AtomicInteger open){
+            this.reply = reply;
+            this.open = open;
+        }
+        
+        public CDSTester<?, ?> prepare() throws Exception {
+            final CDSTester<String, String> t =
+                new CDSTester<String, String>(100);
+            t.setHandler(new CDSTHandler<String>() {
+                public void fail(String message, Exception trace) {}
+                public void writeToStream(final String input) {
+                    new Thread(){
+                        public void run(){
+                            try {
+                                t.readFromStream(input);
+                            } catch (CDSTException e) {
+                            }
+                        }
+                    }.start();
+                }
+            });
+            t.addInputWrite("ping");
+            t.addOutputRead(reply);
+            this.open.incrementAndGet();
+            return t;
+        }
+        
+        public void finished(CDSTester<?, ?> tester) {
+            this.open.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testRunsConcurrently() throws CDSTException {
+        CDSTSuite suite = new CDSTSuite(8);
+        for(int i = 0; i < 8; i++)
+            suite.add("echo " + i, new EchoScript("ping"));
+        
+        CDSTSuiteResult result = suite.run();
+        
+        assertTrue(result.isSuccess());
+        assertEquals(8, result.getPassed());
+        assertTrue(result.getWallNanos() < result.getTotalScriptNanos());
+    }
+    
+    @Test
+    public void testRunAll() throws CDSTException {
+        AtomicInteger open = new AtomicInteger();
+        CDSTSuite suite = new CDSTSuite(2);
+        suite.add("good", new EchoScript("ping", open));
+        suite.add("bad", new EchoScript("pong", open));
+        suite.add("also good", new EchoScript("ping", open));
+        
+        CDSTSuiteResult result = suite.run();
+        
+        assertEquals(0, open.get());
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.getPassed());
+        assertEquals(1, result.getFailed());
+        assertFalse(result.getResults().get("bad").isSuccess());
+    }
+    
+    @Test
+    public void testFailFast() throws CDSTException {
+        CDSTSuite suite = new CDSTSuite(1);
+        suite.setFailFast(true);
+        suite.add("bad", new EchoScript("pong"));
+        suite.add("good", new EchoScript("ping"));
+        
+        CDSTSuiteResult result = suite.run();
+        
+        assertEquals(1, result.getFailed());
+        assertNull(result.getResults().get("good"));
+        // Depending on whether it started before the suite stopped
+        assertEquals(1, result.getSkipped().size() +
+                        result.getCancelled().size());
+    }
+    
+    @Test
+    public void testErrorInScript() throws CDSTException {
+        CDSTSuite suite = new CDSTSuite(1);
+        suite.add("broken", new CDSTScript() {
+            public CDSTester<?, ?> prepare() {
+                throw new AssertionError("broken");
+            }
+            public void finished(CDSTester<?, ?> tester) {}
+        });
+        suite.add("good", new EchoScript("ping"));
+        
+        CDSTSuiteResult result = suite.run();
+        
+        assertEquals(1, result.getPassed());
+        assertEquals(1, result.getFailed());
+        CDSTResult broken = result.getResults().get("broken");
+        assertTrue(broken.getFailureMessage(),
+                   broken.getFailureMessage().contains("broken"));
+    }
+    
+    @Test
+    public void testTeardownFailure() throws CDSTException {
+        CDSTSuite suite = new CDSTSuite(1);
+        suite.add("stuck", new EchoScript("ping") {
+            public void finished(CDSTester<?, ?> tester) {
+                throw new IllegalStateException("stuck");
+            }
+        });
+        
+        CDSTSuiteResult result = suite.run();
+        
+        assertEquals(1, result.getFailed());
+        CDSTResult stuck = result.getResults().get("stuck");
+        assertTrue(stuck.getFailureMessage(),
+                   stuck.getFailureMessage().contains("torn down"));
+    }
+    
+    @Test
+    public void testCancelledPartWay() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        CDSTSuite suite = new CDSTSuite(2);
+        suite.setFailFast(true);
+        suite.add("bad", new EchoScript("pong"));
+        suite.add("waiting", new CDSTScript() {
+            public CDSTester<?, ?> prepare() throws Exception {
+                CDSTester<String, String> t =
+                    new CDSTester<String, String>(0);
+                t.setHandler(new CDSTHandler<String>() {
+                    public void fail(String message, Exception trace) {}
+                    public void writeToStream(String input) {}
+                });
+                t.addOutputRead("never");
+                return t;
+            }
+            public void finished(CDSTester<?, ?> tester) {
+                finished.countDown();
+            }
+        });
+        
+        CDSTSuiteResult result = suite.run();
+        
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getFailed());
+        assertEquals(Arrays.asList("waiting"), result.getCancelled());
+        assertTrue(result.getSkipped().isEmpty());
+        // Torn down once the cancelled tester stops
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testDuplicateName() throws CDSTException {
+        CDSTSuite suite = new CDSTSuite(1);
+        suite.add("echo", new EchoScript("ping"));
+        try {
+            suite.add("echo", new EchoScript("ping"));
+            fail("Didn't Raise Exception");
+        } catch (CDSTException e) {
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTTimingReport;
+import com.samlanning.tools.cdst.CDSTVirtualScheduler;
+import com.samlanning.tools.cdst.CDSTester;
+import com.samlanning.tools.cdst.transport.CDSTPipe;
+
+public class TimingTest {
+    
+    /**
+     * Handler for a stream which replies to each input in upper case after
+     * a delay, in virtual time
+     */
+    private static class SlowHandler implements CDSTHandler<String> {
+        
+        private final CDSTVirtualScheduler scheduler;
+        private final CDSTester<String, String> tester;
+        private final long delay;
+        private volatile String failure = null;
+        
+        public SlowHandler(CDSTVirtualScheduler scheduler,
+                           CDSTester<String, String> tester, long delay)
+                throws CDSTException {
+            this.scheduler = scheduler;
+            this.tester = tester;
+            this.delay = delay;
+            tester.setHandler(this);
+        }
+        
+        public void fail(String message, Exception trace) {
+            if(this.failure == null)
+                this.failure = message;
+        }
+        
+        public void writeToStream(final String input) {
+            this.scheduler.schedule(new Runnable(){
+                public void run(){
+                    try {
+                        SlowHandler.this.tester.readFromStream(
+                            input.toUpperCase());
+                    } catch (CDSTException e) {
+                    }
+                }
+            }, this.delay, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Start an implementation which replies to each input in upper case
+     */
+    private static Thread serve(final CDSTPipe<String, String> pipe){
+        Thread thread = new Thread(){
+            public void run(){
+                try {
+                    while(true)
+                        pipe.writeOutput(pipe.readInput().toUpperCase());
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+    
+    @Test
+    public void testReport() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(1);
+        CDSTester<String, String> t = new CDSTester<String, String>(2);
+        SlowHandler handler = new SlowHandler(scheduler, t, 3);
+        t.setTimingReport(true);
+        for(int i = 0; i < 3; i++){
+            t.addInputWrite("line " + i);
+            t.addOutputRead("LINE " + i);
+        }
+        
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertNull(handler.failure);
+        CDSTTimingReport report = future.get().getTimingReport();
+        assertEquals(6, report.size());
+        for(int i = 0; i < 6; i += 2){
+            // Each input waits for the write delay, and is answered 3 ms later
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(5 * (i / 2) + 2),
+                         report.getNanos(i));
+            assertEquals(-1, report.getLatency(i));
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(5 * (i / 2) + 5),
+                         report.getNanos(i + 1));
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(3),
+                         report.getLatency(i + 1));
+        }
+        assertEquals(3, report.getLatencies().getCount());
+        assertTrue(report.toString(), report.toString().contains("6 steps"));
+    }
+    
+    @Test
+    public void testMaxLatency() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(1);
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        SlowHandler handler = new SlowHandler(scheduler, t, 3);
+        t.addInputWrite("a");
+        t.addOutputRead("A", 4, TimeUnit.MILLISECONDS);
+        t.addInputWrite("b");
+        t.addOutputRead("B", 2, TimeUnit.MILLISECONDS);
+        
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertFalse(future.get().isSuccess());
+        assertEquals(1, future.get().getOutputs());
+        assertTrue(handler.failure, handler.failure.contains("too late"));
+        assertTrue(handler.failure, handler.failure.contains("3000 us"));
+        assertTrue(handler.failure, handler.failure.contains("'B'"));
+    }
+    
+    @Test
+    public void testNoReportByDefault() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(1);
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        new SlowHandler(scheduler, t, 3);
+        t.addInputWrite("a");
+        t.addOutputRead("A");
+        
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertTrue(future.get().isSuccess());
+        assertNull(future.get().getTimingReport());
+    }
+    
+    @Test
+    public void testWindowReport() throws Exception {
+        CDSTPipe<String, String> pipe = new CDSTPipe<String, String>();
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        pipe.attach(t);
+        Thread server = serve(pipe);
+        t.setWindow(4);
+        t.setTimingReport(true);
+        for(int i = 0; i < 100; i++){
+            t.addInputWrite("line " + i);
+            t.addOutputRead("LINE " + i, 10, TimeUnit.SECONDS);
+        }
+        
+        t.run();
+        pipe.close();
+        server.interrupt();
+        
+        assertTrue(t.getResult().toString(), t.getResult().isSuccess());
+        CDSTTimingReport report = t.getResult().getTimingReport();
+        assertEquals(200, report.size());
+        for(int i = 0; i < 200; i += 2){
+            assertEquals(-1, report.getLatency(i));
+            assertTrue(report.getLatency(i + 1) >= 0);
+            assertTrue(report.getNanos(i + 1) >= report.getNanos(i));
+        }
+        assertEquals(100, report.getLatencies().getCount());
+        assertEquals(1, report.getSlowestStep() % 2);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTRingBufferSink;
+import com.samlanning.tools.cdst.CDSTTraceEvent;
+import com.samlanning.tools.cdst.CDSTTraceSink;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class TraceSinkTest {
+    
+    /**
+     * Sink which keeps every event
+     */
+    private static class CollectingSink implements CDSTTraceSink {
+        
+        private final List<CDSTTraceEvent> events =
+            new ArrayList<CDSTTraceEvent>();
+        
+        public synchronized void trace(CDSTester<?, ?> tester,
+                                       CDSTTraceEvent event, Object subject,
+                                       long nanoTime) {
+            this.events.add(event);
+        }
+    }
+    
+    private static void runEcho(CDSTester<String, String> t)
+            throws Exception {
+        final CDSTester<String, String> tester = t;
+        t.setHandler(new CDSTHandler<String>() {
+            public void fail(String message, Exception trace) {}
+            public void writeToStream(final String input) {
+                new Thread(){
+                    public void run(){
+                        try {
+                            tester.readFromStream(input);
+                        } catch (CDSTException e) {
+                        }
+                    }
+                }.start();
+            }
+        });
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        t.run();
+    }
+
+    @Test
+    public void testRingBufferSink() throws Exception {
+        CollectingSink collecting = new CollectingSink();
+        CDSTRingBufferSink ring = new CDSTRingBufferSink(16, collecting);
+        
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setLogLevel(CDSTester.L_INTERACTION);
+        t.setTraceSink(ring);
+        runEcho(t);
+        ring.close();
+        
+        assertEquals(0, ring.getDropped());
+        assertTrue(collecting.events.contains(CDSTTraceEvent.WRITE));
+        assertTrue(collecting.events.contains(CDSTTraceEvent.READ));
+        assertFalse(collecting.events.contains(CDSTTraceEvent.RUNNING));
+    }
+    
+    @Test
+    public void testNothingSentWhenDisabled() throws Exception {
+        CollectingSink collecting = new CollectingSink();
+        
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        t.setTraceSink(collecting);
+        runEcho(t);
+        
+        assertTrue(collecting.events.isEmpty());
+    }
+    
+    @Test
+    public void testFullRingDrops() throws Exception {
+        final Object block = new Object();
+        CDSTRingBufferSink ring = new CDSTRingBufferSink(4,
+                                                         new CDSTTraceSink() {
+            public void trace(CDSTester<?, ?> tester, CDSTTraceEvent event,
+                              Object subject, long nanoTime) {
+                synchronized(block) {
+                }
+            }
+        });
+        
+        synchronized(block) {
+            for(int i = 0; i < 100; i++)
+                ring.trace(null, CDSTTraceEvent.READ, i, 0);
+        }
+        ring.close();
+        
+        assertTrue(ring.getDropped() > 0);
+    }
+
+}
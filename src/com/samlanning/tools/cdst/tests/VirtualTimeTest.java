@@ -0,0 +1,201 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTVirtualScheduler;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class VirtualTimeTest {
+    
+    /**
+     * Handler for a stream which replies to each input with the outputs
+     * given, each read in a separate task on the scheduler
+     */
+    private static class ReplyHandler implements CDSTHandler<String> {
+        
+        private final CDSTVirtualScheduler scheduler;
+        private final String[] replies;
+        private CDSTester<String, String> tester;
+        private volatile String failure = null;
+        
+        public ReplyHandler(CDSTVirtualScheduler scheduler,
+                            String... replies){
+            this.scheduler = scheduler;
+            this.replies = replies;
+        }
+        
+        public void fail(String message, Exception trace) {
+            if(this.failure == null)
+                this.failure = message;
+        }
+        
+        public void writeToStream(final String input) {
+            if(this.replies.length == 0){
+                this.read(input);
+                return;
+            }
+            for(final String reply : this.replies)
+                this.read(reply);
+        }
+        
+        private void read(final String output) {
+            this.scheduler.execute(new Runnable(){
+                public void run(){
+                    try {
+                        ReplyHandler.this.tester.readFromStream(output);
+                    } catch (CDSTException e) {
+                    }
+                }
+            });
+        }
+    }
+    
+    @Test
+    public void testDelaysTakeNoTime() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(1);
+        CDSTester<String, String> t = new CDSTester<String, String>(10000);
+        ReplyHandler handler = new ReplyHandler(scheduler);
+        handler.tester = t;
+        t.setHandler(handler);
+        t.setDefaultDeadline(60000);
+        for(int i = 0; i < 100; i++){
+            t.addInputWrite("line " + i);
+            t.addOutputRead("line " + i);
+        }
+        
+        long start = System.nanoTime();
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertTrue(future.isDone());
+        CDSTResult result = future.get();
+        assertNull(handler.failure);
+        assertTrue(result.isSuccess());
+        assertEquals(TimeUnit.SECONDS.toNanos(1000), result.getElapsedNanos());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+    
+    @Test
+    public void testDeadline() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(1);
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        ReplyHandler handler = new ReplyHandler(scheduler, new String[0]);
+        handler.tester = t;
+        t.setHandler(handler);
+        t.addOutputRead("never", TimeUnit.HOURS.toMillis(1));
+        
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertTrue(future.isDone());
+        assertFalse(future.get().isSuccess());
+        assertTrue(handler.failure, handler.failure.contains("3600000 ms"));
+        assertEquals(TimeUnit.HOURS.toNanos(1), scheduler.nanoTime());
+    }
+    
+    @Test
+    public void testCancelledDeadlineDoesNotMoveClock() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(1);
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        ReplyHandler handler = new ReplyHandler(scheduler);
+        handler.tester = t;
+        t.setHandler(handler);
+        t.addInputWrite("ping");
+        t.addOutputRead("ping", TimeUnit.HOURS.toMillis(1));
+        
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertTrue(future.get().isSuccess());
+        assertEquals(0, scheduler.nanoTime());
+    }
+    
+    /**
+     * Run a test where the stream sends two outputs at the same time, so
+     * whether they are read in the expected order depends on the seed
+     */
+    private static String race(long seed) throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler(seed);
+        CDSTester<String, String> t = new CDSTester<String, String>(0);
+        ReplyHandler handler = new ReplyHandler(scheduler, "a", "b");
+        handler.tester = t;
+        t.setHandler(handler);
+        t.addInputWrite("go");
+        t.addOutputRead("a");
+        t.addOutputRead("b");
+        
+        CompletableFuture<CDSTResult> future = t.runAsync(scheduler);
+        scheduler.runUntilIdle();
+        
+        assertEquals(future.get().isSuccess(), handler.failure == null);
+        return handler.failure;
+    }
+    
+    @Test
+    public void testSeedReplaysOrder() throws Exception {
+        List<Long> passed = new ArrayList<Long>();
+        List<Long> failed = new ArrayList<Long>();
+        for(long seed = 0; seed < 32; seed++){
+            if(race(seed) == null)
+                passed.add(seed);
+            else
+                failed.add(seed);
+        }
+        
+        // Both orders should turn up, and each seed should repeat its order
+        assertFalse(passed.isEmpty());
+        assertFalse(failed.isEmpty());
+        for(long seed : passed)
+            assertNull(race(seed));
+        for(long seed : failed)
+            assertEquals(race(failed.get(0)), race(seed));
+    }
+    
+    @Test
+    public void testRunFor() throws Exception {
+        CDSTVirtualScheduler scheduler = new CDSTVirtualScheduler();
+        final List<Long> times = new ArrayList<Long>();
+        final CDSTVirtualScheduler s = scheduler;
+        scheduler.scheduleAtFixedRate(new Runnable(){
+            public void run(){
+                times.add(s.nanoTime());
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        
+        assertEquals(3, scheduler.runFor(35, TimeUnit.MILLISECONDS));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(35), scheduler.nanoTime());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(30),
+                     (long) times.get(2));
+        
+        scheduler.shutdownNow();
+        assertTrue(scheduler.isTerminated());
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTResult;
+import com.samlanning.tools.cdst.CDSTester;
+
+public class WindowTest {
+    
+    /**
+     * Pipelined server: replies to requests in order from its own thread
+     * (once for each suffix), and counts the most requests it has had
+     * waiting at once
+     */
+    private static class Server implements CDSTHandler<String> {
+        
+        private final BlockingQueue<String> requests =
+            new LinkedBlockingQueue<String>();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private volatile int maxWaiting = 0;
+        private volatile String failure = null;
+        
+        public Server(final CDSTester<String, String> t,
+                      final String... suffixes){
+            Thread thread = new Thread(){
+                public void run(){
+                    try {
+                        while(true){
+                            String request = requests.take();
+                            waiting.decrementAndGet();
+                            for(String suffix : suffixes)
+                                t.readFromStream(request + suffix);
+                        }
+                    } catch (Exception e) {
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        public void fail(String message, Exception trace) {
+            if(this.failure == null)
+                this.failure = message;
+        }
+        
+        public void writeToStream(String input) {
+            int now = this.waiting.incrementAndGet();
+            if(now > this.maxWaiting)
+                this.maxWaiting = now;
+            this.requests.add(input);
+        }
+    }
+    
+    @Test
+    public void testPipelined() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>();
+        Server server = new Server(t, " ok");
+        t.setHandler(server);
+        t.setWindow(8);
+        for(int i = 0; i < 10000; i++){
+            t.addInputWrite("request " + i);
+            t.addOutputRead("request " + i + " ok");
+        }
+        
+        t.run();
+        
+        CDSTResult result = t.getResult();
+        assertNull(server.failure);
+        assertTrue(result.toString(), result.isSuccess());
+        assertEquals(10000, result.getOutputs());
+        assertTrue(result.getThroughput() > 0);
+        // Never more requests in flight than the window
+        assertTrue(server.maxWaiting <= 8);
+    }
+    
+    @Test
+    public void testGroupsCountAgainstWindow() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>();
+        Server server = new Server(t, " a", " b");
+        t.setHandler(server);
+        t.setWindow(4);
+        for(int i = 0; i < 1000; i++){
+            t.addInputWrite("request " + i);
+            t.addOutputGroup(Arrays.asList("request " + i + " b",
+                                           "request " + i + " a"));
+        }
+        
+        t.run();
+        
+        assertNull(server.failure);
+        assertTrue(t.getResult().toString(), t.getResult().isSuccess());
+        assertEquals(2000, t.getResult().getOutputs());
+        // Each request has two outputs outstanding
+        assertTrue(server.maxWaiting <= 2);
+    }
+    
+    @Test
+    public void testWrongOrder() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>();
+        Server server = new Server(t, "");
+        t.setHandler(server);
+        t.setWindow(4);
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        t.addInputWrite("b");
+        t.addOutputRead("c");
+        t.addInputWrite("c");
+        t.addOutputRead("b");
+        
+        t.run();
+        
+        assertFalse(t.getResult().isSuccess());
+        assertTrue(server.failure, server.failure.contains("'c'"));
+        assertEquals(1, t.getResult().getOutputs());
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testNoDefaultDeadline() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>();
+        t.setHandler(new Server(t, ""));
+        t.setWindow(4);
+        t.setDefaultDeadline(1000);
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        t.run();
+    }
+    
+    @Test
+    public void testNoOutputDeadline() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>();
+        Server server = new Server(t, "");
+        t.setHandler(server);
+        t.setWindow(4);
+        t.addInputWrite("a");
+        t.addOutputRead("a");
+        t.addInputWrite("b");
+        t.addOutputRead("b", 1000);
+        try {
+            t.run();
+            fail("Expected a CDSTException");
+        } catch (CDSTException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("deadline"));
+        }
+        assertNull(server.failure);
+    }
+    
+    @Test(expected = CDSTException.class)
+    public void testNotAsync() throws Exception {
+        CDSTester<String, String> t = new CDSTester<String, String>();
+        t.setHandler(new Server(t, ""));
+        t.setWindow(4);
+        t.runAsync();
+    }
+}
@@ -0,0 +1,386 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.samlanning.tools.cdst.CDSTByteBufferCodec;
+import com.samlanning.tools.cdst.CDSTCodec;
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * Connects a tester to a SocketChannel: inputs are encoded, framed and
+ * written to the channel, and a shared CDSTReactor reads frames from the
+ * channel, decodes them and passes them to the tester.
+ * 
+ * Buffers are direct and allocated once per connection. All of the frames
+ * from a single read are passed to the tester together. A tester which is
+ * ingesting is given them on the reactor thread, as that never blocks.
+ * Otherwise they are given to the tester on one of the reactor's reader
+ * threads, and the channel isn't read from again until the tester has
+ * checked them. Frames decoded with CDSTByteBufferCodec.VIEW are copied when
+ * the tester is ingesting, as the buffer is reused before they are checked.
+ * 
+ * When the tester fails, the channel is closed. When the channel fails (the
+ * peer closes it, reading or writing fails, a frame is bigger than the
+ * buffer, or an input can't be buffered because the peer isn't reading), it
+ * is closed and the test fails.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTChannelHandler<InputType, OutputType>
+        implements CDSTHandler<InputType> {
+    
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    
+    private final CDSTReactor reactor;
+    private final SocketChannel channel;
+    private final CDSTFraming framing;
+    private final CDSTCodec<InputType> inputCodec;
+    private final CDSTCodec<OutputType> outputCodec;
+    
+    /**
+     * Bytes read from the channel which haven't been passed on yet
+     */
+    private final ByteBuffer in;
+    
+    /**
+     * Encoded input, and framed bytes which haven't been written yet
+     */
+    private final ByteBuffer payload;
+    private final ByteBuffer out;
+    
+    /**
+     * Outputs decoded from a single read, reused
+     */
+    private final ArrayList<OutputType> outputs = new ArrayList<OutputType>();
+    
+    private CDSTester<InputType, OutputType> tester;
+    private volatile SelectionKey key;
+    
+    /**
+     * Set while the outputs from the last read are being passed to the
+     * tester on a reader thread, and the channel isn't being read from (only
+     * used by the reactor thread)
+     */
+    private boolean delivering = false;
+    
+    private volatile String failure = null;
+    
+    /**
+     * Set once the channel has failed, so the tester is only told once
+     */
+    private final AtomicBoolean broken = new AtomicBoolean(false);
+    
+    public CDSTChannelHandler(CDSTReactor reactor, SocketChannel channel,
+                              CDSTFraming framing,
+                              CDSTCodec<InputType> inputCodec,
+                              CDSTCodec<OutputType> outputCodec,
+                              int bufferSize){
+        this.reactor = reactor;
+        this.channel = channel;
+        this.framing = framing;
+        this.inputCodec = inputCodec;
+        this.outputCodec = outputCodec;
+        this.in = ByteBuffer.allocateDirect(bufferSize);
+        this.payload = ByteBuffer.allocateDirect(bufferSize);
+        this.out = ByteBuffer.allocateDirect(bufferSize);
+    }
+    
+    public CDSTChannelHandler(CDSTReactor reactor, SocketChannel channel,
+                              CDSTFraming framing,
+                              CDSTCodec<InputType> inputCodec,
+                              CDSTCodec<OutputType> outputCodec){
+        this(reactor, channel, framing, inputCodec, outputCodec,
+             DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Set this as the tester's handler, and start reading from the channel
+     * @param tester
+     * @throws CDSTException
+     * @throws IOException 
+     */
+    public void attach(CDSTester<InputType, OutputType> tester)
+            throws CDSTException, IOException {
+        
+        tester.setHandler(this);
+        this.tester = tester;
+        this.channel.configureBlocking(false);
+        this.reactor.register(this.channel, this);
+    }
+    
+    /**
+     * @return the failure reported by the tester, or null
+     */
+    public String getFailure(){
+        return this.failure;
+    }
+    
+    /**
+     * Stop reading, and close the channel
+     */
+    public void close(){
+        SelectionKey key = this.key;
+        if(key != null)
+            key.cancel();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+        }
+    }
+
+    @Override
+    public void fail(String message, Exception trace) {
+        this.failure = message;
+        this.close();
+    }
+
+    @Override
+    public void writeToStream(InputType input) {
+        synchronized(this.out){
+            if(this.broken.get())
+                return;
+            
+            this.payload.clear();
+            try {
+                this.inputCodec.encode(input, this.payload);
+            } catch (BufferOverflowException e) {
+                this.broken("Input larger than the buffer: " + input, e);
+                return;
+            }
+            this.payload.flip();
+            if(!this.frame() && !(this.flush() && this.frame())){
+                // Still no room once as much as possible has been written
+                this.broken(String.format(
+                    "Couldn't write input, stream isn't reading (%d bytes " +
+                    "waiting to be written): %s",
+                    this.out.position(),
+                    input),
+                    null);
+                return;
+            }
+            
+            if(!this.flush())
+                return;
+            
+            // Couldn't write everything, carry on when the channel is ready
+            if(this.out.position() > 0)
+                this.reactor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SelectionKey key = CDSTChannelHandler.this.key;
+                        if(key != null && key.isValid())
+                            key.interestOps(
+                                CDSTChannelHandler.this.readOps() |
+                                SelectionKey.OP_WRITE);
+                    }
+                });
+        }
+    }
+    
+    /**
+     * Frame the encoded input into the bytes waiting to be written, called
+     * holding the lock on out
+     * @return false if there wasn't room, leaving out as it was
+     */
+    private boolean frame(){
+        int position = this.out.position();
+        try {
+            this.framing.encode(this.payload, this.out);
+            return true;
+        } catch (BufferOverflowException e) {
+            this.out.position(position);
+            this.payload.rewind();
+            return false;
+        }
+    }
+    
+    /**
+     * Write as much as possible of the bytes waiting to be written, called
+     * holding the lock on out
+     * @return false if the channel failed
+     */
+    private boolean flush(){
+        this.out.flip();
+        try {
+            this.channel.write(this.out);
+        } catch (IOException e) {
+            this.broken("Error writing to stream: " + e, e);
+            return false;
+        } finally {
+            this.out.compact();
+        }
+        return true;
+    }
+    
+    /**
+     * Close the channel and fail the test, unless that has already happened.
+     * The tester is told on one of the reactor's reader threads, as it may
+     * have to wait for it.
+     */
+    private void broken(final String message, final Exception trace){
+        this.close();
+        if(!this.broken.compareAndSet(false, true))
+            return;
+        this.reactor.deliver(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CDSTChannelHandler.this.tester.failStream(message, trace);
+                } catch (CDSTException e) {
+                    // Interrupted waiting for the tester
+                }
+            }
+        });
+    }
+    
+    // ***************
+    // Called from the reactor thread
+    
+    void registered(SelectionKey key){
+        this.key = key;
+    }
+    
+    void onReadable(){
+        int read;
+        try {
+            read = this.channel.read(this.in);
+        } catch (IOException e) {
+            this.broken("Error reading from stream: " + e, e);
+            return;
+        }
+        if(read < 0){
+            this.broken("Connection closed by peer", null);
+            return;
+        }
+        
+        this.in.flip();
+        this.outputs.clear();
+        CDSTCodec<OutputType> codec = this.outputCodec();
+        ByteBuffer frame;
+        while((frame = this.framing.decode(this.in)) != null)
+            this.outputs.add(codec.decode(frame));
+        
+        if(!this.outputs.isEmpty() && !this.tester.isIngesting()){
+            // Checking them may have to wait for the tester, so stop reading
+            // until it has
+            this.delivering = true;
+            this.key.interestOps(this.key.interestOps() &
+                                 ~SelectionKey.OP_READ);
+            this.reactor.deliver(new Runnable() {
+                @Override
+                public void run() {
+                    CDSTChannelHandler.this.passOutputs();
+                    CDSTChannelHandler.this.reactor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            CDSTChannelHandler.this.delivered();
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        
+        this.passOutputs();
+        this.finishRead();
+    }
+    
+    /**
+     * Pass the outputs from the last read to the tester, from the reactor
+     * thread or a reader thread
+     */
+    private void passOutputs(){
+        try {
+            if(!this.outputs.isEmpty())
+                this.tester.readFromStream(this.outputs);
+        } catch (CDSTException e) {
+            // Testing has stopped
+            this.close();
+        }
+    }
+    
+    /**
+     * Carry on reading once the tester has checked the outputs from the last
+     * read
+     */
+    private void delivered(){
+        this.delivering = false;
+        this.finishRead();
+        SelectionKey key = this.key;
+        if(key.isValid())
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    }
+    
+    /**
+     * Keep any partial frame for the next read
+     */
+    private void finishRead(){
+        boolean full = this.in.position() == 0 &&
+                       this.in.limit() == this.in.capacity();
+        this.in.compact();
+        if(full){
+            // Frame is larger than the buffer, can never be read
+            this.broken(String.format(
+                "Frame larger than the buffer (%d bytes)",
+                this.in.capacity()),
+                null);
+        }
+    }
+    
+    /**
+     * @return OP_READ, unless the channel isn't being read from for now
+     */
+    private int readOps(){
+        return this.delivering ? 0 : SelectionKey.OP_READ;
+    }
+    
+    /**
+     * The codec to decode outputs with, copying rather than viewing frames
+     * when the tester checks them after the next read
+     */
+    @SuppressWarnings("unchecked")
+    private CDSTCodec<OutputType> outputCodec(){
+        if(this.outputCodec == CDSTByteBufferCodec.VIEW &&
+           this.tester.isIngesting())
+            return (CDSTCodec<OutputType>) (CDSTCodec<?>)
+                CDSTByteBufferCodec.COPY;
+        return this.outputCodec;
+    }
+    
+    void onWritable(){
+        synchronized(this.out){
+            if(this.flush() && this.out.position() == 0)
+                this.key.interestOps(this.readOps());
+        }
+    }
+    
+    // End
+    // ***************
+}
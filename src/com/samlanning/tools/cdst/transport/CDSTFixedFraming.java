@@ -0,0 +1,55 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames which are all the same length.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTFixedFraming implements CDSTFraming {
+    
+    private final int length;
+    
+    public CDSTFixedFraming(int length){
+        this.length = length;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        if(in.remaining() < this.length)
+            return null;
+        int start = in.position();
+        in.position(start + this.length);
+        return in.slice(start, this.length);
+    }
+
+    @Override
+    public void encode(ByteBuffer payload, ByteBuffer out) {
+        if(payload.remaining() != this.length)
+            throw new IllegalArgumentException(String.format(
+                "Payload is %d bytes, frames are %d bytes",
+                payload.remaining(),
+                this.length));
+        out.put(payload);
+    }
+}
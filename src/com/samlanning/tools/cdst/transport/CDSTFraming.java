@@ -0,0 +1,50 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the bytes of a stream into frames, and wraps payloads into frames
+ * to send.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public interface CDSTFraming {
+    
+    /**
+     * Take the next whole frame from the bytes between the position and limit
+     * of a buffer, moving the position past it.
+     * @param in
+     * @return the payload of the frame, as a slice of the buffer, or null if
+     *         there isn't a whole frame yet (the position is left alone)
+     */
+    public ByteBuffer decode(ByteBuffer in);
+    
+    /**
+     * Write a frame containing the bytes between the position and limit of
+     * payload.
+     * @param payload
+     * @param out - buffer to write to, from its position
+     * @throws java.nio.BufferOverflowException if out doesn't have room
+     */
+    public void encode(ByteBuffer payload, ByteBuffer out);
+    
+}
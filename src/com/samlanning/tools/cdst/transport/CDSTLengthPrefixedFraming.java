@@ -0,0 +1,56 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames starting with the length of their payload as a 4 byte big-endian
+ * integer.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTLengthPrefixedFraming implements CDSTFraming {
+    
+    public static final CDSTLengthPrefixedFraming INSTANCE =
+        new CDSTLengthPrefixedFraming();
+    
+    private static final int HEADER = 4;
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        if(in.remaining() < HEADER)
+            return null;
+        int start = in.position();
+        int length = in.getInt(start);
+        if(length < 0)
+            throw new IllegalStateException("Negative frame length: " + length);
+        if(in.remaining() - HEADER < length)
+            return null;
+        in.position(start + HEADER + length);
+        return in.slice(start + HEADER, length);
+    }
+
+    @Override
+    public void encode(ByteBuffer payload, ByteBuffer out) {
+        out.putInt(payload.remaining());
+        out.put(payload);
+    }
+}
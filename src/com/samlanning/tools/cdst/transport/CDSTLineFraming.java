@@ -0,0 +1,57 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames ended by a newline, such as telnet or many text protocols. A
+ * carriage return before the newline is not part of the payload.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTLineFraming implements CDSTFraming {
+    
+    public static final CDSTLineFraming INSTANCE = new CDSTLineFraming();
+    
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    @Override
+    public ByteBuffer decode(ByteBuffer in) {
+        int start = in.position();
+        for(int i = start; i < in.limit(); i++){
+            if(in.get(i) == LF){
+                int end = i;
+                if(end > start && in.get(end - 1) == CR)
+                    end--;
+                in.position(i + 1);
+                return in.slice(start, end - start);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void encode(ByteBuffer payload, ByteBuffer out) {
+        out.put(payload);
+        out.put(LF);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+
+import com.samlanning.tools.cdst.CDSTException;
+import com.samlanning.tools.cdst.CDSTHandler;
+import com.samlanning.tools.cdst.CDSTester;
+
+/**
+ * An in-memory duplex stream between a tester and an implementation running
+ * in the same JVM, made of a lock-free ring buffer in each direction.
+ * 
+ * The tester writes inputs into one ring, which the implementation takes
+ * with readInput(). The implementation writes outputs into the other ring
+ * with writeOutput(), and a pump thread passes them to the tester in
+ * batches with readFromStream().
+ * 
+ * Each ring has a single producer and a single consumer: inputs are only
+ * written by the tester, outputs should only be written by one thread.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTPipe<InputType, OutputType>
+        implements CDSTHandler<InputType>, Closeable {
+    
+    public static final int DEFAULT_CAPACITY = 1024;
+    
+    private final SpscRing<InputType> inputs;
+    private final SpscRing<OutputType> outputs;
+    
+    private Thread pump = null;
+    private volatile boolean closed = false;
+    private volatile String failure = null;
+    
+    public CDSTPipe(int capacity){
+        this.inputs = new SpscRing<InputType>(capacity);
+        this.outputs = new SpscRing<OutputType>(capacity);
+    }
+    
+    public CDSTPipe(){
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Set this as the tester's handler, and start passing outputs to it
+     * @param tester
+     * @throws CDSTException
+     */
+    public void attach(final CDSTester<InputType, OutputType> tester)
+            throws CDSTException {
+        
+        tester.setHandler(this);
+        this.pump = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CDSTPipe.this.pump(tester);
+            }
+        }, "CDSTPipe pump");
+        this.pump.setDaemon(true);
+        this.pump.start();
+    }
+    
+    private void pump(CDSTester<InputType, OutputType> tester){
+        ArrayList<OutputType> batch = new ArrayList<OutputType>();
+        try {
+            while(!this.closed){
+                this.outputs.awaitNotEmpty();
+                this.outputs.drainTo(batch, Integer.MAX_VALUE);
+                tester.readFromStream(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (CDSTException e) {
+            // Testing has stopped
+        }
+    }
+    
+    // ***************
+    // Implementation side
+    
+    /**
+     * Wait for the next input written by the tester
+     * @return
+     * @throws InterruptedException
+     */
+    public InputType readInput() throws InterruptedException {
+        return this.inputs.take();
+    }
+    
+    /**
+     * @return the next input written by the tester, or null if there isn't
+     *         one yet
+     */
+    public InputType pollInput(){
+        return this.inputs.poll();
+    }
+    
+    /**
+     * Pass an output to the tester, waiting if the pipe is full
+     * @param output
+     * @throws InterruptedException
+     */
+    public void writeOutput(OutputType output) throws InterruptedException {
+        this.outputs.put(output);
+    }
+    
+    // End
+    // ***************
+    
+    /**
+     * @return the failure reported by the tester, or null
+     */
+    public String getFailure(){
+        return this.failure;
+    }
+    
+    @Override
+    public void fail(String message, Exception trace) {
+        this.failure = message;
+    }
+    
+    /**
+     * Pass an input to the implementation, waiting if the pipe is full. If
+     * the tester is interrupted while waiting the input is never written, and
+     * the test fails.
+     */
+    @Override
+    public void writeToStream(InputType input) {
+        try {
+            this.inputs.put(input);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while writing input", e);
+        }
+    }
+    
+    /**
+     * Stop the pump thread
+     */
+    @Override
+    public void close(){
+        this.closed = true;
+        if(this.pump != null)
+            this.pump.interrupt();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A single thread with a Selector, reading from any number of
+ * CDSTChannelHandlers' channels and passing what it reads to their testers.
+ * 
+ * Passing outputs to a tester which checks them straight away can block
+ * until the tester is ready for them, so that is done by a pool of reader
+ * threads instead, and the selector thread never waits for one connection
+ * while others have something to read.
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+public class CDSTReactor implements Closeable {
+    
+    private final Selector selector;
+    private final Thread thread;
+    
+    /**
+     * Work from other threads to run on the reactor thread
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    
+    /**
+     * Threads passing outputs to testers, one for each connection waiting
+     * for its tester
+     */
+    private final ExecutorService readers =
+        Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CDSTReactor reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    
+    private volatile boolean closed = false;
+    
+    public CDSTReactor() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CDSTReactor.this.loop();
+            }
+        }, "CDSTReactor");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+    
+    /**
+     * Start reading from a handler's channel
+     */
+    void register(final SocketChannel channel,
+                  final CDSTChannelHandler<?, ?> handler){
+        this.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handler.registered(channel.register(
+                        CDSTReactor.this.selector, SelectionKey.OP_READ,
+                        handler));
+                } catch (ClosedChannelException e) {
+                    handler.close();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Run something on the reactor thread
+     */
+    void execute(Runnable task){
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+    
+    /**
+     * Run something which may block on a reader thread
+     */
+    void deliver(Runnable task){
+        this.readers.execute(task);
+    }
+    
+    /**
+     * Stop the reactor thread (channels are left open)
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.readers.shutdown();
+        this.selector.wakeup();
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.selector.close();
+    }
+    
+    private void loop(){
+        while(!this.closed){
+            try {
+                this.selector.select();
+            } catch (IOException e) {
+                return;
+            }
+            
+            Runnable task;
+            while((task = this.tasks.poll()) != null)
+                task.run();
+            
+            Iterator<SelectionKey> keys =
+                this.selector.selectedKeys().iterator();
+            while(keys.hasNext()){
+                SelectionKey key = keys.next();
+                keys.remove();
+                CDSTChannelHandler<?, ?> handler =
+                    (CDSTChannelHandler<?, ?>) key.attachment();
+                if(key.isValid() && key.isReadable())
+                    handler.onReadable();
+                if(key.isValid() && key.isWritable())
+                    handler.onWritable();
+            }
+        }
+    }
+}
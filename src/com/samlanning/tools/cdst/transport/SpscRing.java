@@ -0,0 +1,170 @@
+/**
+ * ISC License (ISC)
+ * 
+ * Copyright (c) 2014, Sam Lanning <sam@samlanning.com>
+ * 
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.samlanning.tools.cdst.transport;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring buffer with a single producer and a single
+ * consumer, which can also block either side until it can carry on.
+ * 
+ * Each side keeps a cached copy of the other side's position, so it only
+ * reads the shared position when the ring looks full (or empty).
+ * 
+ * @author Sam Lanning <sam@samlanning.com>
+ *
+ */
+class SpscRing<E> {
+    
+    private final int mask;
+    private final Object[] entries;
+    
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    
+    /**
+     * Only used by the producer, and only by the consumer
+     */
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+    
+    /**
+     * Threads parked waiting for the ring to be not empty, or not full
+     */
+    private volatile Thread consumer = null;
+    private volatile Thread producer = null;
+    
+    /**
+     * @param capacity - rounded up to a power of 2
+     */
+    SpscRing(int capacity){
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.entries = new Object[size];
+    }
+    
+    /**
+     * Add an entry, if there is room
+     * @param entry
+     * @return false if the ring is full
+     */
+    boolean offer(E entry){
+        long tail = this.tail.get();
+        if(tail - this.cachedHead > this.mask){
+            this.cachedHead = this.head.get();
+            if(tail - this.cachedHead > this.mask)
+                return false;
+        }
+        this.entries[(int) tail & this.mask] = entry;
+        this.tail.set(tail + 1);
+        
+        Thread consumer = this.consumer;
+        if(consumer != null)
+            LockSupport.unpark(consumer);
+        return true;
+    }
+    
+    /**
+     * Take the oldest entry, if there is one
+     * @return null if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll(){
+        long head = this.head.get();
+        if(head >= this.cachedTail){
+            this.cachedTail = this.tail.get();
+            if(head >= this.cachedTail)
+                return null;
+        }
+        int slot = (int) head & this.mask;
+        E entry = (E) this.entries[slot];
+        this.entries[slot] = null;
+        this.head.set(head + 1);
+        
+        Thread producer = this.producer;
+        if(producer != null)
+            LockSupport.unpark(producer);
+        return entry;
+    }
+    
+    /**
+     * Take up to max entries, oldest first
+     * @return how many were taken
+     */
+    int drainTo(Collection<? super E> to, int max){
+        int taken = 0;
+        E entry;
+        while(taken < max && (entry = this.poll()) != null){
+            to.add(entry);
+            taken++;
+        }
+        return taken;
+    }
+    
+    /**
+     * Add an entry, waiting for room if the ring is full
+     * @param entry
+     * @throws InterruptedException
+     */
+    void put(E entry) throws InterruptedException {
+        while(!this.offer(entry)){
+            this.producer = Thread.currentThread();
+            // Check again now that the consumer will wake us
+            if(this.offer(entry)){
+                this.producer = null;
+                return;
+            }
+            LockSupport.park(this);
+            this.producer = null;
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+    
+    /**
+     * Wait until the ring isn't empty
+     * @throws InterruptedException
+     */
+    void awaitNotEmpty() throws InterruptedException {
+        while(this.head.get() == this.tail.get()){
+            this.consumer = Thread.currentThread();
+            if(this.head.get() != this.tail.get()){
+                this.consumer = null;
+                return;
+            }
+            LockSupport.park(this);
+            this.consumer = null;
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+    
+    /**
+     * Take the oldest entry, waiting for one if the ring is empty
+     * @throws InterruptedException
+     */
+    E take() throws InterruptedException {
+        E entry;
+        while((entry = this.poll()) == null)
+            this.awaitNotEmpty();
+        return entry;
+    }
+}